@@ -0,0 +1,73 @@
+/*
+ * PacketBench.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import framework.Packet;
+import framework.PacketPool;
+
+/**
+ * Cost of copying a packet the way hubs and routers do when they forward it: a new Packet, or one from PacketPool given back right after.
+ *
+ * @author Rohit
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PacketBench {
+    @Param( { "0", "64", "1500" })
+    public int     dataSize;
+
+    private Packet packet;
+
+    @Setup
+    public void setup() {
+	packet = new Packet(2, 1, dataSize, new byte[dataSize]);
+    }
+
+    @Benchmark
+    public Packet copy() {
+	return new Packet(packet);
+    }
+
+    @Benchmark
+    public long pooledCopy() {
+	Packet p = PacketPool.copyOf(packet);
+	long id = p.getId();
+	p.release();
+	return id;
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * RoutingTableBench.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import module.Router.RoutingTable;
+
+/**
+ * RouterMod's routing table: learning the sender of a packet and looking up its receiver, on a table holding entries computers.
+ *
+ * @author Rohit
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RoutingTableBench {
+    static final int     TTL = 50;
+
+    @Param( { "10", "1000", "100000" })
+    public int	   entries;
+
+    private RoutingTable table;
+    private long	 time = 0;
+    private long	 next = 0;
+
+    @Setup
+    public void setup() {
+	table = new RoutingTable(TTL);
+	for (int i = 0; i < entries; i++)
+	    table.learn(i, i % 10, 0);
+    }
+
+    /**
+     * Learns the computers again in turn, as a router does with the senders of the packets it forwards. Time moves on once every computer
+     * was learnt, so all entries stay valid.
+     */
+    @Benchmark
+    public void learn() {
+	table.learn(next, (int) next % 10, time);
+	if (++next == entries) {
+	    next = 0;
+	    time++;
+	    table.expire(time);
+	}
+    }
+
+    @Benchmark
+    public int lookupHit() {
+	next = next + 1 == entries ? 0 : next + 1;
+	return table.lookup(next, 0);
+    }
+
+    @Benchmark
+    public int lookupMiss() {
+	return table.lookup(entries + next++, 0);
+    }
+}
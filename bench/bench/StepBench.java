@@ -0,0 +1,80 @@
+/*
+ * StepBench.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import framework.Manager;
+
+/**
+ * Time of one Manager.stepSimulation() on the generated topologies, in fixed step and in event driven mode. The clock keeps running across
+ * iterations, so the modules settle into their steady state during warmup.
+ *
+ * @author Rohit
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class StepBench {
+    @Param( { "hubStar", "routerTree", "snwwaPairs" })
+    public String   topology;
+
+    @Param( { "small", "large" })
+    public String   size;
+
+    @Param( { "false", "true" })
+    public boolean  eventDriven;
+
+    private Manager manager;
+
+    @Setup
+    public void setup() {
+	boolean large = size.equals("large");
+	if (topology.equals("hubStar"))
+	    manager = Topologies.hubStar(large ? 9 : 3, large ? 9 : 3);
+	else if (topology.equals("routerTree"))
+	    manager = Topologies.routerTree(large ? 4 : 2, 3);
+	else
+	    manager = Topologies.snwwaPairs(large ? 500 : 5);
+	manager.setEventDriven(eventDriven);
+	manager.initSimulation();
+    }
+
+    @Benchmark
+    public void step() {
+	manager.stepSimulation();
+	manager.clock.incrTime();
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Topologies.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package bench;
+
+import framework.Manager;
+import framework.TopologyGenerator;
+import module.SnWwA.SnWwAMod;
+
+/**
+ * The topologies the benchmarks are run on, built by TopologyGenerator.
+ *
+ * @author Rohit
+ *
+ */
+public class Topologies {
+    /**
+     * hubs hubs with pcs computers each, joined by one more hub. Every packet a computer sends is repeated to all the others.
+     */
+    public static Manager hubStar(int hubs, int pcs) {
+	TopologyGenerator g = new TopologyGenerator(new Manager("bench"));
+	g.setSwitchClass(TopologyGenerator.HUB);
+	g.setFanout(pcs);
+	g.star(hubs * pcs);
+	return g.getManager();
+    }
+
+    /**
+     * A tree of routers depth levels deep with fanout children per router. Each leaf router has fanout computers.
+     */
+    public static Manager routerTree(int depth, int fanout) {
+	TopologyGenerator g = new TopologyGenerator(new Manager("bench"));
+	g.setFanout(fanout);
+	g.tree(depth, fanout);
+	return g.getManager();
+    }
+
+    /**
+     * pairs pairs of Stop-and-Wait nodes, the first of each pair sending to the second.
+     */
+    public static Manager snwwaPairs(int pairs) {
+	TopologyGenerator g = new TopologyGenerator(new Manager("bench"));
+	g.setHostClass("module.SnWwA.SnWwAMod");
+	for (int i = 0; i < pairs; i++) {
+	    SnWwAMod a = (SnWwAMod) g.newHost();
+	    SnWwAMod b = (SnWwAMod) g.newHost();
+	    a.setCanEmitData(true, b.getSno());
+	    g.connect(a, b);
+	}
+	return g.getManager();
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * WireBench.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import framework.Packet;
+import framework.PacketPool;
+import framework.Port;
+import framework.Wire;
+import module.Pc.PcMod;
+
+/**
+ * Wire.step() under contention: both ends put a packet on the wire every step, so latency packets are in flight in each direction and
+ * every packet sent collides with the ones already on the wire.
+ *
+ * @author Rohit
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireBench {
+    @Param( { "1", "15", "100" })
+    public int     latency;
+
+    private PcMod  a, b;
+    private Port   pa, pb;
+    private Wire   wire;
+    private Packet fromA, fromB;
+    private long   time = 0;
+
+    @Setup
+    public void setup() {
+	a = new PcMod();
+	b = new PcMod();
+	a.setSno(1);
+	b.setSno(2);
+	pa = new Port("Ethernet", a);
+	pb = new Port("Ethernet", b);
+	a.addPort(pa, Wire.GENERAL);
+	b.addPort(pb, Wire.GENERAL);
+	wire = new Wire(pa, pb);
+	wire.setLatency(latency);
+	fromA = new Packet(2, 1, 10, "data");
+	fromB = new Packet(1, 2, 10, "data");
+    }
+
+    @Benchmark
+    public boolean step() {
+	pa.putPacket(PacketPool.copyOf(fromA), a);
+	pb.putPacket(PacketPool.copyOf(fromB), b);
+	wire.step(time++);
+	if (pa.hasData())
+	    pa.getPacket(a).release();
+	if (pb.hasData())
+	    pb.getPacket(b).release();
+	return wire.hasData();
+    }
+}
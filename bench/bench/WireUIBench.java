@@ -0,0 +1,96 @@
+/*
+ * WireUIBench.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package bench;
+
+import java.awt.Point;
+import java.awt.geom.Point2D;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import framework.Port;
+import framework.Wire;
+import module.Hub.HubMod;
+import ui.ManagerUI;
+import ui.WireUI;
+
+/**
+ * Hit testing of a wire, i.e. WireUI.isClicked(), which tests the point against each segment with SegmentCoords.liesOn(). The wire has
+ * bends bends at random places and the points tested are spread over the area it is in, so most of them miss.
+ * <p>
+ * The modules are placed in a ManagerUI the same way as when a topology is opened, which opens their moduleWindows, so this needs a display.
+ *
+ * @author Rohit
+ *
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WireUIBench {
+    static final int	 AREA   = 1000;
+    static final int	 POINTS = 1024;
+
+    @Param( { "0", "10", "100" })
+    public int	       bends;
+
+    private WireUI	   wireUI;
+    private Point2D.Double points[] = new Point2D.Double[POINTS];
+    private int	      next   = 0;
+
+    @Setup
+    public void setup() {
+	Random r = new Random(1);
+	ManagerUI m = new ManagerUI("bench", null);
+	HubMod a = new HubMod(), b = new HubMod();
+	a.setSno(1);
+	b.setSno(2);
+	m.placeModule(a, new Point(0, 0));
+	m.placeModule(b, new Point(AREA, AREA));
+	Port pa = new Port("Ethernet", a);
+	Port pb = new Port("Ethernet", b);
+	a.addPort(pa, Wire.GENERAL);
+	b.addPort(pb, Wire.GENERAL);
+	Point2D.Double at[] = new Point2D.Double[bends];
+	for (int i = 0; i < bends; i++)
+	    at[i] = new Point2D.Double(r.nextInt(AREA), r.nextInt(AREA));
+	wireUI = m.connect(new Wire(pa, pb), at);
+	for (int i = 0; i < POINTS; i++)
+	    points[i] = new Point2D.Double(r.nextInt(AREA), r.nextInt(AREA));
+    }
+
+    @Benchmark
+    public boolean isClicked() {
+	next = (next + 1) & (POINTS - 1);
+	return wireUI.isClicked(points[next]);
+    }
+}
@@ -18,12 +18,296 @@
  */
 package fio;
 
+import java.awt.Point;
+import java.awt.geom.Point2D;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.lang.reflect.InvocationTargetException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+import module.Module;
+import ui.ManagerUI;
+import ui.WireUI;
+import framework.Port;
+import framework.Wire;
+
 /**
+ * Saves the topology of a ManagerUI to a file and reads it back. The file is binary:
+ * 
+ * <pre>
+ * header:  int MAGIC, int VERSION
+ * strings: int count, then count strings (int byte length, UTF-8 bytes). Module class names and port names.
+ * modules: int count, then per module: int class (string index), int serial no, int x, int y
+ * ports:   int count, then per port: int owner (module index), int name (string index), byte active
+ *          The ports of a module are in the order they were added to it.
+ * wires:   int count, then per wire: double latency, double bandwidth, int queue capacity, byte drop packets,
+ *          int port 0, int port 1 (port indices), int bend count, then per bend: double x, double y
+ * </pre>
+ * 
+ * Files are written through a FileChannel and read back through a memory mapped buffer, so even a huge topology is read without copying
+ * it.
  * 
  * @author Nirupam
  * @author Rohit
- *
+ * 
  */
 public class FileManager {
+    public static final int    MAGIC     = 0x4C53494D; // "LSIM"
+    public static final int    VERSION   = 1;
+    public static final String EXTENSION = "lsim";
+
+    private static final int   BUFFER_SIZE = 1 << 16;
+
+    /**
+     * Writes the modules and wires of m to file. Only the topology is saved, not the state of a simulation.
+     * 
+     * @param m
+     * @param file
+     * @throws IOException
+     */
+    public static void save(ManagerUI m, File file) throws IOException {
+	ArrayList<Module> modules = m.getModules();
+	ArrayList<WireUI> wiresUI = m.getWiresUI();
+	ArrayList<String> strings = new ArrayList<String>();
+	HashMap<String, Integer> stringIds = new HashMap<String, Integer>();
+	IdentityHashMap<Module, Integer> moduleIds = new IdentityHashMap<Module, Integer>();
+	IdentityHashMap<Port, Integer> portIds = new IdentityHashMap<Port, Integer>();
+	int noOfPorts = 0;
+	for (int i = 0; i < modules.size(); i++) {
+	    Module mod = modules.get(i);
+	    moduleIds.put(mod, i);
+	    stringId(mod.getClass().getName(), strings, stringIds);
+	    Port ports[] = mod.getPorts();
+	    for (int j = 0; j < mod.getNoOfPorts(); j++) {
+		portIds.put(ports[j], noOfPorts++);
+		stringId(ports[j].getName(), strings, stringIds);
+	    }
+	}
+
+	FileOutputStream out = new FileOutputStream(file);
+	try {
+	    Writer w = new Writer(out.getChannel());
+	    w.putInt(MAGIC);
+	    w.putInt(VERSION);
+
+	    w.putInt(strings.size());
+	    for (int i = 0; i < strings.size(); i++)
+		w.putString(strings.get(i));
+
+	    w.putInt(modules.size());
+	    for (int i = 0; i < modules.size(); i++) {
+		Module mod = modules.get(i);
+		Point p = mod.getModuleUI().getCoord();
+		w.putInt(stringIds.get(mod.getClass().getName()));
+		w.putInt(mod.getSno());
+		w.putInt(p.x);
+		w.putInt(p.y);
+	    }
+
+	    w.putInt(noOfPorts);
+	    for (int i = 0; i < modules.size(); i++) {
+		Module mod = modules.get(i);
+		Port ports[] = mod.getPorts();
+		for (int j = 0; j < mod.getNoOfPorts(); j++) {
+		    w.putInt(i);
+		    w.putInt(stringIds.get(ports[j].getName()));
+		    w.putByte(ports[j].isActive() ? 1 : 0);
+		}
+	    }
+
+	    w.putInt(wiresUI.size());
+	    for (int i = 0; i < wiresUI.size(); i++) {
+		Wire wire = wiresUI.get(i).getWire();
+		Point2D.Double bends[] = wiresUI.get(i).getBends();
+		Integer p0 = portIds.get(wire.getPort(0)), p1 = portIds.get(wire.getPort(1));
+		if (wire.getNoOfPorts() != 2 || p0 == null || p1 == null)
+		    throw new IOException("Wire " + i + " does not connect two ports of the modules.");
+		w.putDouble(wire.getLatency());
+		w.putDouble(wire.getBandwidth());
+		w.putInt(wire.getQueueCapacity());
+		w.putByte(wire.isDroppingPackets() ? 1 : 0);
+		w.putInt(p0);
+		w.putInt(p1);
+		w.putInt(bends.length);
+		for (int j = 0; j < bends.length; j++) {
+		    w.putDouble(bends[j].x);
+		    w.putDouble(bends[j].y);
+		}
+	    }
+	    w.flush();
+	} finally {
+	    out.close();
+	}
+    }
+
+    /**
+     * Reads a topology saved by save() into m, which should be empty.
+     * 
+     * @param m
+     * @param file
+     * @throws IOException
+     *                 If the file is not a topology file, is of a later version or is damaged, or a module in it cannot be loaded.
+     */
+    public static void load(ManagerUI m, File file) throws IOException {
+	FileInputStream in = new FileInputStream(file);
+	try {
+	    FileChannel ch = in.getChannel();
+	    MappedByteBuffer buf = ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size());
+	    try {
+		read(m, buf);
+	    } catch (BufferUnderflowException e) {
+		throw new IOException("Unexpected end of file " + file.getName());
+	    }
+	} finally {
+	    in.close();
+	}
+	m.finishRestore();
+    }
+
+    private static void read(ManagerUI m, ByteBuffer buf) throws IOException {
+	if (buf.getInt() != MAGIC)
+	    throw new IOException("Not a topology file.");
+	int version = buf.getInt();
+	if (version > VERSION)
+	    throw new IOException("Topology file is of version " + version + ", only up to " + VERSION + " is supported.");
+
+	String strings[] = new String[count(buf)];
+	for (int i = 0; i < strings.length; i++) {
+	    byte b[] = new byte[count(buf)];
+	    buf.get(b);
+	    strings[i] = new String(b, "UTF-8");
+	}
+
+	Class<?> classes[] = new Class<?>[strings.length];
+	Module modules[] = new Module[count(buf)];
+	for (int i = 0; i < modules.length; i++) {
+	    int cls = index(buf, strings.length);
+	    int sno = buf.getInt();
+	    Point p = new Point(buf.getInt(), buf.getInt());
+	    try {
+		if (classes[cls] == null)
+		    classes[cls] = Class.forName(strings[cls]);
+		modules[i] = (Module) classes[cls].getDeclaredConstructor().newInstance();
+	    } catch (InvocationTargetException e) {
+		IOException ioe = new IOException("Error while instantiating module: " + strings[cls]);
+		ioe.initCause(e.getCause());
+		throw ioe;
+	    } catch (ReflectiveOperationException e) {
+		IOException ioe = new IOException("Error while instantiating module: " + strings[cls]);
+		ioe.initCause(e);
+		throw ioe;
+	    } catch (ClassCastException e) {
+		IOException ioe = new IOException("Not a module: " + strings[cls]);
+		ioe.initCause(e);
+		throw ioe;
+	    }
+	    modules[i].setSno(sno);
+	    m.placeModule(modules[i], p);
+	}
+
+	Port ports[] = new Port[count(buf)];
+	for (int i = 0; i < ports.length; i++) {
+	    Module owner = modules[index(buf, modules.length)];
+	    ports[i] = new Port(strings[index(buf, strings.length)], owner);
+	    owner.addPort(ports[i], Wire.GENERAL);
+	    ports[i].setActive(buf.get() != 0);
+	}
+
+	int noOfWires = count(buf);
+	for (int i = 0; i < noOfWires; i++) {
+	    Wire w = new Wire();
+	    w.setLatency(buf.getDouble());
+	    w.setBandwidth(buf.getDouble());
+	    w.setQueueCapacity(buf.getInt());
+	    w.setDropPackets(buf.get() != 0);
+	    w.addPort(ports[index(buf, ports.length)]);
+	    w.addPort(ports[index(buf, ports.length)]);
+	    Point2D.Double bends[] = new Point2D.Double[count(buf)];
+	    for (int j = 0; j < bends.length; j++)
+		bends[j] = new Point2D.Double(buf.getDouble(), buf.getDouble());
+	    m.connect(w, bends);
+	}
+    }
+
+    private static int count(ByteBuffer buf) throws IOException {
+	int n = buf.getInt();
+	if (n < 0 || n > buf.remaining())
+	    throw new IOException("Damaged topology file.");
+	return n;
+    }
+
+    private static int index(ByteBuffer buf, int length) throws IOException {
+	int i = buf.getInt();
+	if (i < 0 || i >= length)
+	    throw new IOException("Damaged topology file.");
+	return i;
+    }
+
+    private static int stringId(String s, ArrayList<String> strings, HashMap<String, Integer> stringIds) {
+	Integer id = stringIds.get(s);
+	if (id == null) {
+	    id = strings.size();
+	    strings.add(s);
+	    stringIds.put(s, id);
+	}
+	return id;
+    }
+
+    /**
+     * Buffers what is written and hands it to the channel a block at a time.
+     */
+    private static class Writer {
+	private FileChannel ch;
+	private ByteBuffer  buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+	Writer(FileChannel ch) {
+	    this.ch = ch;
+	}
+
+	private void ensure(int n) throws IOException {
+	    if (buf.remaining() < n)
+		flush();
+	}
+
+	void flush() throws IOException {
+	    buf.flip();
+	    while (buf.hasRemaining())
+		ch.write(buf);
+	    buf.clear();
+	}
+
+	void putByte(int b) throws IOException {
+	    ensure(1);
+	    buf.put((byte) b);
+	}
+
+	void putInt(int i) throws IOException {
+	    ensure(4);
+	    buf.putInt(i);
+	}
+
+	void putDouble(double d) throws IOException {
+	    ensure(8);
+	    buf.putDouble(d);
+	}
 
+	void putString(String s) throws IOException {
+	    byte b[] = s.getBytes("UTF-8");
+	    putInt(b.length);
+	    for (int off = 0; off < b.length;) {
+		ensure(1);
+		int n = Math.min(buf.remaining(), b.length - off);
+		buf.put(b, off, n);
+		off += n;
+	    }
+	}
+    }
 }
@@ -0,0 +1,273 @@
+/*
+ * Checkpoint.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+
+import module.Module;
+
+/**
+ * Saves the complete state of a simulation to a file and restores it: the time, the packets on every wire and in every port, and the state
+ * of every module implementing Checkpointable. A run can so be continued, or forked into different scenarios, from a warmed up network
+ * instead of being simulated again from the start.
+ * <p>
+ * A checkpoint can only be restored into the topology it was saved from, e.g. the same topology file opened again. Packets are written
+ * once however many ports and wires hold them, and restored as shared objects in the same way.
+ *
+ * @author Rohit
+ *
+ */
+public class Checkpoint {
+    public static final int		  MAGIC     = 0x4C53434B; // "LSCK"
+    public static final int		  VERSION   = 2;    // 2: packets keep the index of their sending port in the wire.
+
+    private DataOutputStream		 out       = null;
+    private DataInputStream		  in	= null;
+    private long			     time;
+    private ArrayList<Port>		  ports     = new ArrayList<Port>();
+    private IdentityHashMap<Port, Integer>   portIds   = new IdentityHashMap<Port, Integer>();
+    private ArrayList<Packet>		packets   = new ArrayList<Packet>();
+    private IdentityHashMap<Packet, Integer> packetIds = new IdentityHashMap<Packet, Integer>();
+
+    private Checkpoint(Manager m) {
+	ArrayList<Module> modules = m.getModules();
+	for (int i = 0; i < modules.size(); i++) {
+	    Port p[] = modules.get(i).getPorts();
+	    for (int j = 0; j < modules.get(i).getNoOfPorts(); j++) {
+		portIds.put(p[j], ports.size());
+		ports.add(p[j]);
+	    }
+	}
+    }
+
+    /**
+     * Saves the state of the simulation of m. Must not be called while m is being stepped.
+     *
+     * @param m
+     * @param file
+     * @throws IOException
+     */
+    public static void save(Manager m, File file) throws IOException {
+	Checkpoint c = new Checkpoint(m);
+	c.time = (long) m.clock.getTime();
+	c.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 1 << 16));
+	try {
+	    c.write(m);
+	} finally {
+	    c.out.close();
+	}
+    }
+
+    /**
+     * Restores the state saved by save() into m, which must have the same modules, ports and wires. m can then be stepped on from the saved
+     * time.
+     *
+     * @param m
+     * @param file
+     * @throws IOException
+     *                 If the file is not a checkpoint or does not match the topology of m.
+     */
+    public static void restore(Manager m, File file) throws IOException {
+	Checkpoint c = new Checkpoint(m);
+	c.in = new DataInputStream(new BufferedInputStream(new FileInputStream(file), 1 << 16));
+	try {
+	    c.read(m);
+	} finally {
+	    c.in.close();
+	}
+    }
+
+    private void write(Manager m) throws IOException {
+	ArrayList<Module> modules = m.getModules();
+	ArrayList<Wire> wires = m.getWires();
+	out.writeInt(MAGIC);
+	out.writeInt(VERSION);
+	out.writeLong(time);
+	out.writeInt(modules.size());
+	out.writeInt(ports.size());
+	out.writeInt(wires.size());
+	for (int i = 0; i < modules.size(); i++)
+	    out.writeUTF(modules.get(i).getClass().getName());
+	for (int i = 0; i < wires.size(); i++) {
+	    Wire w = wires.get(i);
+	    out.writeInt(w.getNoOfPorts());
+	    for (int j = 0; j < w.getNoOfPorts(); j++)
+		writePort(w.getPort(j));
+	}
+
+	for (int i = 0; i < ports.size(); i++)
+	    ports.get(i).saveState(this);
+	for (int i = 0; i < modules.size(); i++) {
+	    Module mod = modules.get(i);
+	    out.writeBoolean(mod instanceof Checkpointable);
+	    if (mod instanceof Checkpointable)
+		((Checkpointable) mod).saveState(this);
+	}
+	for (int i = 0; i < wires.size(); i++)
+	    wires.get(i).saveState(this);
+    }
+
+    private void read(Manager m) throws IOException {
+	ArrayList<Module> modules = m.getModules();
+	ArrayList<Wire> wires = m.getWires();
+	if (in.readInt() != MAGIC)
+	    throw new IOException("Not a checkpoint file.");
+	int version = in.readInt();
+	if (version != VERSION)
+	    throw new IOException("Checkpoint is of version " + version + ", only version " + VERSION + " is supported.");
+	time = in.readLong();
+	if (in.readInt() != modules.size() || in.readInt() != ports.size() || in.readInt() != wires.size())
+	    throw new IOException("The checkpoint was saved from a different topology.");
+	for (int i = 0; i < modules.size(); i++)
+	    if (!in.readUTF().equals(modules.get(i).getClass().getName()))
+		throw new IOException("The checkpoint was saved from a different topology.");
+	for (int i = 0; i < wires.size(); i++) {
+	    Wire w = wires.get(i);
+	    boolean same = in.readInt() == w.getNoOfPorts();
+	    for (int j = 0; same && j < w.getNoOfPorts(); j++)
+		same = readPort() == w.getPort(j);
+	    if (!same)
+		throw new IOException("The checkpoint was saved from a different topology.");
+	}
+
+	m.endSimulation();
+	m.clock.rstClock();
+	m.clock.setTime(time);
+	m.clock.setTimeStep(1);
+	for (int i = 0; i < modules.size(); i++)
+	    modules.get(i).reset();
+	for (int i = 0; i < ports.size(); i++)
+	    ports.get(i).restoreState(this);
+	for (int i = 0; i < modules.size(); i++) {
+	    Module mod = modules.get(i);
+	    boolean saved = in.readBoolean();
+	    if (saved != mod instanceof Checkpointable)
+		throw new IOException("The checkpoint does not match module " + mod.getName() + mod.getSno() + ".");
+	    if (saved)
+		((Checkpointable) mod).restoreState(this);
+	}
+	for (int i = 0; i < wires.size(); i++)
+	    wires.get(i).restoreState(this);
+	m.resyncScheduler();
+    }
+
+    /**
+     * @return The time the checkpoint was taken at, i.e. the next step to be simulated.
+     */
+    public long getTime() {
+	return time;
+    }
+
+    /**
+     * @return The stream to write state to while saving.
+     */
+    public DataOutputStream getOutput() {
+	return out;
+    }
+
+    /**
+     * @return The stream to read state from while restoring.
+     */
+    public DataInputStream getInput() {
+	return in;
+    }
+
+    public void writePort(Port p) throws IOException {
+	Integer id = p == null ? null : portIds.get(p);
+	out.writeInt(id == null ? -1 : id);
+    }
+
+    public Port readPort() throws IOException {
+	int id = in.readInt();
+	if (id < -1 || id >= ports.size())
+	    throw new IOException("Damaged checkpoint.");
+	return id == -1 ? null : ports.get(id);
+    }
+
+    /**
+     * Writes p, or only a reference to it if it was already written.
+     */
+    public void writePacket(Packet p) throws IOException {
+	if (p == null) {
+	    out.writeInt(-1);
+	    return;
+	}
+	Integer id = packetIds.get(p);
+	if (id != null) {
+	    out.writeInt(id);
+	    return;
+	}
+	packetIds.put(p, packets.size());
+	out.writeInt(packets.size());
+	packets.add(p);
+	p.saveState(this);
+    }
+
+    public Packet readPacket() throws IOException {
+	int id = in.readInt();
+	if (id == -1)
+	    return null;
+	if (id < packets.size() && id >= 0)
+	    return packets.get(id);
+	if (id != packets.size())
+	    throw new IOException("Damaged checkpoint.");
+	Packet p = new Packet();
+	packets.add(p);
+	p.restoreState(this);
+	return p;
+    }
+
+    public void writePackets(List<Packet> list) throws IOException {
+	out.writeInt(list.size());
+	for (int i = 0; i < list.size(); i++)
+	    writePacket(list.get(i));
+    }
+
+    /**
+     * Reads what writePackets() wrote, appending the packets to list.
+     */
+    public void readPackets(List<Packet> list) throws IOException {
+	int n = in.readInt();
+	for (int i = 0; i < n; i++)
+	    list.add(readPacket());
+    }
+
+    /**
+     * Writes s, which may be null.
+     */
+    public void writeString(String s) throws IOException {
+	out.writeBoolean(s != null);
+	if (s != null)
+	    out.writeUTF(s);
+    }
+
+    public String readString() throws IOException {
+	return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,46 @@
+/*
+ * Checkpointable.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+import java.io.IOException;
+
+/**
+ * Implemented by modules whose simulation state can be saved in a Checkpoint and restored from it. The state of a module not implementing
+ * this is only reset when a checkpoint is restored, which is right for modules that keep no state between steps.
+ *
+ * @author Rohit
+ *
+ */
+public interface Checkpointable {
+    /**
+     * Writes the state of the module to c. Settings made by the user that are kept in the topology file need not be written.
+     *
+     * @param c
+     * @throws IOException
+     */
+    public void saveState(Checkpoint c) throws IOException;
+
+    /**
+     * Reads back what saveState() wrote, in the same order. Called right after the module was reset.
+     *
+     * @param c
+     * @throws IOException
+     */
+    public void restoreState(Checkpoint c) throws IOException;
+}
@@ -59,6 +59,20 @@ public class Clock {
 	return time * TimeRatio;
     }
 
+    /**
+         * Advances the simulated time by one step without consulting the wall clock. Used when stepping faster than real time, e.g. by Engine.
+         */
+    public void incrTime() {
+	time++;
+    }
+
+    /**
+	 * Moves the simulated time directly to t. Used by Engine to skip idle stretches in event driven mode.
+	 */
+    void setTime(long t) {
+	time = t;
+    }
+
     public void setTimeStep(double newTimeStep) {
 	if (newTimeStep != 0)
 	    this.TimeStep = newTimeStep;
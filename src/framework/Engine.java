@@ -0,0 +1,297 @@
+/*
+ * Engine.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Headless driver for a Manager. Unlike ui.ManagerUI it does not pace the steps by the wall clock nor render anything, so a topology is
+ * simulated as fast as the CPU allows. The simulated time is still kept in Manager's Clock, so modules see exactly the same time values they
+ * would see when run from the UI.
+ * <p>
+ * With partitioning on, runSteps() and runUntilTime() split the topology into partitions (see Partition), cutting the wires of highest
+ * latency between them, and run every partition on its own worker. The partitions are run in windows of steps no longer than the latency
+ * of any cut wire, and only wait for each other at the end of a window, where the packets sent over the cut wires are passed on. The
+ * results are the same as those of an unpartitioned run.
+ *
+ * @author Rohit
+ *
+ */
+public class Engine {
+    private Manager manager;
+    private boolean running = false;
+    private long    steps   = 0;    // Simulated time advanced since start(), skipped idle steps included.
+    private ForkJoinPool workers = null; // Runs the partitions; null when partitioning is off.
+
+    public Engine(Manager manager) {
+	this.manager = manager;
+    }
+
+    public Engine(String title) {
+	this(new Manager(title));
+    }
+
+    public Manager getManager() {
+	return manager;
+    }
+
+    /**
+     * Resets the Manager and readies it for simulation. Calling any of the run methods without calling this first calls it automatically.
+     */
+    public void start() {
+	manager.initSimulation();
+	steps = 0;
+	running = true;
+    }
+
+    /**
+     * Carries on the simulation the Manager is already in, e.g. one run by ui.ManagerUI, instead of resetting it on the first run. Unlike the
+     * Engine, which keeps the next step to run in the clock, ManagerUI keeps the last step run, so the clock is moved on by one.
+     */
+    public void resume() {
+	manager.clock.incrTime();
+	steps = 0;
+	running = true;
+    }
+
+    /**
+     * Hands a simulation carried on by resume() back, leaving the last step run in the clock.
+     */
+    public void suspend() {
+	manager.clock.setTime(getTime() - 1);
+	running = false;
+    }
+
+    /**
+     * Ends the simulation and resets all the modules and wires.
+     */
+    public void stop() {
+	manager.endSimulation();
+	running = false;
+    }
+
+    /**
+     * Saves the state of the simulation, see Checkpoint. Starts the simulation first if it was not running.
+     */
+    public void saveCheckpoint(File file) throws IOException {
+	if (!running)
+	    start();
+	Checkpoint.save(manager, file);
+    }
+
+    /**
+     * Restores a state saved by saveCheckpoint() and continues the simulation from it, instead of from the start. The manager must have the
+     * topology the checkpoint was saved from.
+     */
+    public void restoreCheckpoint(File file) throws IOException {
+	Checkpoint.restore(manager, file);
+	steps = 0;
+	running = true;
+    }
+
+    /**
+     * Turns partitioned runs on or off.
+     *
+     * @param threads
+     *                Number of partitions to split the topology into, each run on a worker of its own. 0 or 1 turns partitioning off.
+     */
+    public void setPartitioned(int threads) {
+	if (workers != null)
+	    workers.shutdown();
+	workers = threads > 1 ? new ForkJoinPool(threads) : null;
+    }
+
+    public boolean isPartitioned() {
+	return workers != null;
+    }
+
+    public boolean isRunning() {
+	return running;
+    }
+
+    /**
+     * @return The simulated time advanced since the last call to start(). In event driven mode this includes the idle steps skipped over.
+     */
+    public long getStepsRun() {
+	return steps;
+    }
+
+    /**
+     * @return The current simulated time.
+     */
+    public long getTime() {
+	return (long) manager.clock.getTime();
+    }
+
+    /**
+     * Simulates exactly one step and advances the clock.
+     */
+    public void step() {
+	if (!running)
+	    start();
+	manager.stepSimulation();
+	manager.clock.incrTime();
+	steps++;
+    }
+
+    /**
+     * In event driven mode moves the clock straight to the next step at which something happens, but not beyond limit.
+     */
+    private void skipIdleTime(long limit) {
+	if (!manager.isEventDriven())
+	    return;
+	long now = getTime();
+	long next = Math.min(manager.getNextEventTime(), limit);
+	if (next > now) {
+	    manager.clock.setTime(next);
+	    steps += next - now;
+	}
+    }
+
+    /**
+     * Simulates n steps. In event driven mode steps at which nothing happens are skipped over, but are still counted.
+     *
+     * @param n
+     * @return The simulated time advanced, i.e. n.
+     */
+    public long runSteps(long n) {
+	if (!running)
+	    start();
+	long end = getTime() + n;
+	if (workers != null) {
+	    runPartitioned(end);
+	    return n;
+	}
+	while (getTime() < end) {
+	    skipIdleTime(end);
+	    if (getTime() < end)
+		step();
+	}
+	return n;
+    }
+
+    /**
+     * Simulates till the simulated time reaches the given time.
+     *
+     * @param time
+     * @return The simulated time advanced, 0 if time has already been reached.
+     */
+    public long runUntilTime(long time) {
+	if (!running)
+	    start();
+	long start = getTime();
+	if (workers != null && time > start) {
+	    runPartitioned(time);
+	    return time - start;
+	}
+	while (getTime() < time) {
+	    skipIdleTime(time);
+	    if (getTime() < time)
+		step();
+	}
+	return Math.max(0, getTime() - start);
+    }
+
+    /**
+     * Simulates till condition is reached or maxSteps steps have been simulated, whichever happens first. In event driven mode the condition
+     * is only checked at steps where something happens, so time based conditions are better expressed with runUntilTime(). The condition
+     * needs the whole topology at every step, so this never uses partitions.
+     *
+     * @param condition
+     * @param maxSteps
+     *                Upper bound on the number of steps, so that a condition which is never reached does not hang the caller. Pass
+     *                Long.MAX_VALUE for no bound.
+     * @return The simulated time advanced, including idle steps skipped over in event driven mode.
+     */
+    public long runUntil(StopCondition condition, long maxSteps) {
+	if (!running)
+	    start();
+	long start = getTime();
+	long end = maxSteps > Long.MAX_VALUE - start ? Long.MAX_VALUE : start + maxSteps;
+	while (getTime() < end && !condition.reached(manager)) {
+	    step();
+	    skipIdleTime(end);
+	}
+	return getTime() - start;
+    }
+
+    private void runPartitioned(long end) {
+	ArrayList<Partition> partitions = manager.getPartitions(workers.getParallelism());
+	long now = getTime();
+	for (int i = 0; i < partitions.size(); i++)
+	    partitions.get(i).init(now, manager.isEventDriven());
+	long start = now;
+	while (true) {
+	    long next = Long.MAX_VALUE;
+	    long window = Long.MAX_VALUE;
+	    for (int i = 0; i < partitions.size(); i++) {
+		next = Math.min(next, partitions.get(i).getNextEventTime());
+		window = Math.min(window, partitions.get(i).getLookahead());
+	    }
+	    now = Math.max(now, next); // Nothing happens anywhere before next.
+	    if (now >= end)
+		break;
+	    long until = window >= end - now ? end : now + window;
+	    for (int i = 0; i < partitions.size(); i++)
+		partitions.get(i).beginWindow(until);
+	    workers.invoke(new PartitionTask(partitions, 0, partitions.size(), until));
+	    for (int i = 0; i < partitions.size(); i++)
+		partitions.get(i).endWindow(until);
+	    now = until;
+	}
+	manager.clock.setTime(end);
+	manager.profile(end - 1);
+	steps += end - start;
+	manager.resyncScheduler();
+    }
+
+    /**
+     * Runs a range of partitions up to end.
+     */
+    private static class PartitionTask extends RecursiveAction {
+	private static final long    serialVersionUID = 1L;
+	private ArrayList<Partition> partitions;
+	private int		  from;
+	private int		  to;
+	private long		 end;
+
+	PartitionTask(ArrayList<Partition> partitions, int from, int to, long end) {
+	    this.partitions = partitions;
+	    this.from = from;
+	    this.to = to;
+	    this.end = end;
+	}
+
+	@Override
+	protected void compute() {
+	    if (to - from == 1) {
+		partitions.get(from).runUntil(end);
+		return;
+	    }
+	    if (to - from < 1)
+		return;
+	    int mid = (from + to) >>> 1;
+	    invokeAll(new PartitionTask(partitions, from, mid, end), new PartitionTask(partitions, mid, to, end));
+	}
+    }
+}
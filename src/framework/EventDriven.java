@@ -0,0 +1,40 @@
+/*
+ * EventDriven.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+/**
+ * Implemented by modules that can tell the Scheduler when they next need to be stepped. A module implementing this is only stepped when a
+ * packet arrives on one of its ports, when one of its ports still holds unread data, or when the time it returned from getNextWakeup() is
+ * reached. Modules not implementing this are stepped on every step, as before.
+ *
+ * @author Rohit
+ *
+ */
+public interface EventDriven {
+    public static final long NEVER = Long.MAX_VALUE;
+
+    /**
+     * Called right after every step of the module.
+     *
+     * @param time
+     *                The time of the step just simulated.
+     * @return The time of the next step at which the module must be stepped even if no packet arrives, or NEVER.
+     */
+    public long getNextWakeup(long time);
+}
@@ -0,0 +1,227 @@
+/*
+ * HalfLink.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+import java.util.ArrayList;
+
+/**
+ * One end of a wire Partition has cut because its ports lie in different partitions. Each partition steps its own half, so the wire is
+ * stepped in two directions at once: a half takes the packets its port sends and delivers the packets going to its port, and
+ * Wire.beginWindow() and Wire.endWindow() move the packets between the halves and the wire itself between windows of steps.
+ * <p>
+ * A packet sent in a window is delivered after the window at the earliest, since the window is no longer than the latency of the wire.
+ * The only thing the far end does in a window that could matter for a packet delivered in it is a collision, and a collision with a
+ * packet that was on the wire before the window already marked it before the window. So a half only has to mark the packets it delivers
+ * after its own port sent, to get the same results as the whole wire.
+ *
+ * @author Rohit
+ *
+ */
+class HalfLink extends Wire {
+    private Wire	      wire;
+    private int	       side;	     // Index of port in wire.
+    private Port	      port;
+    private HalfLink	  halves[];	 // Both halves of wire, by side.
+    // Packets delivered to port in the current window, in the order the wire delivers them. Filled by Wire.beginWindow().
+    private ArrayList<Packet> inbox      = new ArrayList<Packet>();
+    private double[]	  inboxTimes = new double[8];
+    private int	       delivered  = 0;
+    // Packets taken from port in the current window and the times they were taken, put on the wire by Wire.endWindow().
+    private ArrayList<Packet> sent       = new ArrayList<Packet>();
+    private double[]	  sentTimes  = new double[8];
+    private ArrayList<Packet> dropped    = new ArrayList<Packet>();
+    private double[]	  droppedTimes = new double[8];
+    private boolean	   sending    = false; // Whether port has put a packet on the wire in the current window.
+
+    private HalfLink(Wire wire, int side, HalfLink halves[]) {
+	this.wire = wire;
+	this.side = side;
+	this.halves = halves;
+	port = wire.getPort(side);
+    }
+
+    /**
+     * @return The two halves of a wire with two ports, by port index.
+     */
+    static HalfLink[] cut(Wire wire) {
+	HalfLink halves[] = new HalfLink[2];
+	halves[0] = new HalfLink(wire, 0, halves);
+	halves[1] = new HalfLink(wire, 1, halves);
+	return halves;
+    }
+
+    /**
+     * @return The wire this is a half of.
+     */
+    Wire getWire() {
+	return wire;
+    }
+
+    /**
+     * Starts a window of steps ending at end, if this is the half of port 0. Must be called while neither half is being stepped.
+     */
+    void beginWindow(long end) {
+	if (side == 0)
+	    wire.beginWindow(halves, end);
+    }
+
+    /**
+     * Ends the window started by beginWindow(), if this is the half of port 0.
+     */
+    void endWindow(long end) {
+	if (side == 0)
+	    wire.endWindow(halves, end);
+    }
+
+    /**
+     * Forgets the packets of the last window. Called by Wire.beginWindow().
+     */
+    void clear() {
+	inbox.clear();
+	delivered = 0;
+	sent.clear();
+	dropped.clear();
+	sending = false;
+    }
+
+    /**
+     * Queues a packet to be delivered to port at the given time. Called by Wire.beginWindow() in delivery order.
+     */
+    void receive(Packet packet, double time) {
+	inboxTimes = add(inbox, inboxTimes, packet, time);
+    }
+
+    int getInboxSize() {
+	return inbox.size();
+    }
+
+    double getInboxTime(int i) {
+	return inboxTimes[i];
+    }
+
+    int getSentCount() {
+	return sent.size();
+    }
+
+    Packet getSent(int i) {
+	return sent.get(i);
+    }
+
+    double getSentTime(int i) {
+	return sentTimes[i];
+    }
+
+    int getDropCount() {
+	return dropped.size();
+    }
+
+    Packet getDrop(int i) {
+	return dropped.get(i);
+    }
+
+    double getDropTime(int i) {
+	return droppedTimes[i];
+    }
+
+    private static double[] add(ArrayList<Packet> packets, double times[], Packet packet, double time) {
+	if (packets.size() == times.length) {
+	    double t[] = new double[times.length * 2];
+	    System.arraycopy(times, 0, t, 0, times.length);
+	    times = t;
+	}
+	times[packets.size()] = time;
+	packets.add(packet);
+	return times;
+    }
+
+    @Override
+    public boolean step(double currtime) {
+	Metrics metrics = wire.getMetrics();
+	if (port.isActive() && port.isTransmiting() && port.hasData()) {
+	    Packet tempPacket = port.getPacket(wire);
+	    tempPacket.setFromPort(side);
+	    if (metrics != null)
+		metrics.countIn();
+	    if (wire.isDroppingPackets()) {
+		tempPacket.setDroppedPacket(true);
+		droppedTimes = add(dropped, droppedTimes, tempPacket, currtime);
+		wire.record(currtime, TraceRecorder.DROPPED, side, tempPacket);
+		if (metrics != null)
+		    metrics.countDrop();
+	    } else {
+		sentTimes = add(sent, sentTimes, tempPacket, currtime);
+		sending = true;
+		wire.record(currtime, TraceRecorder.SENT, side, tempPacket);
+	    }
+	}
+	while (delivered < inbox.size() && inboxTimes[delivered] <= currtime) {
+	    Packet tempPacket = inbox.get(delivered);
+	    inbox.set(delivered++, null);
+	    if (sending && !tempPacket.getWillGetCorrupt()) { // It was on the wire when port sent, see the class comment.
+		if (metrics != null)
+		    metrics.countCorruption();
+		tempPacket.setWillGetCorrupt();
+	    }
+	    if (port.isActive()) {
+		port.putPacket(tempPacket, wire);
+		wire.record(currtime, TraceRecorder.DELIVERED, side, tempPacket);
+		if (metrics != null)
+		    metrics.countOut();
+	    } else
+		tempPacket.release();
+	}
+	return true;
+    }
+
+    /**
+     * @return The time of the next packet to deliver to port in this window, or EventDriven.NEVER if there are none left.
+     */
+    @Override
+    public long getNextDeliveryTime() {
+	if (delivered == inbox.size())
+	    return EventDriven.NEVER;
+	return (long) Math.ceil(inboxTimes[delivered]);
+    }
+
+    /**
+     * Dropped packets are kept by the wire, which lets go of them in endWindow().
+     */
+    @Override
+    public long getNextDroppedExpiry() {
+	return EventDriven.NEVER;
+    }
+
+    @Override
+    public int getNoOfPorts() {
+	return 1;
+    }
+
+    @Override
+    public Port getPort(int index) {
+	return port;
+    }
+
+    /**
+     * Both halves are stepped at once, so neither times its steps into the metrics of the wire.
+     */
+    @Override
+    public Metrics getMetrics() {
+	return null;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Histogram.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Distribution of non-negative values in power of 2 buckets: bucket 0 counts the zeros and bucket i the values from 2^(i-1) to 2^i - 1. It
+ * can be recorded to from several threads without locking. Percentiles are only known to within their bucket, which is enough to tell a
+ * busy link from an idle one.
+ *
+ * @author Rohit
+ *
+ */
+public class Histogram {
+    public static final int BUCKETS = 64;
+
+    private AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private LongAdder       count   = new LongAdder();
+    private LongAdder       sum     = new LongAdder();
+    private AtomicLong      max     = new AtomicLong();
+
+    public void record(long value) {
+	if (value < 0)
+	    value = 0;
+	buckets.incrementAndGet(BUCKETS - Long.numberOfLeadingZeros(value));
+	count.increment();
+	sum.add(value);
+	long m = max.get();
+	while (value > m && !max.compareAndSet(m, value))
+	    m = max.get();
+    }
+
+    public long getCount() {
+	return count.sum();
+    }
+
+    public long getSum() {
+	return sum.sum();
+    }
+
+    public double getMean() {
+	long n = count.sum();
+	return n == 0 ? 0 : (double) sum.sum() / n;
+    }
+
+    public long getMax() {
+	return max.get();
+    }
+
+    /**
+     * @param p
+     *                Fraction of the values, from 0 to 1.
+     * @return A value that at least a fraction p of the recorded values do not exceed: the top of the bucket the percentile falls in, or the
+     *         max if that is lower.
+     */
+    public long getPercentile(double p) {
+	long n = count.sum();
+	if (n == 0)
+	    return 0;
+	long rank = (long) Math.ceil(p * n);
+	long seen = 0;
+	for (int i = 0; i < BUCKETS; i++) {
+	    seen += buckets.get(i);
+	    if (seen >= rank && seen > 0)
+		return Math.min((1L << i) - 1, max.get());
+	}
+	return max.get();
+    }
+
+    /**
+     * Forgets all values. Values recorded meanwhile may be partly kept.
+     */
+    public void reset() {
+	for (int i = 0; i < BUCKETS; i++)
+	    buckets.set(i, 0);
+	count.reset();
+	sum.reset();
+	max.set(0);
+    }
+}
@@ -18,8 +18,10 @@
  */
 package framework;
 
+import java.io.IOException;
 import java.util.ArrayList;
 import java.lang.String;
+import java.util.concurrent.ForkJoinPool;
 import module.Module;
 
 /**
@@ -31,6 +33,12 @@ public class Manager {
     private ArrayList<Wire>   wires   = null;
     private ArrayList<Module> modules = null;
     private String	    name;
+    private Scheduler	 scheduler   = null;
+    private boolean	   eventDriven = true;
+    private ForkJoinPool      pool	= null;	// Steps modules and wires in parallel; null when stepping sequentially.
+    private TraceRecorder     trace       = null;
+    private MetricsRegistry   metrics     = null;
+    private Profiler	  profiler    = null;
     public Clock	      clock;
 
     public Manager(String title) {
@@ -38,6 +46,7 @@ public class Manager {
 	clock = new Clock();
 	wires = new ArrayList<Wire>();
 	modules = new ArrayList<Module>();
+	scheduler = new Scheduler();
     }
 
     public String getName() {
@@ -64,16 +73,154 @@ public class Manager {
 
     public void addModule(Module m) {
 	modules.add(m);
+	if (metrics != null)
+	    metrics.attach(m);
     }
 
     public void addWire(Wire w) {
 	wires.add(w);
+	w.setTrace(trace, wires.size() - 1);
+	if (metrics != null)
+	    metrics.attach(w, wires.size() - 1);
+    }
+
+    /**
+	 * Starts collecting the metrics of every module and wire into registry, or stops if it is null. When metrics are off the modules, ports
+	 * and wires only pay for a null check.
+	 * 
+	 * @param registry
+	 */
+    public void setMetricsRegistry(MetricsRegistry registry) {
+	if (profiler != null && registry == null)
+	    setProfiler(null);
+	if (metrics != null)
+	    metrics.detach();
+	metrics = registry;
+	if (registry != null)
+	    registry.attach(this);
+    }
+
+    public MetricsRegistry getMetricsRegistry() {
+	return metrics;
+    }
+
+    /**
+	 * Reports the modules and wires which take the most time to step, or stops reporting if profiler is null. Metrics are turned on if
+	 * they are off, and stay on when profiling stops.
+	 * 
+	 * @param profiler
+	 */
+    public void setProfiler(Profiler profiler) {
+	if (this.profiler != null)
+	    this.profiler.detach();
+	this.profiler = profiler;
+	if (profiler == null)
+	    return;
+	if (metrics == null)
+	    setMetricsRegistry(new MetricsRegistry());
+	profiler.attach(this, (long) clock.getTime());
+    }
+
+    public Profiler getProfiler() {
+	return profiler;
+    }
+
+    /**
+	 * Lets the profiler report once the steps up to and including time have run.
+	 */
+    void profile(long time) {
+	if (profiler != null)
+	    profiler.check(time);
+    }
+
+    /**
+	 * Records the packets sent, delivered and dropped by every wire into trace, until it is set to null. Wires are identified in the
+	 * trace by their index in getWires(). When tracing is off the wires only pay for a null check.
+	 * 
+	 * @param trace
+	 *                The recorder, or null to stop tracing. It is flushed by endSimulation() but must be closed by the caller.
+	 */
+    public void setTraceRecorder(TraceRecorder trace) {
+	this.trace = trace;
+	for (int i = 0; i < wires.size(); i++)
+	    wires.get(i).setTrace(trace, i);
+    }
+
+    public TraceRecorder getTraceRecorder() {
+	return trace;
     }
 
     /*
          * public Port getPort(Module mod){ return new Port("test",mod); }
          */
 
+    /**
+	 * In event driven mode (the default) only the modules and wires which have something to do are stepped, see Scheduler. Switching it
+	 * off makes stepSimulation() step every module and wire on every step.
+	 * 
+	 * @param state
+	 */
+    public void setEventDriven(boolean state) {
+	if (state && !eventDriven)
+	    scheduler.init(modules, wires, (long) clock.getTime());
+	eventDriven = state;
+    }
+
+    public boolean isEventDriven() {
+	return eventDriven;
+    }
+
+    /**
+	 * Steps the modules, and then the wires, of every step on the given number of threads. The results are the same as with the
+	 * sequential loop, since within a step modules only touch their own ports and every port is plugged into a single wire.
+	 * 
+	 * @param threads
+	 *                Number of threads to use. 0 or 1 steps everything on the calling thread, as before.
+	 */
+    public void setParallelism(int threads) {
+	if (pool != null)
+	    pool.shutdown();
+	pool = threads > 1 ? new ForkJoinPool(threads) : null;
+	scheduler.setPool(pool);
+    }
+
+    public int getParallelism() {
+	return pool == null ? 1 : pool.getParallelism();
+    }
+
+    /**
+	 * Splits the topology into partitions of about the same size, cutting wires of high latency between them. Used by Engine to simulate
+	 * them side by side, see Partition.
+	 * 
+	 * @param count
+	 *                Most partitions to split into, at least 1.
+	 * @return
+	 */
+    public ArrayList<Partition> getPartitions(int count) {
+	return Partition.split(modules, wires, count);
+    }
+
+    /**
+	 * Requeues every module and wire at the current time. Needed after the modules were stepped by something else than this Manager, e.g.
+	 * by Engine's partitions.
+	 */
+    void resyncScheduler() {
+	if (eventDriven)
+	    scheduler.init(modules, wires, (long) clock.getTime());
+    }
+
+    /**
+	 * Returns the time of the next step at which something will happen. In event driven mode nothing will change in the steps before this,
+	 * so the clock can be moved directly to it. Without event driven mode it is always the current time.
+	 * 
+	 * @return
+	 */
+    public long getNextEventTime() {
+	if (eventDriven)
+	    return scheduler.nextEventTime();
+	return (long) clock.getTime();
+    }
+
     /**
          * Initiates the simulation. It actually resets the variables and readies Manager for simulation.
          * 
@@ -83,6 +230,7 @@ public class Manager {
 	for (int i = 0; i < modules.size(); i++)
 	    modules.get(i).reset();
 	clock.setTimeStep(1);
+	scheduler.init(modules, wires, 0);
     }
 
     /**
@@ -91,12 +239,20 @@ public class Manager {
     public void stepSimulation() {
 	// clock.incrTime();
 	// ALL BACKEND SIMUATION COLTROL CODE GOES HERE
-	for (int i = 0; i < modules.size(); i++) {
-	    (modules.get(i)).step(clock.getTime());
-	}
-	for (int i = 0; i < wires.size(); i++) {
-	    (wires.get(i)).step(clock.getTime());
+	if (eventDriven) {
+	    scheduler.runTick((long) clock.getTime());
+	} else if (pool != null) {
+	    pool.invoke(StepTask.forModules(modules, null, modules.size(), clock.getTime()));
+	    pool.invoke(StepTask.forWires(wires, null, wires.size(), clock.getTime()));
+	} else {
+	    for (int i = 0; i < modules.size(); i++) {
+		Metrics.step(modules.get(i), clock.getTime());
+	    }
+	    for (int i = 0; i < wires.size(); i++) {
+		Metrics.step(wires.get(i), clock.getTime());
+	    }
 	}
+	profile((long) clock.getTime());
     }
 
     public void endSimulation() {
@@ -106,5 +262,13 @@ public class Manager {
 	for (int i = 0; i < wires.size(); i++) {
 	    wires.get(i).reset();
 	}
+	if (trace != null) {
+	    try {
+		trace.flush();
+	    } catch (IOException e) {
+		System.out.println("Error while writing the packet trace.");
+		e.printStackTrace();
+	    }
+	}
     }
 }
\ No newline at end of file
@@ -0,0 +1,201 @@
+/*
+ * Metrics.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import module.Module;
+
+/**
+ * Counters and histograms of one module or wire, kept while a MetricsRegistry is set on the Manager, see Manager.setMetricsRegistry().
+ * Packets in and out are counted by the ports of a module and by the wire itself, drops and corruptions by whichever of them notices, and the
+ * queue depth by the wire and by modules that buffer packets. The step time is measured around every step() of the module or wire.
+ * <p>
+ * Everything can be updated from the threads stepping the topology while the UI reads it.
+ *
+ * @author Rohit
+ *
+ */
+public class Metrics {
+    public static final String CSV_HEADER  = "name,packets in,packets out,drops,corruptions,queue mean,queue max,steps,step ns mean,step ns p50,step ns p99,step ns max";
+
+    private String	     name;
+    private LongAdder	  packetsIn   = new LongAdder();
+    private LongAdder	  packetsOut  = new LongAdder();
+    private LongAdder	  drops       = new LongAdder();
+    private LongAdder	  corruptions = new LongAdder();
+    private Histogram	  queueDepth  = new Histogram();
+    private Histogram	  stepTime    = new Histogram();
+    private int		sampleEvery = 1;	       // Only every sampleEvery-th step is timed.
+    private int		untilSample = 0;
+    long		       profiledNanos = 0;	     // Step time sum and count at the last Profiler report, used by Profiler only.
+    long		       profiledSteps = 0;
+
+    public Metrics(String name) {
+	this.name = name;
+    }
+
+    public String getName() {
+	return name;
+    }
+
+    public void setName(String name) {
+	this.name = name;
+    }
+
+    public void countIn() {
+	packetsIn.increment();
+    }
+
+    public void countOut() {
+	packetsOut.increment();
+    }
+
+    public void countDrop() {
+	drops.increment();
+    }
+
+    public void countCorruption() {
+	corruptions.increment();
+    }
+
+    public void recordQueueDepth(int depth) {
+	queueDepth.record(depth);
+    }
+
+    public void recordStepTime(long nanos) {
+	stepTime.record(nanos);
+    }
+
+    /**
+     * Times only every n-th step from now on, so timing costs less on topologies with cheap steps. The step time histogram then holds a
+     * sample of the steps.
+     */
+    public void setStepTimeSampling(int n) {
+	sampleEvery = Math.max(1, n);
+	untilSample = 0;
+    }
+
+    public int getStepTimeSampling() {
+	return sampleEvery;
+    }
+
+    /**
+     * @return true if the step about to be run is to be timed. Only called by the thread stepping the module or wire.
+     */
+    private boolean sampleStep() {
+	if (--untilSample > 0)
+	    return false;
+	untilSample = sampleEvery;
+	return true;
+    }
+
+    public long getPacketsIn() {
+	return packetsIn.sum();
+    }
+
+    public long getPacketsOut() {
+	return packetsOut.sum();
+    }
+
+    public long getDrops() {
+	return drops.sum();
+    }
+
+    public long getCorruptions() {
+	return corruptions.sum();
+    }
+
+    public Histogram getQueueDepth() {
+	return queueDepth;
+    }
+
+    public Histogram getStepTime() {
+	return stepTime;
+    }
+
+    public void reset() {
+	profiledNanos = 0;
+	profiledSteps = 0;
+	packetsIn.reset();
+	packetsOut.reset();
+	drops.reset();
+	corruptions.reset();
+	queueDepth.reset();
+	stepTime.reset();
+    }
+
+    /**
+     * Appends the metrics as text for the Statistics tab of moduleWindow.
+     */
+    public void appendTo(StringBuilder s) {
+	s.append("Packets in:  ").append(getPacketsIn()).append('\n');
+	s.append("Packets out: ").append(getPacketsOut()).append('\n');
+	s.append("Drops:       ").append(getDrops()).append('\n');
+	s.append("Corruptions: ").append(getCorruptions()).append('\n');
+	if (queueDepth.getCount() > 0)
+	    s.append(String.format("Queue depth: mean %.1f, max %d\n", queueDepth.getMean(), queueDepth.getMax()));
+	if (sampleEvery > 1)
+	    s.append("Steps timed: 1 in ").append(sampleEvery).append('\n');
+	s.append(String.format("Steps:       %d\nStep time:   mean %.0f ns, p50 %d ns, p99 %d ns, max %d ns\n", stepTime.getCount(), stepTime
+		.getMean(), stepTime.getPercentile(0.5), stepTime.getPercentile(0.99), stepTime.getMax()));
+    }
+
+    /**
+     * Appends the metrics as a line of CSV, in the order of CSV_HEADER.
+     */
+    public void appendCsv(StringBuilder s) {
+	s.append('"').append(name.replace("\"", "\"\"")).append('"');
+	s.append(',').append(getPacketsIn()).append(',').append(getPacketsOut()).append(',').append(getDrops()).append(',').append(
+		getCorruptions());
+	s.append(',').append(String.format("%.2f", queueDepth.getMean())).append(',').append(queueDepth.getMax());
+	s.append(',').append(stepTime.getCount()).append(',').append(String.format("%.0f", stepTime.getMean()));
+	s.append(',').append(stepTime.getPercentile(0.5)).append(',').append(stepTime.getPercentile(0.99)).append(',').append(
+		stepTime.getMax());
+	s.append('\n');
+    }
+
+    /**
+     * Steps m, timing the step if m has metrics.
+     */
+    static void step(Module m, double time) {
+	Metrics metrics = m.getMetrics();
+	if (metrics == null || !metrics.sampleStep()) {
+	    m.step(time);
+	    return;
+	}
+	long start = System.nanoTime();
+	m.step(time);
+	metrics.recordStepTime(System.nanoTime() - start);
+    }
+
+    /**
+     * Steps w, timing the step if w has metrics.
+     */
+    static void step(Wire w, double time) {
+	Metrics metrics = w.getMetrics();
+	if (metrics == null || !metrics.sampleStep()) {
+	    w.step(time);
+	    return;
+	}
+	long start = System.nanoTime();
+	w.step(time);
+	metrics.recordStepTime(System.nanoTime() - start);
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * MetricsRegistry.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+
+import module.Module;
+
+/**
+ * The metrics of all the modules and wires of a Manager. Set it with Manager.setMetricsRegistry() to start collecting, which gives every
+ * module and wire, including those added later, a Metrics of its own; set null to stop. The metrics are shown in the Statistics tab of each
+ * module's window, and snapshot() or export() give them all at once.
+ *
+ * @author Rohit
+ *
+ */
+public class MetricsRegistry {
+    private Manager manager     = null;
+    private int     sampleEvery = 1;
+
+    /**
+     * Called by Manager.setMetricsRegistry().
+     */
+    void attach(Manager m) {
+	manager = m;
+	ArrayList<Module> modules = m.getModules();
+	for (int i = 0; i < modules.size(); i++)
+	    attach(modules.get(i));
+	ArrayList<Wire> wires = m.getWires();
+	for (int i = 0; i < wires.size(); i++)
+	    attach(wires.get(i), i);
+    }
+
+    void attach(Module m) {
+	Metrics metrics = new Metrics(m.getName() + m.getSno());
+	metrics.setStepTimeSampling(sampleEvery);
+	m.setMetrics(metrics);
+    }
+
+    void attach(Wire w, int index) {
+	Metrics metrics = new Metrics("Wire " + index);
+	metrics.setStepTimeSampling(sampleEvery);
+	w.setMetrics(metrics);
+    }
+
+    /**
+     * Times only every n-th step of each module and wire, including those added later. See Metrics.setStepTimeSampling().
+     */
+    public void setStepTimeSampling(int n) {
+	sampleEvery = Math.max(1, n);
+	if (manager == null)
+	    return;
+	ArrayList<Module> modules = manager.getModules();
+	for (int i = 0; i < modules.size(); i++)
+	    if (modules.get(i).getMetrics() != null)
+		modules.get(i).getMetrics().setStepTimeSampling(sampleEvery);
+	ArrayList<Wire> wires = manager.getWires();
+	for (int i = 0; i < wires.size(); i++)
+	    if (wires.get(i).getMetrics() != null)
+		wires.get(i).getMetrics().setStepTimeSampling(sampleEvery);
+    }
+
+    public int getStepTimeSampling() {
+	return sampleEvery;
+    }
+
+    /**
+     * Called by Manager.setMetricsRegistry() when this registry is replaced. The modules and wires stop collecting.
+     */
+    void detach() {
+	if (manager == null)
+	    return;
+	ArrayList<Module> modules = manager.getModules();
+	for (int i = 0; i < modules.size(); i++)
+	    modules.get(i).setMetrics(null);
+	ArrayList<Wire> wires = manager.getWires();
+	for (int i = 0; i < wires.size(); i++)
+	    wires.get(i).setMetrics(null);
+	manager = null;
+    }
+
+    /**
+     * Zeroes the metrics of all the modules and wires.
+     */
+    public void reset() {
+	if (manager == null)
+	    return;
+	ArrayList<Module> modules = manager.getModules();
+	for (int i = 0; i < modules.size(); i++)
+	    if (modules.get(i).getMetrics() != null)
+		modules.get(i).getMetrics().reset();
+	ArrayList<Wire> wires = manager.getWires();
+	for (int i = 0; i < wires.size(); i++)
+	    if (wires.get(i).getMetrics() != null)
+		wires.get(i).getMetrics().reset();
+    }
+
+    /**
+     * @return The metrics of all the modules and then all the wires as CSV, with a header line and a line per module or wire. Taken while
+     *         the simulation runs the counters are not all from the same step.
+     */
+    public String snapshot() {
+	StringBuilder s = new StringBuilder(Metrics.CSV_HEADER).append('\n');
+	if (manager == null)
+	    return s.toString();
+	ArrayList<Module> modules = manager.getModules();
+	for (int i = 0; i < modules.size(); i++) {
+	    Metrics m = modules.get(i).getMetrics();
+	    if (m != null) {
+		m.setName(modules.get(i).getName() + modules.get(i).getSno()); // The serial no. may have changed since it was attached.
+		m.appendCsv(s);
+	    }
+	}
+	ArrayList<Wire> wires = manager.getWires();
+	for (int i = 0; i < wires.size(); i++)
+	    if (wires.get(i).getMetrics() != null)
+		wires.get(i).getMetrics().appendCsv(s);
+	return s.toString();
+    }
+
+    /**
+     * Writes snapshot() to file.
+     */
+    public void export(File file) throws IOException {
+	Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+	try {
+	    out.write(snapshot());
+	} finally {
+	    out.close();
+	}
+    }
+}
@@ -18,85 +18,199 @@
  */
 package framework;
 
-import module.DataUI;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Packet.java A data packet in the network, can be in a port or a wire. Created on December 7, 2006,
+ * <p>
+ * The data is kept as bytes which copies of the packet share, since it is never changed once the packet is made. Packets copied with
+ * PacketPool.copyOf() come from a pool and go back to it when release() has been called once for every holder.
+ * <p>
+ * A packet holds only simulation state. How a packet is drawn is kept by WireUI, keyed by the packet's id.
  * 
  * @author Nirupam
  * @author Rohit
  */
 public class Packet {
+    /** Flags */
+    private static final int CORRUPT      = 1;
+    private static final int WILL_CORRUPT = 2;
+    private static final int DROPPED      = 4;
+    private static final int REPLY        = 8;
+
+    private static final AtomicIntegerFieldUpdater<Packet> REFS = AtomicIntegerFieldUpdater.newUpdater(Packet.class, "refs");
+    private static final AtomicLong nextId = new AtomicLong();
+    private static final Charset    UTF8   = Charset.forName("UTF-8");
+
     /** Data Members */
-    private long    toId;
-    private long    fromId;
-    private boolean corrupt;
-    private boolean willGetCorrupt = false;
-    private long    size;
-    private String  data;
-    private Port    fromPort;
-    private boolean isDropped      = false;
-    // private double pickUpTime;
-    public boolean  isReply	= false;
-    public DataUI   dataUI;
-    public int      toPort	 = 0;
+    private long	 id;
+    private long	 toId;
+    private long	 fromId;
+    private int	  flags;
+    private long	 size;
+    private byte	 data[];    // Shared by the copies of this packet, never changed.
+    private int	  fromPort = -1; // Index in the wire of the port the packet was sent from, -1 till it is sent.
+    private volatile int refs   = 1;  // Holders of the packet, only counted for pooled packets.
+    boolean	      pooled = false;
+    public int	   toPort = 0;
 
     /** constructors */
     public Packet() {
+	id = nextId.incrementAndGet();
 	toId = 0;
 	fromId = 0;
 	size = 0;
-	corrupt = false;
 	data = null;
-	dataUI = null;// new DataUI();
     }
 
     public Packet(Packet p) {
-	toId = p.toId;
-	fromId = p.fromId;
-	size = p.size;
-	corrupt = p.corrupt;
-	data = new String(p.data);
-	isReply = p.isReply;
+	copyFrom(p);
     }
 
     /* member functions */
     public Packet(long toId, long fromId, long size, String data) {
-	this.toId = toId;
-	this.fromId = fromId;
-	this.size = size;
-	this.data = data;
-	corrupt = false;
-	dataUI = null;// new DataUI();
+	this(toId, fromId, size, encode(data));
     }
 
     public Packet(long toId, long fromId, long size, String data, int portIndex) {
-	this.toId = toId;
-	this.fromId = fromId;
-	this.size = size;
-	this.data = data;
-	corrupt = false;
-	dataUI = null;// new DataUI();
+	this(toId, fromId, size, encode(data));
 	toPort = portIndex;
     }
 
     public Packet(long toId, long fromId, long size, String data, int portIndex, boolean reply) {
+	this(toId, fromId, size, encode(data));
+	toPort = portIndex;
+	setReply(reply);
+    }
+
+    /**
+     * @param data
+     *                The data of the packet. It is not copied, so it must not be changed afterwards.
+     */
+    public Packet(long toId, long fromId, long size, byte data[]) {
+	id = nextId.incrementAndGet();
 	this.toId = toId;
 	this.fromId = fromId;
 	this.size = size;
 	this.data = data;
-	corrupt = false;
-	dataUI = null;// new DataUI();
-	toPort = portIndex;
-	isReply = reply;
+    }
+
+    /**
+     * Data given as text, e.g. typed into a module's window, is kept as UTF-8.
+     */
+    private static byte[] encode(String s) {
+	if (s == null)
+	    return null;
+	return s.getBytes(UTF8);
+    }
+
+    /**
+     * Copies what a copy of a packet keeps: the ids, size, data (shared), and the corrupt and reply flags. The copy gets an id of its own.
+     */
+    void copyFrom(Packet p) {
+	id = nextId.incrementAndGet();
+	toId = p.toId;
+	fromId = p.fromId;
+	size = p.size;
+	data = p.data;
+	flags = p.flags & (CORRUPT | REPLY);
+    }
+
+    /**
+     * Writes the packet for Checkpoint. Its holders are not counted: a restored packet is never put back in the pool.
+     */
+    void saveState(Checkpoint c) throws IOException {
+	DataOutputStream out = c.getOutput();
+	out.writeLong(toId);
+	out.writeLong(fromId);
+	out.writeLong(size);
+	out.writeInt(flags);
+	out.writeInt(toPort);
+	out.writeInt(data == null ? -1 : data.length);
+	if (data != null)
+	    out.write(data);
+	out.writeInt(fromPort);
+    }
+
+    void restoreState(Checkpoint c) throws IOException {
+	DataInputStream in = c.getInput();
+	toId = in.readLong();
+	fromId = in.readLong();
+	size = in.readLong();
+	flags = in.readInt();
+	toPort = in.readInt();
+	int length = in.readInt();
+	if (length >= 0) {
+	    data = new byte[length];
+	    in.readFully(data);
+	} else
+	    data = null;
+	fromPort = in.readInt();
+    }
+
+    /**
+     * Clears the packet before it is put back in the pool.
+     */
+    void clear() {
+	toId = 0;
+	fromId = 0;
+	size = 0;
+	data = null;
+	flags = 0;
+	fromPort = -1;
+	toPort = 0;
+	refs = 1;
+    }
+
+    /**
+     * Adds a holder, e.g. when the same packet is delivered to more than one port.
+     * 
+     * @return
+     */
+    public Packet retain() {
+	REFS.incrementAndGet(this);
+	return this;
+    }
+
+    /**
+     * Called by a holder that is done with the packet. The packet must not be used by that holder afterwards. When the last holder of a
+     * pooled packet releases it, it goes back to the pool.
+     */
+    public void release() {
+	if (REFS.decrementAndGet(this) == 0 && pooled)
+	    PacketPool.recycle(this);
     }
 
     public void gotCorrupted() {
-	corrupt = true;
+	flags |= CORRUPT;
     }
 
     public boolean isCorrupt() {
-	return corrupt;
+	return (flags & CORRUPT) != 0;
+    }
+
+    public boolean isReply() {
+	return (flags & REPLY) != 0;
+    }
+
+    public void setReply(boolean reply) {
+	if (reply)
+	    flags |= REPLY;
+	else
+	    flags &= ~REPLY;
+    }
+
+    /**
+     * @return A number unique to this packet (a pooled packet gets a new one each time it is reused). Only meant to tell packets apart, it
+     *         depends on the order packets are made in, which is not fixed when modules are stepped in parallel.
+     */
+    public long getId() {
+	return id;
     }
 
     public long getToId() {
@@ -107,37 +221,92 @@ public class Packet {
 	return fromId;
     }
 
+    public long getSize() {
+	return size;
+    }
+
+    /**
+     * @return The data as a new String. Modules that only inspect the data should use the methods below, which do not allocate.
+     */
     public String getData() {
+	if (data == null)
+	    return null;
+	return new String(data, UTF8);
+    }
+
+    /**
+     * @return The data. It is shared with the copies of this packet, so it must not be changed.
+     */
+    public byte[] getDataBytes() {
 	return data;
     }
 
-    public Port getFromPort() {
+    public int getDataLength() {
+	return data == null ? 0 : data.length;
+    }
+
+    public boolean dataStartsWith(String prefix) {
+	if (data == null || data.length < prefix.length())
+	    return false;
+	for (int i = 0; i < prefix.length(); i++) {
+	    char c = prefix.charAt(i);
+	    if (c >= 0x80) // Not a single UTF-8 byte.
+		return getData().startsWith(prefix);
+	    if (data[i] != (byte) c)
+		return false;
+	}
+	return true;
+    }
+
+    /**
+     * @return The data read as a decimal number.
+     * @throws NumberFormatException
+     *                 If the data is not a number.
+     */
+    public int getDataAsInt() {
+	if (data == null || data.length == 0)
+	    throw new NumberFormatException("no data");
+	int i = 0, n = 0;
+	boolean neg = data[0] == '-';
+	if (neg || data[0] == '+')
+	    i++;
+	if (i == data.length)
+	    throw new NumberFormatException(getData());
+	for (; i < data.length; i++) {
+	    if (data[i] < '0' || data[i] > '9')
+		throw new NumberFormatException(getData());
+	    n = n * 10 + (data[i] - '0');
+	}
+	return neg ? -n : n;
+    }
+
+    /**
+     * @return The index in the wire of the port the packet was sent from, see Wire.getPort(), or -1 if it has not been sent on a wire.
+     */
+    public int getFromPort() {
 	return fromPort;
     }
 
     public boolean isDroppedPacket() {
-	return isDropped;
+	return (flags & DROPPED) != 0;
     }
 
     public void setDroppedPacket(boolean f) {
-	isDropped = f;
+	if (f)
+	    flags |= DROPPED;
+	else
+	    flags &= ~DROPPED;
     }
 
-    /*
-     * public double getPickUpTime (){ return pickUpTime; }
-     */
-    public void setFromPort(Port port) {
-	fromPort = port;
+    public void setFromPort(int index) {
+	fromPort = index;
     }
 
-    /*
-     * public void setPickUpTime (double time){ pickUpTime=time; }
-     */
     public void setWillGetCorrupt() {
-	willGetCorrupt = true;
+	flags |= WILL_CORRUPT;
     }
 
     public boolean getWillGetCorrupt() {
-	return willGetCorrupt;
+	return (flags & WILL_CORRUPT) != 0;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,74 @@
+/*
+ * PacketPool.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+/**
+ * Pool of the packets modules copy when they forward a packet, e.g. a hub copying a packet to all its ports. Each thread has its own pool,
+ * so modules stepped in parallel do not contend for it.
+ * <p>
+ * A packet taken from the pool has one holder. Whoever gets it from a port is its holder and must call Packet.release() once done with it,
+ * and Packet.retain() must be called for every extra holder. A packet that is never released is not an error, it is just left to the
+ * garbage collector instead of being reused.
+ *
+ * @author Rohit
+ *
+ */
+public class PacketPool {
+    public static final int MAX_SIZE = 256; // Max packets kept per thread. Packets released when the pool is full are left to the GC.
+
+    private static final ThreadLocal<PacketPool> pools = new ThreadLocal<PacketPool>() {
+	@Override
+	protected PacketPool initialValue() {
+	    return new PacketPool();
+	}
+    };
+
+    private Packet free[] = new Packet[MAX_SIZE];
+    private int    size   = 0;
+
+    private PacketPool() {
+    }
+
+    /**
+     * @return A pooled copy of p, sharing p's data. Like new Packet(p), only the ids, size, data and the corrupt and reply flags are copied.
+     */
+    public static Packet copyOf(Packet p) {
+	PacketPool pool = pools.get();
+	Packet copy;
+	if (pool.size > 0) {
+	    copy = pool.free[--pool.size];
+	    pool.free[pool.size] = null;
+	} else {
+	    copy = new Packet();
+	    copy.pooled = true;
+	}
+	copy.copyFrom(p);
+	return copy;
+    }
+
+    /**
+     * Called by Packet.release() when the last holder of a pooled packet released it.
+     */
+    static void recycle(Packet p) {
+	p.clear();
+	PacketPool pool = pools.get();
+	if (pool.size < MAX_SIZE)
+	    pool.free[pool.size++] = p;
+    }
+}
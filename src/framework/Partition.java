@@ -0,0 +1,322 @@
+/*
+ * Partition.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+
+import module.Module;
+
+/**
+ * A set of modules of a Manager, with the wires between them, which Engine steps on its own worker with its own Scheduler. Wires joining
+ * two partitions are cut in two, see HalfLink, and the partitions are only brought together between windows of steps no longer than the
+ * latency of any cut wire. Nothing one partition does in a window can reach another before the window ends, so no partition waits for
+ * another within a window.
+ *
+ * @author Rohit
+ *
+ */
+public class Partition {
+    private ArrayList<Module>   modules   = new ArrayList<Module>();
+    private ArrayList<Wire>     wires     = new ArrayList<Wire>();
+    private ArrayList<HalfLink> halves    = new ArrayList<HalfLink>();
+    private ArrayList<Wire>     links     = new ArrayList<Wire>(); // Wires and halves, in the order of the wires in Manager.
+    private Scheduler	   scheduler = null;
+    private boolean	     eventDriven;
+    private long		time;	    // Next step to be simulated.
+
+    private Partition() {
+    }
+
+    public ArrayList<Module> getModules() {
+	return modules;
+    }
+
+    /**
+     * @return The wires whose ports all lie in this partition.
+     */
+    public ArrayList<Wire> getWires() {
+	return wires;
+    }
+
+    /**
+     * @return The wires joining this partition to others.
+     */
+    public ArrayList<Wire> getCutWires() {
+	ArrayList<Wire> cut = new ArrayList<Wire>(halves.size());
+	for (int i = 0; i < halves.size(); i++)
+	    cut.add(halves.get(i).getWire());
+	return cut;
+    }
+
+    /**
+     * Readies the partition to simulate from the given time on.
+     */
+    void init(long time, boolean eventDriven) {
+	this.time = time;
+	this.eventDriven = eventDriven;
+	if (eventDriven) {
+	    if (scheduler == null)
+		scheduler = new Scheduler();
+	    scheduler.init(modules, links, time);
+	}
+    }
+
+    /**
+     * @return The number of steps the partition can be simulated for without hearing from the others, or Long.MAX_VALUE if no wire is cut.
+     */
+    long getLookahead() {
+	long lookahead = Long.MAX_VALUE;
+	for (int i = 0; i < halves.size(); i++)
+	    lookahead = Math.min(lookahead, Math.max(1, (long) halves.get(i).getWire().getLatency()));
+	return lookahead;
+    }
+
+    /**
+     * Returns the time of the next step at which something happens in the partition or on the wires it cuts. Only valid between windows.
+     * Without event driven mode it is always the next step.
+     */
+    long getNextEventTime() {
+	if (!eventDriven)
+	    return time;
+	long next = scheduler.nextEventTime();
+	for (int i = 0; i < halves.size(); i++) {
+	    Wire wire = halves.get(i).getWire();
+	    next = Math.min(next, Math.min(wire.getNextDeliveryTime(), wire.getNextDroppedExpiry()));
+	}
+	return next;
+    }
+
+    /**
+     * Starts a window of steps ending at end on the wires this partition cuts. Must be called for every partition before any is run.
+     */
+    void beginWindow(long end) {
+	for (int i = 0; i < halves.size(); i++)
+	    halves.get(i).beginWindow(end);
+    }
+
+    /**
+     * Ends the window on the wires this partition cuts. Must only be called once every partition has run to the end of the window.
+     */
+    void endWindow(long end) {
+	for (int i = 0; i < halves.size(); i++)
+	    halves.get(i).endWindow(end);
+    }
+
+    /**
+     * Simulates every step before end, skipping those at which nothing happens in event driven mode.
+     */
+    void runUntil(long end) {
+	if (eventDriven)
+	    for (int i = 0; i < halves.size(); i++) {
+		HalfLink half = halves.get(i);
+		if (half.getNextDeliveryTime() != Scheduler.NEVER)
+		    scheduler.scheduleWire(half, half.getNextDeliveryTime());
+	    }
+	while (time < end) {
+	    if (eventDriven) {
+		long next = scheduler.nextEventTime();
+		if (next >= end) {
+		    time = end;
+		    break;
+		}
+		if (next > time)
+		    time = next;
+		scheduler.runTick(time);
+	    } else {
+		for (int i = 0; i < modules.size(); i++)
+		    Metrics.step(modules.get(i), time);
+		for (int i = 0; i < links.size(); i++)
+		    Metrics.step(links.get(i), time);
+	    }
+	    time++;
+	}
+    }
+
+    /**
+     * Splits the given modules and wires into at most count partitions of about the same size. Parts of the topology not joined by any wire
+     * are never split up. Within a part, the wires that can be cut are cut from the highest latency down, till no piece holds more than its
+     * share of the modules or all of them are cut. Wires can be cut if they have two ports, no queue capacity and a latency of at least
+     * one step. The pieces are then dealt out to the partitions in breadth first order, so that pieces near each other mostly end up
+     * together and only the wires between partitions need cutting. Modules and wires keep their relative order within each partition, so
+     * every partition steps them in the same order as Manager.
+     *
+     * @param modules
+     * @param wires
+     * @param count
+     * @return
+     */
+    static ArrayList<Partition> split(ArrayList<Module> modules, ArrayList<Wire> wires, int count) {
+	int n = modules.size();
+	IdentityHashMap<Module, Integer> moduleIds = new IdentityHashMap<Module, Integer>();
+	for (int i = 0; i < n; i++)
+	    moduleIds.put(modules.get(i), i);
+	int ends[][] = new int[2][wires.size()]; // Index of the module at each end of every wire, -1 if there is none.
+	long latency[] = new long[wires.size()]; // Latency of every wire that can be cut, 0 for the others.
+	for (int w = 0; w < wires.size(); w++) {
+	    Wire wire = wires.get(w);
+	    for (int i = 0; i < 2; i++) {
+		Port p = i < wire.getNoOfPorts() ? wire.getPort(i) : null;
+		Integer owner = p == null ? null : moduleIds.get(p.getOwner());
+		ends[i][w] = owner == null ? -1 : owner;
+	    }
+	    if (wire.getNoOfPorts() == 2 && ends[0][w] >= 0 && ends[1][w] >= 0 && ends[0][w] != ends[1][w] && wire.getQueueCapacity() == 0
+		    && wire.getLatency() >= 1)
+		latency[w] = (long) wire.getLatency();
+	}
+
+	// Wires with a latency of at least threshold are cut. Pieces only get smaller as it goes down, so the highest one that works is
+	// searched for, with Long.MAX_VALUE cutting nothing.
+	long thresholds[] = latency.clone();
+	Arrays.sort(thresholds);
+	int k = 0;
+	for (int i = thresholds.length - 1; i >= 0 && thresholds[i] > 0; i--)
+	    if (k == 0 || thresholds[i] != thresholds[k - 1])
+		thresholds[k++] = thresholds[i];
+	long candidates[] = new long[k + 1];
+	candidates[0] = Long.MAX_VALUE;
+	System.arraycopy(thresholds, 0, candidates, 1, k);
+	int share = (n + count - 1) / Math.max(count, 1);
+	int lo = 0, hi = k;
+	while (lo < hi) {
+	    int mid = (lo + hi) >>> 1;
+	    if (largest(pieces(n, ends, latency, candidates[mid]), n) <= share)
+		hi = mid;
+	    else
+		lo = mid + 1;
+	}
+	long threshold = candidates[lo];
+	int piece[] = pieces(n, ends, latency, threshold);
+
+	// Orders the pieces breadth first over the wires cut between them and deals them out by their weight, a module or a wire each.
+	int weight[] = new int[n];
+	int total = n;
+	for (int i = 0; i < n; i++)
+	    weight[piece[i]]++;
+	for (int w = 0; w < wires.size(); w++)
+	    if (latency[w] < threshold) {
+		int owner = ends[0][w] >= 0 ? ends[0][w] : ends[1][w];
+		if (owner >= 0) {
+		    weight[piece[owner]]++;
+		    total++;
+		}
+	    }
+	int adjacent[][] = new int[n][];
+	int degree[] = new int[n];
+	for (int w = 0; w < wires.size(); w++)
+	    if (latency[w] >= threshold) {
+		degree[piece[ends[0][w]]]++;
+		degree[piece[ends[1][w]]]++;
+	    }
+	for (int i = 0; i < n; i++)
+	    adjacent[i] = new int[degree[i]];
+	Arrays.fill(degree, 0);
+	for (int w = 0; w < wires.size(); w++)
+	    if (latency[w] >= threshold) {
+		int a = piece[ends[0][w]], b = piece[ends[1][w]];
+		adjacent[a][degree[a]++] = b;
+		adjacent[b][degree[b]++] = a;
+	    }
+	int part[] = new int[n]; // Partition of every piece, plus one once it has been reached.
+	int order[] = new int[n];
+	int dealt = 0;
+	for (int i = 0, tail = 0; i < n; i++) {
+	    if (piece[i] != i || part[i] != 0)
+		continue;
+	    int head = tail;
+	    order[tail++] = i;
+	    part[i] = 1;
+	    while (head < tail) {
+		int p = order[head++];
+		part[p] = (int) ((long) dealt * count / total) + 1;
+		dealt += weight[p];
+		for (int j = 0; j < adjacent[p].length; j++)
+		    if (part[adjacent[p][j]] == 0) {
+			part[adjacent[p][j]] = 1;
+			order[tail++] = adjacent[p][j];
+		    }
+	    }
+	}
+
+	ArrayList<Partition> partitions = new ArrayList<Partition>();
+	for (int i = 0; i < count; i++)
+	    partitions.add(new Partition());
+	for (int i = 0; i < n; i++)
+	    partitions.get(part[piece[i]] - 1).modules.add(modules.get(i));
+	for (int w = 0; w < wires.size(); w++) {
+	    Wire wire = wires.get(w);
+	    if (latency[w] >= threshold && part[piece[ends[0][w]]] != part[piece[ends[1][w]]]) {
+		HalfLink half[] = HalfLink.cut(wire);
+		for (int i = 0; i < 2; i++) {
+		    Partition p = partitions.get(part[piece[ends[i][w]]] - 1);
+		    p.halves.add(half[i]);
+		    p.links.add(half[i]);
+		}
+	    } else {
+		int owner = ends[0][w] >= 0 ? ends[0][w] : ends[1][w];
+		Partition p = partitions.get(owner >= 0 ? part[piece[owner]] - 1 : 0);
+		p.wires.add(wire);
+		p.links.add(wire);
+	    }
+	}
+	for (int i = partitions.size() - 1; i >= 0; i--)
+	    if (partitions.get(i).modules.isEmpty() && partitions.get(i).links.isEmpty())
+		partitions.remove(i);
+	return partitions;
+    }
+
+    /**
+     * @return The piece of every module once the wires with a latency of at least threshold are cut, as the index of one of its modules.
+     */
+    private static int[] pieces(int n, int ends[][], long latency[], long threshold) {
+	int parent[] = new int[n];
+	for (int i = 0; i < n; i++)
+	    parent[i] = i;
+	for (int w = 0; w < latency.length; w++)
+	    if (latency[w] < threshold && ends[0][w] >= 0 && ends[1][w] >= 0)
+		union(parent, ends[0][w], ends[1][w]);
+	for (int i = 0; i < n; i++)
+	    parent[i] = find(parent, i);
+	return parent;
+    }
+
+    private static int largest(int piece[], int n) {
+	int size[] = new int[n];
+	int max = 0;
+	for (int i = 0; i < n; i++)
+	    max = Math.max(max, ++size[piece[i]]);
+	return max;
+    }
+
+    private static int find(int parent[], int i) {
+	while (parent[i] != i) {
+	    parent[i] = parent[parent[i]];
+	    i = parent[i];
+	}
+	return i;
+    }
+
+    private static void union(int parent[], int a, int b) {
+	a = find(parent, a);
+	b = find(parent, b);
+	if (a != b)
+	    parent[Math.max(a, b)] = Math.min(a, b);
+    }
+}
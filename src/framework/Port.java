@@ -19,6 +19,10 @@
 package framework;
 
 import module.Module;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 
 /**
@@ -26,26 +30,29 @@ import java.util.ArrayList;
  * 
  * @author Rohit
  */
-public class Port {
+public class Port implements Checkpointable {
     /** Data members */
     private boolean	 pktAvailable  = false;
     private boolean	 active	= true; // enables or disables the port.
     private String	  name	  = null;
     private double	  speed	 = 1;    // Consider later
     private Packet	  packet	= null;  ;
-    private Packet	  emittedPacket = null;
     private Module	  owner	 = null;
     private boolean	 transmiting   = false;
+    private Wire	    wire	  = null;  // The wire this port is plugged into. Set by Wire.addPort().
     private ArrayList<Long> compId;
 
     public Port(String Name, Module owner) {
 	name = Name;
-	System.out.println("added new port to " + owner.getName());
 	this.owner = owner;
 	compId = new ArrayList<Long>();
 	packet = new Packet();
     }
 
+    public String getName() {
+	return name;
+    }
+
     public boolean hasData() {
 	return pktAvailable;
     }
@@ -61,6 +68,12 @@ public class Port {
     public void putPacket(Packet packet, Wire caller) {
 	if (active) {
 	    this.packet = packet;
+	    Metrics metrics = owner.getMetrics();
+	    if (metrics != null) {
+		metrics.countIn();
+		if (pktAvailable)
+		    metrics.countCorruption();
+	    }
 	    // System.out.println("yapee");
 	    if (pktAvailable == true)
 		packet.gotCorrupted();
@@ -75,9 +88,11 @@ public class Port {
 
     public void putPacket(Packet packet, Module caller) {
 	if (caller.equals(owner)) {
+	    Metrics metrics = owner.getMetrics();
+	    if (metrics != null)
+		metrics.countOut();
 
 	    this.packet = packet;
-	    this.emittedPacket = packet;
 	    if (pktAvailable == true)
 		;
 
@@ -91,33 +106,56 @@ public class Port {
     }
 
     /**
-     * Returns the packet without destroying it. This is required by WireUI to draw data packets in GUI.
+     * Returns the packet without taking it. Only valid while hasData() is true: once taken the packet belongs to whoever took it and
+     * may already be released and reused.
      * 
-     * @return
+     * @return The waiting packet, or null if it has been taken.
+     * @deprecated Nothing reads a port's packet without taking it any more.
      */
+    @Deprecated
     public Packet getPacketCopy() {
-	return packet;
+	return pktAvailable ? packet : null;
     }
 
+    /**
+     * Hands the waiting packet over to the wire. The port lets go of it, so the wire may release it.
+     */
     public Packet getPacket(Wire caller) {
 	pktAvailable = false;
 	transmiting = false;
 	// System.out.println("port of.trans false.............."+this.owner.getName());
-	return packet;
+	Packet p = packet;
+	packet = null;
+	return p;
     }
 
+    /**
+     * Hands the waiting packet over to the owner module. The port lets go of it, so the module may release it.
+     */
     public Packet getPacket(Module caller) {
 	if (caller.equals(owner)) {
 	    pktAvailable = false;
-	    return packet;
+	    Packet p = packet;
+	    packet = null;
+	    return p;
 	} else
 	    return null;
     }
 
+    /**
+     * Returns the waiting packet to the owner module, keeping it if state is true. Like getPacketCopy() only valid while hasData() is
+     * true.
+     * 
+     * @deprecated Use hasData() and getPacket(Module).
+     */
+    @Deprecated
     public Packet getPacketRepeated(Module caller, boolean state) {
 	if (caller.equals(owner)) {
+	    Packet p = pktAvailable ? packet : null;
 	    pktAvailable = state;
-	    return packet;
+	    if (!state)
+		packet = null;
+	    return p;
 	} else
 	    return null;
     }
@@ -126,6 +164,17 @@ public class Port {
 	return owner;
     }
 
+    /**
+     * @return The wire this port is connected to, or null if it is not connected yet.
+     */
+    public Wire getWire() {
+	return wire;
+    }
+
+    void setWire(Wire w) {
+	wire = w;
+    }
+
     public void addCompId(long id) {
 	compId.add(id);
     }
@@ -154,13 +203,26 @@ public class Port {
 	return transmiting;
     }
 
-    public Packet getEmittedPacket() {
-	if (emittedPacket != null) {
-	    Packet tempPacket = emittedPacket;
-	    emittedPacket = null;
-	    return tempPacket;
-	} else
-	    return null;
+    public void saveState(Checkpoint c) throws IOException {
+	DataOutputStream out = c.getOutput();
+	out.writeBoolean(active);
+	out.writeBoolean(pktAvailable);
+	out.writeBoolean(transmiting);
+	c.writePacket(pktAvailable ? packet : null); // Once taken the packet belongs to whoever took it.
+	out.writeInt(compId.size());
+	for (int i = 0; i < compId.size(); i++)
+	    out.writeLong(compId.get(i));
+    }
+
+    public void restoreState(Checkpoint c) throws IOException {
+	DataInputStream in = c.getInput();
+	active = in.readBoolean();
+	pktAvailable = in.readBoolean();
+	transmiting = in.readBoolean();
+	packet = c.readPacket();
+	compId.clear();
+	for (int i = in.readInt(); i > 0; i--)
+	    compId.add(in.readLong());
     }
 
 }
\ No newline at end of file
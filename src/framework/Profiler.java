@@ -0,0 +1,283 @@
+/*
+ * Profiler.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.PriorityQueue;
+
+import module.Module;
+
+/**
+ * Finds which modules and wires the simulation spends its time on. Set it with Manager.setProfiler(); it then times every sampleEvery-th
+ * step of each module and wire into their Metrics, and every interval steps reports the topN modules and wires whose steps took the most
+ * time in that interval. Timings of sampled steps are scaled up by sampleEvery, so the reported times are estimates of the whole interval.
+ * <p>
+ * Reports are given to the Listener, if there is one. The last one is kept by getLastReport().
+ *
+ * @author Rohit
+ *
+ */
+public class Profiler {
+    public interface Listener {
+	public void reported(Report report);
+    }
+
+    /**
+     * Time spent stepping one module or wire in an interval.
+     */
+    public static class Entry implements Comparable<Entry> {
+	private String name;
+	private long   nanos;
+	private long   steps;
+
+	Entry(String name, long nanos, long steps) {
+	    this.name = name;
+	    this.nanos = nanos;
+	    this.steps = steps;
+	}
+
+	public String getName() {
+	    return name;
+	}
+
+	/**
+	 * @return The estimated nanoseconds spent stepping it.
+	 */
+	public long getNanos() {
+	    return nanos;
+	}
+
+	/**
+	 * @return The estimated number of steps.
+	 */
+	public long getSteps() {
+	    return steps;
+	}
+
+	public int compareTo(Entry e) {
+	    return nanos < e.nanos ? -1 : nanos > e.nanos ? 1 : 0;
+	}
+    }
+
+    /**
+     * The most expensive modules and wires of one interval.
+     */
+    public static class Report {
+	private long	     from;
+	private long	     to;
+	private long	     totalNanos;
+	private int	      components;
+	private ArrayList<Entry> top;
+
+	Report(long from, long to, long totalNanos, int components, ArrayList<Entry> top) {
+	    this.from = from;
+	    this.to = to;
+	    this.totalNanos = totalNanos;
+	    this.components = components;
+	    this.top = top;
+	}
+
+	/**
+	 * @return The first step of the interval.
+	 */
+	public long getFrom() {
+	    return from;
+	}
+
+	/**
+	 * @return The last step of the interval.
+	 */
+	public long getTo() {
+	    return to;
+	}
+
+	/**
+	 * @return The estimated nanoseconds spent stepping all the modules and wires.
+	 */
+	public long getTotalNanos() {
+	    return totalNanos;
+	}
+
+	/**
+	 * @return The number of modules and wires that were stepped.
+	 */
+	public int getComponents() {
+	    return components;
+	}
+
+	/**
+	 * @return The most expensive modules and wires, most expensive first.
+	 */
+	public ArrayList<Entry> getTop() {
+	    return top;
+	}
+
+	@Override
+	public String toString() {
+	    StringBuilder s = new StringBuilder();
+	    s.append(String.format("Steps %d-%d: %.3f ms stepping %d modules and wires\n", from, to, totalNanos / 1e6, components));
+	    for (int i = 0; i < top.size(); i++) {
+		Entry e = top.get(i);
+		s.append(String.format("%3d. %-24s %10.3f ms %5.1f%% %8.0f ns/step\n", i + 1, e.name, e.nanos / 1e6, totalNanos == 0 ? 0.0
+			: 100.0 * e.nanos / totalNanos, e.steps == 0 ? 0.0 : (double) e.nanos / e.steps));
+	    }
+	    return s.toString();
+	}
+    }
+
+    private int		  sampleEvery;
+    private long		 interval;
+    private int		  topN;
+    private Listener	     listener   = null;
+    private Manager	      manager    = null;
+    private long		 from       = 0;	   // First step of the current interval.
+    private long		 nextReport = 0;
+    private volatile Report      lastReport = null;
+    private long		 takenSteps = 0;	   // Steps counted by the last take().
+
+    /**
+     * @param sampleEvery
+     *                Only every sampleEvery-th step of each module and wire is timed. 1 times them all.
+     * @param interval
+     *                Steps between reports.
+     * @param topN
+     *                Number of modules and wires in each report.
+     */
+    public Profiler(int sampleEvery, long interval, int topN) {
+	this.sampleEvery = Math.max(1, sampleEvery);
+	this.interval = Math.max(1, interval);
+	this.topN = Math.max(1, topN);
+    }
+
+    public void setListener(Listener listener) {
+	this.listener = listener;
+    }
+
+    /**
+     * @return The report of the last interval, or null if no interval has ended yet.
+     */
+    public Report getLastReport() {
+	return lastReport;
+    }
+
+    /**
+     * Called by Manager.setProfiler(). The current interval starts at time.
+     */
+    void attach(Manager m, long time) {
+	manager = m;
+	m.getMetricsRegistry().setStepTimeSampling(sampleEvery);
+	collect(false, time);
+	from = time;
+	nextReport = time + interval;
+    }
+
+    /**
+     * Called by Manager.setProfiler() when this profiler is replaced. Steps are timed again without sampling.
+     */
+    void detach() {
+	if (manager == null)
+	    return;
+	if (manager.getMetricsRegistry() != null)
+	    manager.getMetricsRegistry().setStepTimeSampling(1);
+	manager = null;
+    }
+
+    /**
+     * Called after the steps up to and including time have run, while no module or wire is being stepped. Reports the interval if it has
+     * ended. In event driven and partitioned runs steps are skipped, so an interval ends at the first step run after it is due.
+     */
+    void check(long time) {
+	if (manager == null || time + 1 < nextReport)
+	    return;
+	Report r = collect(true, time);
+	from = time + 1;
+	nextReport = from + interval;
+	lastReport = r;
+	if (listener != null)
+	    listener.reported(r);
+    }
+
+    /**
+     * Takes the time each module and wire spent since the last call, keeping the topN. Returns the report of the steps from the start of
+     * the interval to to, or null if report is false.
+     */
+    private Report collect(boolean report, long to) {
+	PriorityQueue<Entry> top = new PriorityQueue<Entry>(topN + 1);
+	long total = 0;
+	int components = 0;
+	ArrayList<Module> modules = manager.getModules();
+	for (int i = 0; i < modules.size(); i++) {
+	    Metrics m = modules.get(i).getMetrics();
+	    if (m == null)
+		continue;
+	    long nanos = take(m);
+	    if (!report || nanos == 0)
+		continue;
+	    total += nanos;
+	    components++;
+	    if (isTop(top, nanos))
+		add(top, new Entry(modules.get(i).getName() + modules.get(i).getSno(), nanos, takenSteps));
+	}
+	ArrayList<Wire> wires = manager.getWires();
+	for (int i = 0; i < wires.size(); i++) {
+	    Metrics m = wires.get(i).getMetrics();
+	    if (m == null)
+		continue;
+	    long nanos = take(m);
+	    if (!report || nanos == 0)
+		continue;
+	    total += nanos;
+	    components++;
+	    if (isTop(top, nanos))
+		add(top, new Entry("Wire " + i, nanos, takenSteps));
+	}
+	if (!report)
+	    return null;
+	ArrayList<Entry> sorted = new ArrayList<Entry>(top);
+	Collections.sort(sorted, Collections.reverseOrder());
+	return new Report(from, to, total, components, sorted);
+    }
+
+    /**
+     * @return The estimated nanoseconds m's steps took since the last call. The estimated number of steps is left in takenSteps.
+     */
+    private long take(Metrics m) {
+	long sum = m.getStepTime().getSum();
+	long count = m.getStepTime().getCount();
+	long nanos = (sum - m.profiledNanos) * m.getStepTimeSampling();
+	takenSteps = (count - m.profiledSteps) * m.getStepTimeSampling();
+	m.profiledNanos = sum;
+	m.profiledSteps = count;
+	return nanos;
+    }
+
+    /**
+     * @return true if an entry of nanos would be among the topN so far. Checked first so that names are only built for those entries.
+     */
+    private boolean isTop(PriorityQueue<Entry> top, long nanos) {
+	return top.size() < topN || top.peek().nanos < nanos;
+    }
+
+    private void add(PriorityQueue<Entry> top, Entry e) {
+	top.add(e);
+	if (top.size() > topN)
+	    top.poll();
+    }
+}
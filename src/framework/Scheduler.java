@@ -0,0 +1,316 @@
+/*
+ * Scheduler.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.concurrent.ForkJoinPool;
+
+import module.Module;
+
+/**
+ * Event queue used by Manager in event driven mode. Instead of stepping every module and wire on every step, only those that have something
+ * to do are stepped:
+ * <ul>
+ * <li>a module when a wire delivered a packet to one of its ports, when its ports still hold unread data or when its EventDriven wakeup time
+ * is reached (modules not implementing EventDriven are stepped every time, as before);</li>
+ * <li>a wire when a module put a packet on one of its ports or when its next in-flight packet becomes deliverable.</li>
+ * </ul>
+ * Within a step all due modules are stepped before all due wires, each in the order they were added to Manager, so the results are the same
+ * as those of the plain loop in Manager.stepSimulation().
+ * <p>
+ * With a ForkJoinPool set, all the modules due in a step are stepped together on the pool, then all the wires due in that step. Queuing what
+ * they do next is done afterwards on the calling thread in index order, so the queue evolves exactly as it does sequentially.
+ *
+ * @author Rohit
+ *
+ */
+class Scheduler {
+    static final long			NEVER     = EventDriven.NEVER;
+    private static final int		 MODULE    = 0;
+    private static final int		 WIRE      = 1;
+
+    private ArrayList<Module>		modules   = null;
+    private ArrayList<Wire>		  wires     = null;
+    private IdentityHashMap<Module, Integer> moduleIds = null;
+    private IdentityHashMap<Wire, Integer>   wireIds   = null;
+    private long[]			   moduleNext;	   // Earliest time each module is queued for, NEVER if it is not queued.
+    private long[]			   wireNext;
+    // Binary min-heap of (key, id). key = time * 2 + MODULE or WIRE, so modules come before wires in a step. Ties are broken by id.
+    private long[]			   heapKeys  = new long[64];
+    private int[]			    heapIds   = new int[64];
+    private int			      size      = 0;
+    private ForkJoinPool		 pool      = null;
+    private int[]			    dueModules = new int[64]; // Modules and wires popped for the current step in parallel mode.
+    private int[]			    dueWires   = new int[64];
+    private int			      dueModuleCount;
+    private int			      dueWireCount;
+
+    /**
+     * Prepares the queue for the given modules and wires and queues all of them at time.
+     */
+    void init(ArrayList<Module> modules, ArrayList<Wire> wires, long time) {
+	this.modules = modules;
+	this.wires = wires;
+	moduleIds = new IdentityHashMap<Module, Integer>();
+	wireIds = new IdentityHashMap<Wire, Integer>();
+	moduleNext = new long[modules.size()];
+	wireNext = new long[wires.size()];
+	size = 0;
+	for (int i = 0; i < modules.size(); i++) {
+	    moduleIds.put(modules.get(i), i);
+	    moduleNext[i] = NEVER;
+	    scheduleModule(i, time);
+	}
+	for (int i = 0; i < wires.size(); i++) {
+	    wireIds.put(wires.get(i), i);
+	    if (wires.get(i) instanceof HalfLink)
+		wireIds.put(((HalfLink) wires.get(i)).getWire(), i); // Ports know the wire, not its half.
+	    wireNext[i] = NEVER;
+	    scheduleWire(i, time);
+	}
+    }
+
+    /**
+     * @return The time of the earliest queued step, or NEVER if nothing is queued.
+     */
+    long nextEventTime() {
+	while (size > 0 && isStale(heapKeys[0], heapIds[0]))
+	    pop();
+	return size == 0 ? NEVER : heapKeys[0] >> 1;
+    }
+
+    /**
+     * @param pool
+     *                The pool to step modules and wires on, or null to step them on the calling thread.
+     */
+    void setPool(ForkJoinPool pool) {
+	this.pool = pool;
+    }
+
+    /**
+     * Steps every module and then every wire that is due at or before time.
+     */
+    void runTick(long time) {
+	if (pool != null) {
+	    runTickParallel(time);
+	    return;
+	}
+	long limit = time * 2 + WIRE;
+	while (size > 0 && heapKeys[0] <= limit) {
+	    long key = heapKeys[0];
+	    int id = heapIds[0];
+	    pop();
+	    if (isStale(key, id))
+		continue;
+	    if ((key & 1) == MODULE) {
+		moduleNext[id] = NEVER;
+		stepModule(id, time);
+	    } else {
+		wireNext[id] = NEVER;
+		stepWire(id, time);
+	    }
+	}
+    }
+
+    private void runTickParallel(long time) {
+	dueModuleCount = 0;
+	dueWireCount = 0;
+	popDue(time * 2 + MODULE);
+	if (dueModuleCount > 0) {
+	    pool.invoke(StepTask.forModules(modules, dueModules, dueModuleCount, time));
+	    for (int i = 0; i < dueModuleCount; i++)
+		afterModule(dueModules[i], time);
+	}
+	popDue(time * 2 + WIRE); // Also picks up the wires the modules above transmitted on.
+	if (dueWireCount > 0) {
+	    pool.invoke(StepTask.forWires(wires, dueWires, dueWireCount, time));
+	    for (int i = 0; i < dueWireCount; i++)
+		afterWire(dueWires[i], time);
+	}
+    }
+
+    /**
+     * Moves every queued entry with a key up to limit into dueModules or dueWires, in the order the sequential loop would step them.
+     */
+    private void popDue(long limit) {
+	while (size > 0 && heapKeys[0] <= limit) {
+	    long key = heapKeys[0];
+	    int id = heapIds[0];
+	    pop();
+	    if (isStale(key, id))
+		continue;
+	    if ((key & 1) == MODULE) {
+		moduleNext[id] = NEVER;
+		if (dueModuleCount == dueModules.length)
+		    dueModules = grow(dueModules);
+		dueModules[dueModuleCount++] = id;
+	    } else {
+		wireNext[id] = NEVER;
+		if (dueWireCount == dueWires.length)
+		    dueWires = grow(dueWires);
+		dueWires[dueWireCount++] = id;
+	    }
+	}
+    }
+
+    private static int[] grow(int[] a) {
+	int[] b = new int[a.length * 2];
+	System.arraycopy(a, 0, b, 0, a.length);
+	return b;
+    }
+
+    private boolean isStale(long key, int id) {
+	if ((key & 1) == MODULE)
+	    return moduleNext[id] != key >> 1;
+	else
+	    return wireNext[id] != key >> 1;
+    }
+
+    private void stepModule(int id, long time) {
+	Metrics.step(modules.get(id), time);
+	afterModule(id, time);
+    }
+
+    /**
+     * Queues what a module needs after it was stepped at time.
+     */
+    private void afterModule(int id, long time) {
+	Module m = modules.get(id);
+	Port ports[] = m.getPorts();
+	if (ports != null) {
+	    for (int i = 0; i < m.getNoOfPorts(); i++) {
+		Port p = ports[i];
+		if (p == null)
+		    continue;
+		if (p.isTransmiting()) {
+		    if (p.getWire() != null)
+			scheduleWire(p.getWire(), time);
+		} else if (p.hasData())
+		    scheduleModule(id, time + 1);
+	    }
+	}
+	if (m instanceof EventDriven) {
+	    long next = ((EventDriven) m).getNextWakeup(time);
+	    if (next != NEVER)
+		scheduleModule(id, Math.max(next, time + 1));
+	} else
+	    scheduleModule(id, time + 1);
+    }
+
+    private void stepWire(int id, long time) {
+	Metrics.step(wires.get(id), time);
+	afterWire(id, time);
+    }
+
+    /**
+     * Queues the modules a wire delivered to at time, and the wire itself for its next delivery.
+     */
+    private void afterWire(int id, long time) {
+	Wire w = wires.get(id);
+	for (int i = 0; i < w.getNoOfPorts(); i++) {
+	    Port p = w.getPort(i);
+	    if (p.hasData() && !p.isTransmiting()) {
+		Integer owner = moduleIds.get(p.getOwner());
+		if (owner != null)
+		    scheduleModule(owner, time + 1);
+	    }
+	}
+	long next = Math.min(w.getNextDeliveryTime(), w.getNextDroppedExpiry()); // The wire also lets go of its dropped packets in step().
+	if (next != NEVER)
+	    scheduleWire(id, Math.max(next, time + 1));
+    }
+
+    private void scheduleModule(int id, long time) {
+	if (time < moduleNext[id]) {
+	    moduleNext[id] = time;
+	    push(time * 2 + MODULE, id);
+	}
+    }
+
+    /**
+     * Queues a wire, or the half of a cut wire, for the given time if it is one of those this queue was initialised with.
+     */
+    void scheduleWire(Wire w, long time) {
+	Integer id = wireIds.get(w);
+	if (id != null)
+	    scheduleWire(id, time);
+    }
+
+    private void scheduleWire(int id, long time) {
+	if (time < wireNext[id]) {
+	    wireNext[id] = time;
+	    push(time * 2 + WIRE, id);
+	}
+    }
+
+    // --------------------Heap-----------------------------------------------------------------------------------------------------------
+
+    private boolean less(int a, int b) {
+	return heapKeys[a] < heapKeys[b] || (heapKeys[a] == heapKeys[b] && heapIds[a] < heapIds[b]);
+    }
+
+    private void swap(int a, int b) {
+	long k = heapKeys[a];
+	heapKeys[a] = heapKeys[b];
+	heapKeys[b] = k;
+	int i = heapIds[a];
+	heapIds[a] = heapIds[b];
+	heapIds[b] = i;
+    }
+
+    private void push(long key, int id) {
+	if (size == heapKeys.length) {
+	    long[] k = new long[size * 2];
+	    int[] i = new int[size * 2];
+	    System.arraycopy(heapKeys, 0, k, 0, size);
+	    System.arraycopy(heapIds, 0, i, 0, size);
+	    heapKeys = k;
+	    heapIds = i;
+	}
+	int c = size++;
+	heapKeys[c] = key;
+	heapIds[c] = id;
+	while (c > 0) {
+	    int parent = (c - 1) / 2;
+	    if (!less(c, parent))
+		break;
+	    swap(c, parent);
+	    c = parent;
+	}
+    }
+
+    private void pop() {
+	size--;
+	heapKeys[0] = heapKeys[size];
+	heapIds[0] = heapIds[size];
+	int c = 0;
+	while (true) {
+	    int l = c * 2 + 1, r = l + 1, min = c;
+	    if (l < size && less(l, min))
+		min = l;
+	    if (r < size && less(r, min))
+		min = r;
+	    if (min == c)
+		break;
+	    swap(c, min);
+	    c = min;
+	}
+    }
+}
@@ -0,0 +1,79 @@
+/*
+ * StepTask.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+import java.util.ArrayList;
+import java.util.concurrent.RecursiveAction;
+
+import module.Module;
+
+/**
+ * Steps a range of modules or of wires on a ForkJoinPool. Used by Manager and Scheduler when parallelism is on.
+ * <p>
+ * A module only reads and writes its own ports while stepping and a port is plugged into at most one wire, so all the modules (or all the
+ * wires) of a step can be stepped at the same time. Modules and wires are never stepped together: all the modules of a step finish before
+ * any wire of that step starts, which is the same order the sequential loop uses.
+ *
+ * @author Rohit
+ *
+ */
+class StepTask extends RecursiveAction {
+    private static final long serialVersionUID = 1L;
+    private static final int  THRESHOLD	= 32;   // Steps done in one task before the range is split.
+
+    private ArrayList<Module> modules;
+    private ArrayList<Wire>   wires;
+    private int[]	     ids;	      // Indices into modules or wires; if null the range itself is used as the indices.
+    private int	       from;
+    private int	       to;
+    private double	    time;
+
+    private StepTask(ArrayList<Module> modules, ArrayList<Wire> wires, int[] ids, int from, int to, double time) {
+	this.modules = modules;
+	this.wires = wires;
+	this.ids = ids;
+	this.from = from;
+	this.to = to;
+	this.time = time;
+    }
+
+    static StepTask forModules(ArrayList<Module> modules, int[] ids, int count, double time) {
+	return new StepTask(modules, null, ids, 0, count, time);
+    }
+
+    static StepTask forWires(ArrayList<Wire> wires, int[] ids, int count, double time) {
+	return new StepTask(null, wires, ids, 0, count, time);
+    }
+
+    @Override
+    protected void compute() {
+	if (to - from <= THRESHOLD) {
+	    for (int i = from; i < to; i++) {
+		int id = ids == null ? i : ids[i];
+		if (modules != null)
+		    Metrics.step(modules.get(id), time);
+		else
+		    Metrics.step(wires.get(id), time);
+	    }
+	    return;
+	}
+	int mid = (from + to) >>> 1;
+	invokeAll(new StepTask(modules, wires, ids, from, mid, time), new StepTask(modules, wires, ids, mid, to, time));
+    }
+}
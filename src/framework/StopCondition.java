@@ -1,34 +1,36 @@
-/*
- * RoutElement.java
- *
- * Copyright (C) 2008 AppleGrew
- *
- * This program is free software; you can redistribute it and/or
- * modify it under the terms of the GNU General Public License
- * as published by the Free Software Foundation; either version 2
- * of the License, or any later version.
- *
- * This program is distributed in the hope that it will be useful,
- * but WITHOUT ANY WARRANTY; without even the implied warranty of
- * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
- * GNU General Public License for more details.
- *
- * You should have received a copy of the GNU General Public License
- * along with this program; if not, write to the Free Software
- */
-package module.Router;
-
-/**
- * 
- * @author Rohit
- * 
- */
-public class RoutElement {
-    long compID;
-    int  health;
-
-    RoutElement(long c, int h) {
-	compID = c;
-	health = h;
-    }
-}
\ No newline at end of file
+/*
+ * StopCondition.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+/**
+ * A condition checked by Engine between simulation steps to decide when a run should end.
+ *
+ * @author Rohit
+ *
+ */
+public interface StopCondition {
+    /**
+     * Called before every step. Returning true stops the run before that step is simulated.
+     *
+     * @param manager
+     *                The Manager being simulated.
+     * @return
+     */
+    public boolean reached(Manager manager);
+}
@@ -0,0 +1,331 @@
+/*
+ * TopologyGenerator.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import module.Module;
+
+/**
+ * Builds large topologies into a Manager from code, for benchmarks and stress tests. The modules are made from their class names the way
+ * ManagerUI makes them, hosts being PcMod and switches RouterMod unless set otherwise, and get serial numbers from 1 in the order they are
+ * made. Only the Manager is filled; to show a topology use ManagerUI.placeModule() and connect() instead.
+ * <p>
+ * A switch has only a few ports, so the number of links per switch is limited by the fanout, which leaves a port free for the uplink. A
+ * star of more hosts than that is built as a tree of switches, the way large LANs are. Ring, random graph and fat-tree have loops, so the
+ * packets routers flood to unknown hosts keep going round; they are meant for stress tests.
+ *
+ * @author Rohit
+ *
+ */
+public class TopologyGenerator {
+    public static final String		PC	 = "module.Pc.PcMod";
+    public static final String		NODE       = "module.Node.NodeMod";
+    public static final String		HUB	= "module.Hub.HubMod";
+    public static final String		ROUTER     = "module.Router.RouterMod";
+
+    private Manager			   manager;
+    private Class<?>			  hostClass;
+    private Class<?>			  switchClass;
+    private int			       fanout     = 8;
+    private double			    latency    = Wire.DEFAULT_LATENCY;
+    private Random			    random     = new Random(0);
+    private int			       nextSno    = 1;
+    private ArrayList<Module>		 hosts      = new ArrayList<Module>();
+    private ArrayList<Module>		 switches   = new ArrayList<Module>();
+    private HashMap<Class<?>, Integer>	maxPorts   = new HashMap<Class<?>, Integer>();
+
+    public TopologyGenerator(Manager manager) {
+	this.manager = manager;
+	setHostClass(PC);
+	setSwitchClass(ROUTER);
+    }
+
+    /**
+     * @param className
+     *                Class of the modules at the edge, e.g. PC or NODE.
+     * @throws IllegalArgumentException
+     *                 If there is no such module class.
+     */
+    public void setHostClass(String className) {
+	hostClass = moduleClass(className);
+    }
+
+    /**
+     * @param className
+     *                Class of the modules the hosts are connected through, e.g. HUB or ROUTER.
+     * @throws IllegalArgumentException
+     *                 If there is no such module class.
+     */
+    public void setSwitchClass(String className) {
+	switchClass = moduleClass(className);
+    }
+
+    /**
+     * Sets the number of hosts or lower level switches connected to each switch. Default is 8.
+     */
+    public void setFanout(int fanout) {
+	if (fanout < 1)
+	    throw new IllegalArgumentException("Fanout must be at least 1.");
+	this.fanout = fanout;
+    }
+
+    /**
+     * Sets the latency of the wires made from now on.
+     */
+    public void setLatency(double latency) {
+	this.latency = latency;
+    }
+
+    /**
+     * Seeds the choices of randomGraph(), so the same seed gives the same topology.
+     */
+    public void setSeed(long seed) {
+	random = new Random(seed);
+    }
+
+    public Manager getManager() {
+	return manager;
+    }
+
+    /**
+     * @return The hosts made so far, in the order they were made.
+     */
+    public List<Module> getHosts() {
+	return hosts;
+    }
+
+    /**
+     * @return The switches made so far, in the order they were made.
+     */
+    public List<Module> getSwitches() {
+	return switches;
+    }
+
+    private Class<?> moduleClass(String className) {
+	try {
+	    Class<?> c = Class.forName(className);
+	    if (!Module.class.isAssignableFrom(c))
+		throw new IllegalArgumentException(className + " is not a module.");
+	    return c;
+	} catch (ClassNotFoundException e) {
+	    throw new IllegalArgumentException("No module class " + className + ".", e);
+	}
+    }
+
+    private static Module instantiate(Class<?> c) {
+	try {
+	    return (Module) c.getDeclaredConstructor().newInstance();
+	} catch (ReflectiveOperationException e) {
+	    throw new IllegalArgumentException("Could not make a " + c.getName() + ".", e);
+	}
+    }
+
+    private Module make(Class<?> c) {
+	Module m = instantiate(c);
+	m.setSno(nextSno++);
+	manager.addModule(m);
+	return m;
+    }
+
+    public Module newHost() {
+	Module m = make(hostClass);
+	hosts.add(m);
+	return m;
+    }
+
+    public Module newSwitch() {
+	Module m = make(switchClass);
+	switches.add(m);
+	return m;
+    }
+
+    /**
+     * @return The number of ports a module of class c takes, found by adding ports to a module not in the Manager till it refuses.
+     */
+    private int getMaxPorts(Class<?> c) {
+	Integer max = maxPorts.get(c);
+	if (max == null) {
+	    Module m = instantiate(c);
+	    int n = 0;
+	    while (n < 1024 && m.addPort(new Port("Ethernet", m), Wire.GENERAL) != Module.ERROR_ALREADY_MAX_PORTS)
+		n++;
+	    max = n;
+	    maxPorts.put(c, max);
+	}
+	return max;
+    }
+
+    private boolean hasFreePort(Module m) {
+	return m.getNoOfPorts() < getMaxPorts(m.getClass());
+    }
+
+    /**
+     * Connects a and b with a new wire.
+     *
+     * @return false if a or b has no free port, in which case nothing is connected.
+     */
+    public boolean connect(Module a, Module b) {
+	if (!hasFreePort(a) || !hasFreePort(b))
+	    return false;
+	Port pa = new Port("Ethernet", a);
+	Port pb = new Port("Ethernet", b);
+	a.addPort(pa, Wire.GENERAL);
+	b.addPort(pb, Wire.GENERAL);
+	Wire w = new Wire(pa, pb);
+	w.setLatency(latency);
+	manager.addWire(w);
+	return true;
+    }
+
+    private void checkPorts(int needed) {
+	if (needed > getMaxPorts(switchClass))
+	    throw new IllegalArgumentException(switchClass.getName() + " has only " + getMaxPorts(switchClass) + " ports, " + needed
+		    + " are needed.");
+    }
+
+    private void connectHosts(Module sw, int n) {
+	for (int i = 0; i < n; i++)
+	    connect(newHost(), sw);
+    }
+
+    /**
+     * Connects n hosts to one switch, or to a tree of switches with fanout hosts per switch if there are more than fanout.
+     *
+     * @return The switch at the root.
+     */
+    public Module star(int n) {
+	checkPorts(fanout + 1);
+	ArrayList<Module> level = new ArrayList<Module>(n);
+	for (int i = 0; i < n; i++)
+	    level.add(newHost());
+	if (n == 0)
+	    return newSwitch();
+	do {
+	    ArrayList<Module> up = new ArrayList<Module>(level.size() / fanout + 1);
+	    for (int i = 0; i < level.size(); i += fanout) {
+		Module sw = newSwitch();
+		for (int j = i; j < Math.min(i + fanout, level.size()); j++)
+		    connect(level.get(j), sw);
+		up.add(sw);
+	    }
+	    level = up;
+	} while (level.size() > 1);
+	return level.get(0);
+    }
+
+    /**
+     * Builds a tree of switches depth levels deep, each with fanout children, and connects hostsPerLeaf hosts to each switch of the last
+     * level.
+     *
+     * @return The switch at the root.
+     */
+    public Module tree(int depth, int hostsPerLeaf) {
+	checkPorts(Math.max(fanout, hostsPerLeaf) + 1);
+	Module root = newSwitch();
+	ArrayList<Module> level = new ArrayList<Module>();
+	level.add(root);
+	for (int d = 1; d < depth; d++) {
+	    ArrayList<Module> down = new ArrayList<Module>(level.size() * fanout);
+	    for (int i = 0; i < level.size(); i++)
+		for (int j = 0; j < fanout; j++) {
+		    Module sw = newSwitch();
+		    connect(level.get(i), sw);
+		    down.add(sw);
+		}
+	    level = down;
+	}
+	for (int i = 0; i < level.size(); i++)
+	    connectHosts(level.get(i), hostsPerLeaf);
+	return root;
+    }
+
+    /**
+     * Connects n switches in a ring, each with hostsPerSwitch hosts.
+     */
+    public void ring(int n, int hostsPerSwitch) {
+	checkPorts(hostsPerSwitch + 2);
+	Module first = null, last = null;
+	for (int i = 0; i < n; i++) {
+	    Module sw = newSwitch();
+	    connectHosts(sw, hostsPerSwitch);
+	    if (last != null)
+		connect(last, sw);
+	    else
+		first = sw;
+	    last = sw;
+	}
+	if (n > 2)
+	    connect(last, first);
+    }
+
+    /**
+     * Connects n switches, each with hostsPerSwitch hosts, by a random spanning tree and then extraLinks more wires between random pairs
+     * of switches. Links for which no switch with a free port is found are left out.
+     */
+    public void randomGraph(int n, int extraLinks, int hostsPerSwitch) {
+	checkPorts(hostsPerSwitch + 1);
+	int first = switches.size();
+	for (int i = 0; i < n; i++) {
+	    Module sw = newSwitch();
+	    connectHosts(sw, hostsPerSwitch);
+	    for (int tries = 0; i > 0 && tries < 16; tries++)
+		if (connect(sw, switches.get(first + random.nextInt(i))))
+		    break;
+	}
+	for (int i = 0; i < extraLinks; i++)
+	    for (int tries = 0; n > 1 && tries < 16; tries++) {
+		Module a = switches.get(first + random.nextInt(n));
+		Module b = switches.get(first + random.nextInt(n));
+		if (a != b && connect(a, b))
+		    break;
+	    }
+    }
+
+    /**
+     * Builds a k-ary fat-tree: k pods of k/2 edge and k/2 aggregation switches, (k/2)^2 core switches and k/2 hosts per edge switch, i.e.
+     * k^3/4 hosts. Every switch uses k ports, so k is limited by the ports of the switch class.
+     */
+    public void fatTree(int k) {
+	if (k < 2 || k % 2 != 0)
+	    throw new IllegalArgumentException("k must be even.");
+	checkPorts(k);
+	int half = k / 2;
+	Module core[] = new Module[half * half];
+	for (int i = 0; i < core.length; i++)
+	    core[i] = newSwitch();
+	for (int pod = 0; pod < k; pod++) {
+	    Module agg[] = new Module[half];
+	    for (int i = 0; i < half; i++) {
+		agg[i] = newSwitch();
+		for (int j = 0; j < half; j++)
+		    connect(agg[i], core[i * half + j]);
+	    }
+	    for (int i = 0; i < half; i++) {
+		Module edge = newSwitch();
+		for (int j = 0; j < half; j++)
+		    connect(edge, agg[j]);
+		connectHosts(edge, half);
+	    }
+	}
+    }
+}
@@ -0,0 +1,287 @@
+/*
+ * TraceRecorder.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package framework;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Records what happens to the packets on the wires of a Manager into trace files, see Manager.setTraceRecorder(). Every event is a fixed
+ * size record:
+ *
+ * <pre>
+ * long time, int wire (index in Manager), byte event, byte flags, short port (index in the wire), long from id, long to id, long size
+ * </pre>
+ *
+ * Each file starts with a header of int MAGIC, int VERSION and int RECORD_SIZE. Files are named base.0, base.1 and so on, a new one being
+ * started once the current one holds maxFileBytes of records (before compression).
+ * <p>
+ * The simulation threads only copy records into blocks of their own; full blocks are written to disk by a background thread. If that
+ * thread falls behind by more than MAX_PENDING_BLOCKS, new blocks are dropped instead of slowing the simulation, see
+ * getDroppedRecords(). Since every thread has its own blocks, records of wires stepped in parallel are not in time order across blocks.
+ *
+ * @author Rohit
+ *
+ */
+public class TraceRecorder {
+    public static final int  MAGIC	      = 0x4C535452; // "LSTR"
+    public static final int  VERSION	    = 1;
+    public static final int  RECORD_SIZE	= 40;
+    public static final int  BLOCK_SIZE	 = RECORD_SIZE * 1638; // About 64KB.
+    public static final int  MAX_PENDING_BLOCKS = 64;
+
+    /** Events */
+    public static final byte SENT	       = 0;	     // A wire took the packet from the port.
+    public static final byte DELIVERED	  = 1;	     // A wire put the packet on the port.
+    public static final byte DROPPED	    = 2;	     // A wire dropped the packet it took from the port.
+
+    /** Flags */
+    public static final byte CORRUPT	    = 1;
+    public static final byte WILL_CORRUPT       = 2;
+    public static final byte REPLY	      = 4;
+
+    private File			   base;
+    private long			   maxFileBytes;
+    private boolean			compress;
+    private ArrayBlockingQueue<ByteBuffer> pending       = new ArrayBlockingQueue<ByteBuffer>(MAX_PENDING_BLOCKS);
+    private ArrayBlockingQueue<ByteBuffer> free	  = new ArrayBlockingQueue<ByteBuffer>(MAX_PENDING_BLOCKS);
+    private ArrayList<ByteBuffer[]>	current       = new ArrayList<ByteBuffer[]>(); // Block being filled by each thread.
+    private ThreadLocal<ByteBuffer[]>      mine;
+    private AtomicLong			 records       = new AtomicLong();
+    private AtomicLong			 dropped       = new AtomicLong();
+    private Thread			 writer;
+    private volatile IOException	   error	 = null;
+    private volatile boolean	       closed	= false;
+    private OutputStream		   out	   = null;	    // Only used by the writer thread once it has started.
+    private long			   written       = 0;
+    private int			    fileNo	= 0;
+    private final ByteBuffer	       FLUSH	 = ByteBuffer.allocate(0); // Queued by flush() to wait for the writer.
+    private final Object		   flushed       = new Object();
+    private long			   flushesQueued = 0;
+    private long			   flushesDone   = 0;
+
+    /**
+     * @param base
+     *                Path of the trace files, without the .0, .1, ... suffix.
+     * @param maxFileBytes
+     *                Bytes of records after which a new file is started. 0 puts everything in one file.
+     * @param compress
+     *                If true the files are GZIP compressed.
+     * @throws IOException
+     *                 If the first file cannot be created.
+     */
+    public TraceRecorder(File base, long maxFileBytes, boolean compress) throws IOException {
+	this.base = base;
+	this.maxFileBytes = maxFileBytes;
+	this.compress = compress;
+	mine = new ThreadLocal<ByteBuffer[]>() {
+	    @Override
+	    protected ByteBuffer[] initialValue() {
+		ByteBuffer b[] = new ByteBuffer[1];
+		synchronized (current) {
+		    current.add(b);
+		}
+		return b;
+	    }
+	};
+	openNext();
+	writer = new Thread(new Runnable() {
+	    public void run() {
+		writeLoop();
+	    }
+	}, "TraceRecorder");
+	writer.setDaemon(true);
+	writer.start();
+    }
+
+    /**
+     * Records an event of packet p on a wire. Called by Wire while it is stepped, from any thread.
+     */
+    void record(double time, int wire, byte event, int port, Packet p) {
+	ByteBuffer b[] = mine.get();
+	ByteBuffer block = b[0];
+	if (block == null || block.remaining() < RECORD_SIZE) {
+	    if (block != null)
+		hand(block);
+	    block = free.poll();
+	    if (block == null)
+		block = ByteBuffer.allocate(BLOCK_SIZE);
+	    b[0] = block;
+	}
+	byte flags = 0;
+	if (p.isCorrupt())
+	    flags |= CORRUPT;
+	if (p.getWillGetCorrupt())
+	    flags |= WILL_CORRUPT;
+	if (p.isReply())
+	    flags |= REPLY;
+	block.putLong((long) time);
+	block.putInt(wire);
+	block.put(event);
+	block.put(flags);
+	block.putShort((short) port);
+	block.putLong(p.getFromId());
+	block.putLong(p.getToId());
+	block.putLong(p.getSize());
+    }
+
+    /**
+     * Queues a block for the writer, or drops it if the writer is too far behind.
+     */
+    private void hand(ByteBuffer block) {
+	block.flip();
+	records.addAndGet(block.remaining() / RECORD_SIZE);
+	if (!pending.offer(block)) {
+	    dropped.addAndGet(block.remaining() / RECORD_SIZE);
+	    block.clear();
+	    free.offer(block);
+	}
+    }
+
+    /**
+     * Hands the partly filled blocks of all threads to the writer and waits till everything recorded so far is written. Must not be
+     * called while the wires are being stepped.
+     *
+     * @throws IOException
+     *                 If writing the trace failed.
+     */
+    public void flush() throws IOException {
+	synchronized (current) {
+	    for (int i = 0; i < current.size(); i++) {
+		ByteBuffer b[] = current.get(i);
+		if (b[0] != null && b[0].position() > 0) {
+		    hand(b[0]);
+		    b[0] = null;
+		}
+	    }
+	}
+	long ticket;
+	synchronized (flushed) {
+	    ticket = ++flushesQueued;
+	}
+	try {
+	    pending.put(FLUSH);
+	    synchronized (flushed) {
+		while (flushesDone < ticket && error == null && writer.isAlive())
+		    flushed.wait();
+	    }
+	} catch (InterruptedException e) {
+	    Thread.currentThread().interrupt();
+	}
+	if (error != null)
+	    throw error;
+    }
+
+    /**
+     * Flushes and closes the trace. Nothing may be recorded afterwards.
+     *
+     * @throws IOException
+     */
+    public void close() throws IOException {
+	if (closed)
+	    return;
+	try {
+	    flush();
+	} finally {
+	    closed = true;
+	    writer.interrupt();
+	    try {
+		writer.join();
+	    } catch (InterruptedException e) {
+		Thread.currentThread().interrupt();
+	    }
+	}
+	if (error != null)
+	    throw error;
+    }
+
+    /**
+     * @return The number of events handed to the writer so far, including dropped ones. Events in blocks still being filled are counted at
+     *         the next flush().
+     */
+    public long getRecords() {
+	return records.get();
+    }
+
+    /**
+     * @return The number of events not written because the writer could not keep up.
+     */
+    public long getDroppedRecords() {
+	return dropped.get();
+    }
+
+    private void writeLoop() {
+	try {
+	    while (true) {
+		ByteBuffer block;
+		try {
+		    block = pending.take();
+		} catch (InterruptedException e) {
+		    if (closed)
+			break;
+		    continue;
+		}
+		if (block == FLUSH) {
+		    out.flush();
+		    synchronized (flushed) {
+			flushesDone++;
+			flushed.notifyAll();
+		    }
+		    continue;
+		}
+		if (maxFileBytes > 0 && written >= maxFileBytes)
+		    openNext();
+		out.write(block.array(), 0, block.limit());
+		written += block.limit();
+		block.clear();
+		free.offer(block);
+	    }
+	    out.close();
+	} catch (IOException e) {
+	    error = e;
+	} finally {
+	    synchronized (flushed) {
+		flushed.notifyAll();
+	    }
+	}
+    }
+
+    private void openNext() throws IOException {
+	if (out != null)
+	    out.close();
+	File f = new File(base.getPath() + "." + fileNo++);
+	out = new BufferedOutputStream(new FileOutputStream(f), BLOCK_SIZE);
+	if (compress)
+	    out = new GZIPOutputStream(out, BLOCK_SIZE, true);
+	ByteBuffer header = ByteBuffer.allocate(12);
+	header.putInt(MAGIC);
+	header.putInt(VERSION);
+	header.putInt(RECORD_SIZE);
+	out.write(header.array());
+	written = 0;
+    }
+}
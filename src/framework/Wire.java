@@ -19,49 +19,58 @@
 package framework;
 
 import java.awt.Color;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 
-import module.DroppedPacketDataUI;
-
 /**
  * Wire.java Represents a link in the network can be connected to any number of Ports. Created on December 7, 2006,
  * 
  * @author Nirupam
  * @author Rohit
  */
-public class Wire {
+public class Wire implements Checkpointable {
     public static final int     GENERAL	 = 0;    // Wire tye = General.
     private int		 type	    = 0;    // To be used later.
     private int		 noOfPorts       = 0;
     private boolean	     pktAvailable    = false;
-    private ArrayList<Packet>   packets	 = null;
     private ArrayList<Packet>   dropped_packets = null;
-    private ArrayList<Double>   packets_in_time = null;
-    private static final double LATENCY	 = 15;   // later make changeable by user
-    // private double dpu = 1; //Data packet transfer rate per unit time. Take this as a convinient factor times actual bps of a connection.
+    private ArrayList<Double>   droppedAt       = new ArrayList<Double>(); // Time each of dropped_packets was dropped.
+    public static final int     DROPPED_PACKET_STEPS = 10;		 // Steps a dropped packet is kept so the UI can show it.
+    public static final double  DEFAULT_LATENCY = 15;
+    // The settings below can be changed from the UI while the simulation thread reads them.
+    private volatile double     latency         = DEFAULT_LATENCY; // Steps a packet takes to reach the other end once it is on the wire.
+    private volatile double     bandwidth       = 0;    // Packet size units sent per step. 0 means packets take no time to be sent.
+    private volatile int        capacity        = 0;    // Max packets on the wire at a time. 0 means no limit.
+    private double	      linkFreeAt      = 0;    // Time at which the packets already queued will all have been sent.
+    private long		queueDrops      = 0;    // Packets discarded since the wire was full.
+    // Packets on the wire as a FIFO ring buffer. enqueue() keeps delivery times from decreasing, so the head is always the next packet to
+    // deliver, even when the latency or bandwidth is lowered while packets are on the wire.
+    private Packet[]	    queue	   = new Packet[8];
+    private double[]	    deliveryTime    = new double[8];
+    private int		 head	    = 0;
+    private int		 count	   = 0;
     private Port		ports[]	 = null;
     private volatile boolean    dropPackets     = false;
+    private TraceRecorder       trace	   = null;   // Set by Manager while a trace is being recorded.
+    private int		 traceId	 = 0;      // Index of the wire in Manager, written in the trace.
+    private Metrics	     metrics	 = null;   // Set by Manager while metrics are collected.
 
     public Wire() {
-	packets = new ArrayList<Packet>();
 	dropped_packets = new ArrayList<Packet>();
-	packets_in_time = new ArrayList<Double>();
 	ports = new Port[2];
     }
 
     public Wire(Port port) {
-	packets = new ArrayList<Packet>();
 	dropped_packets = new ArrayList<Packet>();
-	packets_in_time = new ArrayList<Double>();
 	ports = new Port[2];
 	addPort(port);
 
     }
 
     public Wire(Port port1, Port port2) {
-	packets = new ArrayList<Packet>();
 	dropped_packets = new ArrayList<Packet>();
-	packets_in_time = new ArrayList<Double>();
 	ports = new Port[2];
 	addPort(port1);
 	addPort(port2);
@@ -80,19 +89,74 @@ public class Wire {
 	return dropPackets;
     }
 
+    /**
+     * Empties the wire, releasing the packets on it and the ones it dropped.
+     */
     public void reset() {
-	packets.clear();
-	packets_in_time.clear();
+	for (int i = 0; i < count; i++) {
+	    int at = (head + i) & (queue.length - 1);
+	    queue[at].release();
+	    queue[at] = null;
+	}
+	head = 0;
+	count = 0;
+	linkFreeAt = 0;
+	queueDrops = 0;
 	pktAvailable = false;
+	for (int i = 0; i < dropped_packets.size(); i++)
+	    dropped_packets.get(i).release();
+	dropped_packets.clear();
+	droppedAt.clear();
+    }
+
+    public double getLatency() {
+	return latency;
+    }
+
+    /**
+     * @param latency
+     *                Steps a packet takes to reach the other end of the wire once it has been sent.
+     */
+    public void setLatency(double latency) {
+	if (latency >= 0)
+	    this.latency = latency;
+    }
+
+    public double getBandwidth() {
+	return bandwidth;
+    }
+
+    /**
+     * A packet of size s takes s / bandwidth steps to be sent, and packets are sent one after the other. So on a busy wire a packet waits for
+     * the ones before it before its latency starts counting.
+     * 
+     * @param bandwidth
+     *                Packet size units sent per step. 0 sends every packet at once, as before.
+     */
+    public void setBandwidth(double bandwidth) {
+	if (bandwidth >= 0)
+	    this.bandwidth = bandwidth;
+    }
+
+    public int getQueueCapacity() {
+	return capacity;
+    }
+
+    /**
+     * @param capacity
+     *                Max number of packets on the wire at a time. Packets sent while the wire is full are discarded. 0 means no limit.
+     */
+    public void setQueueCapacity(int capacity) {
+	if (capacity >= 0)
+	    this.capacity = capacity;
     }
 
-    // public void setDataRate(double dpu){
-    // this.dpu=dpu;
-    // }
-    //    
-    // public double getDataRate(){
-    // return dpu;
-    // }
+    /**
+     * @return The number of packets discarded since the last reset because the wire was full.
+     */
+    public long getQueueDrops() {
+	return queueDrops;
+    }
 
     public boolean hasData() {
 	return pktAvailable;
@@ -112,45 +176,70 @@ public class Wire {
     }
 
     public void addPort(Port port) {
-	System.out.println("port of added " + noOfPorts);
 	ports[noOfPorts] = port;
+	port.setWire(this);
 	noOfPorts++;
     }
 
+    /**
+     * Puts a packet at the tail of the queue, to be delivered at time or, if the packet before it is due later, together with that one.
+     */
+    private void enqueue(Packet packet, double time) {
+	if (count > 0)
+	    time = Math.max(time, deliveryTime[(head + count - 1) & (queue.length - 1)]);
+	if (count == queue.length) {
+	    Packet q[] = new Packet[queue.length * 2];
+	    double t[] = new double[queue.length * 2];
+	    for (int i = 0; i < count; i++) {
+		q[i] = queue[(head + i) & (queue.length - 1)];
+		t[i] = deliveryTime[(head + i) & (queue.length - 1)];
+	    }
+	    queue = q;
+	    deliveryTime = t;
+	    head = 0;
+	}
+	int tail = (head + count) & (queue.length - 1);
+	queue[tail] = packet;
+	deliveryTime[tail] = time;
+	count++;
+    }
+
+    private Packet peek(int i) {
+	return queue[(head + i) & (queue.length - 1)];
+    }
+
     private void putPacketOnPorts(double currtime) {
-	Packet tempPacket;
-	for (int p = 0; p < packets.size(); p++) {
-	    tempPacket = packets.get(p);
-	    if ((currtime - packets_in_time.get(p)) >= LATENCY) {
-		for (int i = 0; i < noOfPorts; i++) {
-		    if (ports[i].isActive() && (ports[i] != tempPacket.getFromPort())) {
-			ports[i].putPacket(tempPacket, this);
-			// System.out.println("delivered "+tempPacket.getData()+" "+ports[i].getOwner().getName());
-			// ports.get(fromPortNo).rstPacketSourceFlag();
-		    }
+	while (count > 0 && deliveryTime[head] <= currtime) {
+	    Packet tempPacket = queue[head];
+	    queue[head] = null;
+	    head = (head + 1) & (queue.length - 1);
+	    count--;
+	    int receivers = 0;
+	    for (int i = 0; i < noOfPorts; i++) {
+		if (ports[i].isActive() && i != tempPacket.getFromPort()) {
+		    if (receivers++ > 0)
+			tempPacket.retain(); // Every receiving port holds the packet.
+		    ports[i].putPacket(tempPacket, this);
+		    if (trace != null)
+			trace.record(currtime, traceId, TraceRecorder.DELIVERED, i, tempPacket);
+		    if (metrics != null)
+			metrics.countOut();
+		    // System.out.println("delivered "+tempPacket.getData()+" "+ports[i].getOwner().getName());
+		    // ports.get(fromPortNo).rstPacketSourceFlag();
 		}
-		int index = packets.indexOf(tempPacket);
-		packets_in_time.remove(index);
-		packets.remove(index);
 	    }
+	    if (receivers == 0)
+		tempPacket.release();
 	}
-	if (packets.size() == 0)
+	if (count == 0)
 	    this.pktAvailable = false;
     }
 
     private void getPacketFromPorts(double currtime) {
-	for (int i = 0; i < dropped_packets.size();)
-	    if (!(dropped_packets.get(i).dataUI instanceof DroppedPacketDataUI)) {
-		try {
-		    throw new Exception(
-			    "dropped_packets has dataUI object NOT of the class DroppedPacketDataUI. Since, ModuleUI instanciates dataUI, hence it or its sub-class must be responible for this bug. Correct this bug now!");
-		} catch (Exception e) {
-		    e.printStackTrace();
-		}
-	    } else if (!((DroppedPacketDataUI) dropped_packets.get(i).dataUI).isAlive())
-		dropped_packets.remove(i);
-	    else
-		i++;
+	while (droppedAt.size() > 0 && droppedAt.get(0) + DROPPED_PACKET_STEPS <= currtime) {
+	    droppedAt.remove(0);
+	    dropped_packets.remove(0).release();
+	}
 
 	Packet tempPacket = null;
 	for (int i = 0; i < noOfPorts; i++) {
@@ -158,21 +247,51 @@ public class Wire {
 		if (ports[i].hasData())
 		    if (dropPackets) {
 			tempPacket = ports[i].getPacket(this);
-			tempPacket.setFromPort(ports[i]);
+			tempPacket.setFromPort(i);
 			tempPacket.setDroppedPacket(true);
 			dropped_packets.add(tempPacket);
-			//DataUI is set in ModuleUI.
+			droppedAt.add(currtime);
+			if (trace != null)
+			    trace.record(currtime, traceId, TraceRecorder.DROPPED, i, tempPacket);
+			if (metrics != null) {
+			    metrics.countIn();
+			    metrics.countDrop();
+			}
 
 		    } else {
 			tempPacket = ports[i].getPacket(this);
-			tempPacket.setFromPort(ports[i]);
-			packets.add(tempPacket);
-			packets_in_time.add(currtime);
+			tempPacket.setFromPort(i);
+			if (capacity > 0 && count >= capacity) {
+			    if (trace != null)
+				trace.record(currtime, traceId, TraceRecorder.DROPPED, i, tempPacket);
+			    if (metrics != null) {
+				metrics.countIn();
+				metrics.countDrop();
+			    }
+			    queueDrops++;
+			    tempPacket.release();
+			    continue;
+			}
+			double sent = currtime;
+			if (bandwidth > 0) {
+			    sent = Math.max(currtime, linkFreeAt) + tempPacket.getSize() / bandwidth;
+			    linkFreeAt = sent;
+			}
+			enqueue(tempPacket, sent + latency);
+			if (trace != null)
+			    trace.record(currtime, traceId, TraceRecorder.SENT, i, tempPacket);
+			if (metrics != null) {
+			    metrics.countIn();
+			    metrics.recordQueueDepth(count);
+			}
 			if (this.pktAvailable)
-			    for (int j = 0; j < packets.size(); j++) {
-				if (packets.get(j).getFromPort() != tempPacket.getFromPort()) {
-				    for (int k = 0; k < packets.size(); k++)
-					packets.get(k).setWillGetCorrupt();
+			    for (int j = 0; j < count; j++) {
+				if (peek(j).getFromPort() != tempPacket.getFromPort()) {
+				    for (int k = 0; k < count; k++) {
+					if (metrics != null && !peek(k).getWillGetCorrupt())
+					    metrics.countCorruption();
+					peek(k).setWillGetCorrupt();
+				    }
 				    break;
 				}
 			    }
@@ -192,6 +311,75 @@ public class Wire {
 	return true;
     }
 
+    /**
+     * Starts a window of steps of a wire cut in two by Partition, see HalfLink. The packets delivered before end are handed to the half of
+     * the port they go to. The packets sent in the window are only delivered from end on, so the halves need nothing else from the wire
+     * till endWindow().
+     */
+    void beginWindow(HalfLink halves[], long end) {
+	halves[0].clear();
+	halves[1].clear();
+	while (count > 0 && deliveryTime[head] <= end - 1) {
+	    Packet tempPacket = queue[head];
+	    halves[1 - tempPacket.getFromPort()].receive(tempPacket, deliveryTime[head]);
+	    queue[head] = null;
+	    head = (head + 1) & (queue.length - 1);
+	    count--;
+	}
+    }
+
+    /**
+     * Ends a window started by beginWindow(). The packets the halves sent are put on the wire in the order step() would have taken them,
+     * marking collisions the same way, and the ones they dropped are kept. A latency lowered during the window only applies from end on,
+     * and a queue capacity set on a cut wire only once Engine partitions the topology again.
+     */
+    void endWindow(HalfLink halves[], long end) {
+	int next[] = { 0, 0 }; // Next packet sent by each half.
+	int due[] = { 0, 0 };  // First packet in the inbox of each half still on the wire at the time of that packet.
+	while (next[0] < halves[0].getSentCount() || next[1] < halves[1].getSentCount()) {
+	    int i = next[1] == halves[1].getSentCount()
+		    || (next[0] < halves[0].getSentCount() && halves[0].getSentTime(next[0]) <= halves[1].getSentTime(next[1])) ? 0 : 1;
+	    double currtime = halves[i].getSentTime(next[i]);
+	    Packet tempPacket = halves[i].getSent(next[i]++);
+	    for (int j = 0; j < 2; j++)
+		while (due[j] < halves[j].getInboxSize() && Math.ceil(halves[j].getInboxTime(due[j])) < currtime)
+		    due[j]++;
+	    double sent = currtime;
+	    if (bandwidth > 0) {
+		sent = Math.max(currtime, linkFreeAt) + tempPacket.getSize() / bandwidth;
+		linkFreeAt = sent;
+	    }
+	    enqueue(tempPacket, Math.max(sent + latency, end));
+	    if (metrics != null)
+		metrics.recordQueueDepth(count + halves[0].getInboxSize() - due[0] + halves[1].getInboxSize() - due[1]);
+	    // The packets in the inbox of the sending half come from the other port. The halves mark the ones they deliver themselves.
+	    boolean collision = due[i] < halves[i].getInboxSize();
+	    for (int j = 0; j < count && !collision; j++)
+		collision = peek(j).getFromPort() != i;
+	    if (collision)
+		for (int k = 0; k < count; k++) {
+		    if (metrics != null && !peek(k).getWillGetCorrupt())
+			metrics.countCorruption();
+		    peek(k).setWillGetCorrupt();
+		}
+	}
+	pktAvailable = count > 0;
+
+	next[0] = 0;
+	next[1] = 0;
+	while (next[0] < halves[0].getDropCount() || next[1] < halves[1].getDropCount()) {
+	    int i = next[1] == halves[1].getDropCount()
+		    || (next[0] < halves[0].getDropCount() && halves[0].getDropTime(next[0]) <= halves[1].getDropTime(next[1])) ? 0
+		    : 1;
+	    droppedAt.add(halves[i].getDropTime(next[i]));
+	    dropped_packets.add(halves[i].getDrop(next[i]++));
+	}
+	while (droppedAt.size() > 0 && droppedAt.get(0) + DROPPED_PACKET_STEPS <= end - 1) {
+	    droppedAt.remove(0);
+	    dropped_packets.remove(0).release();
+	}
+    }
+
     /* TO DO LATER, probably never. */
     public void merge(Wire wire) {
     // TODO Auto-generated method stub
@@ -199,6 +387,8 @@ public class Wire {
     }
 
     public void removePort(Port p) {
+	if (p.getWire() == this)
+	    p.setWire(null);
 	if (p == ports[1])
 	    ports[1] = null;
 	else if (p == ports[0]) {
@@ -209,8 +399,13 @@ public class Wire {
 	// TODO Auto-generated method stub
     }
 
-    public double getLatency() {
-	return LATENCY;
+    /**
+     * @return The earliest time at which a packet now on the wire becomes deliverable, or EventDriven.NEVER if the wire is empty.
+     */
+    public long getNextDeliveryTime() {
+	if (count == 0)
+	    return EventDriven.NEVER;
+	return (long) Math.ceil(deliveryTime[head]);
     }
 
     public int getNoOfPorts() {
@@ -218,7 +413,90 @@ public class Wire {
     }
 
     public ArrayList<Packet> getPackets() {
-	return new ArrayList<Packet>(packets);
+	ArrayList<Packet> packets = new ArrayList<Packet>(count);
+	for (int i = 0; i < count; i++)
+	    packets.add(peek(i));
+	return packets;
+    }
+
+    /**
+     * @return The time at which the i-th packet of getPackets() is delivered.
+     */
+    public double getDeliveryTime(int i) {
+	return deliveryTime[(head + i) & (queue.length - 1)];
+    }
+
+    /**
+     * @return The time at which the i-th packet of getDroppedPackets() was dropped.
+     */
+    public double getDroppedTime(int i) {
+	return droppedAt.get(i);
+    }
+
+    /**
+     * @return The time at which the oldest dropped packet is let go of, or EventDriven.NEVER if there are none.
+     */
+    public long getNextDroppedExpiry() {
+	if (droppedAt.size() == 0)
+	    return EventDriven.NEVER;
+	return (long) Math.ceil(droppedAt.get(0) + DROPPED_PACKET_STEPS);
+    }
+
+    /**
+     * Saves the packets on the wire and the ones it dropped. The settings of the wire are part of the topology and are not saved.
+     */
+    public void saveState(Checkpoint c) throws IOException {
+	DataOutputStream out = c.getOutput();
+	out.writeInt(count);
+	for (int i = 0; i < count; i++) {
+	    c.writePacket(peek(i));
+	    out.writeDouble(deliveryTime[(head + i) & (queue.length - 1)]);
+	}
+	out.writeDouble(linkFreeAt);
+	out.writeLong(queueDrops);
+	out.writeBoolean(pktAvailable);
+	c.writePackets(dropped_packets);
+	for (int i = 0; i < droppedAt.size(); i++)
+	    out.writeDouble(droppedAt.get(i));
+    }
+
+    public void restoreState(Checkpoint c) throws IOException {
+	DataInputStream in = c.getInput();
+	reset();
+	for (int i = in.readInt(); i > 0; i--) {
+	    Packet p = c.readPacket();
+	    enqueue(p, in.readDouble());
+	}
+	linkFreeAt = in.readDouble();
+	queueDrops = in.readLong();
+	pktAvailable = in.readBoolean();
+	c.readPackets(dropped_packets);
+	for (int i = 0; i < dropped_packets.size(); i++)
+	    droppedAt.add(in.readDouble());
+    }
+
+    /**
+     * @return The metrics of the wire, or null while metrics are not collected.
+     */
+    public Metrics getMetrics() {
+	return metrics;
+    }
+
+    void setMetrics(Metrics metrics) {
+	this.metrics = metrics;
+    }
+
+    void setTrace(TraceRecorder trace, int id) {
+	this.trace = trace;
+	traceId = id;
+    }
+
+    /**
+     * Records an event of the wire into the trace, if one is being recorded. Used by HalfLink.
+     */
+    void record(double time, byte event, int port, Packet p) {
+	if (trace != null)
+	    trace.record(time, traceId, event, port, p);
     }
 
     public boolean hasDroppedPackets() {
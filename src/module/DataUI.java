@@ -19,7 +19,9 @@
 package module;
 
 import java.awt.Color;
+import java.awt.FontMetrics;
 import java.awt.Graphics;
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 
 import framework.Packet;
@@ -36,6 +38,9 @@ public class DataUI {
     Packet		   packet     = null;
     public Point2D.Double    pos;
     private Color	    colour;
+    private int	      textWidth  = -1;  // Size of dispString when it was last rendered, -1 till then.
+    private int	      textAscent = 12;
+    private int	      textDescent = 4;
 
     public DataUI(Packet p) {
 	colour = Color.GREEN;
@@ -55,6 +60,7 @@ public class DataUI {
 	if (s != null && s.trim() == "")
 	    s = null;
 	dispString = s;
+	textWidth = -1;
     }
 
     /**
@@ -70,10 +76,30 @@ public class DataUI {
 	if (dispString != null) {
 	    g.setColor(Color.BLACK);
 	    g.drawString(dispString, (int) pos.x + width, (int) pos.y + height);
+	    if (textWidth < 0) {
+		FontMetrics fm = g.getFontMetrics();
+		textWidth = fm.stringWidth(dispString);
+		textAscent = fm.getAscent();
+		textDescent = fm.getDescent();
+	    }
 	}
 	g.setColor(t);
     }
 
+    /**
+         * @return The area render() draws on at the current pos. Till the label has been rendered once its width is a guess.
+         */
+    public Rectangle getBounds() {
+	if (pos == null)
+	    return new Rectangle();
+	Rectangle r = new Rectangle((int) pos.x - width / 2 - 1, (int) pos.y - height / 2 - 1, width + 2, height + 2);
+	if (dispString != null) {
+	    int w = textWidth >= 0 ? textWidth : dispString.length() * 8;
+	    r.add(new Rectangle((int) pos.x + width, (int) pos.y + height - textAscent, w + 1, textAscent + textDescent + 1));
+	}
+	return r;
+    }
+
     // /**
     // * Sets position of data packet in the client area.
     // * @param x
@@ -0,0 +1,200 @@
+/*
+ * EventLog.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package module;
+
+import java.util.Formatter;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Messages of a module, written by the simulation and shown by moduleWindow. Modules must log here instead of appending to the text areas
+ * of moduleWindow: appending from the simulation thread fires Swing document events on every message and the text areas grow without
+ * bound.
+ * <p>
+ * A log entry is a format string and up to three long arguments and one object, which are only formatted when moduleWindow drains the log
+ * on the EDT, so logging does not allocate. The format refers to the arguments by position: %1$d, %2$d and %3$d for the longs and %4$s for
+ * the object, e.g. log(MSG, "\nFrom:%1$d  To:%2$d", from, to). The log is a ring buffer with one writer (the thread stepping the module) and
+ * one reader (the EDT). It starts small, as most modules log little, and grows up to its capacity. When it is full the oldest entry is
+ * dropped.
+ *
+ * @author Rohit
+ *
+ */
+public class EventLog {
+    public static final int MSG	      = 0;    // moduleWindow's Messages tab.
+    public static final int AMSG	     = 1;    // moduleWindow's App Msg tab.
+    public static final int CHANNELS	 = 2;
+    public static final int DEFAULT_CAPACITY = 128;
+    public static final int INITIAL_SIZE     = 8;
+
+    private int		 capacity;
+    private int		 size	     = 0;	      // Length of the arrays, 0 till the first message.
+    private byte		channel[]	= null;
+    private String	      format[];
+    private long		a[];
+    private long		b[];
+    private long		c[];
+    private Object	      o[];
+    private AtomicLong	  head	     = new AtomicLong(); // Index of the oldest entry, advanced by the reader and, on overflow, by the writer.
+    private volatile long       tail	     = 0;	      // Index of the next entry to write. Only the writer changes it.
+    private long		dropped	  = 0;
+
+    public EventLog() {
+	this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * @param capacity
+     *                Max number of entries kept till they are drained. Rounded up to a power of 2.
+     */
+    public EventLog(int capacity) {
+	int cap = 1;
+	while (cap < capacity)
+	    cap <<= 1;
+	this.capacity = cap;
+    }
+
+    public void log(int channel, String format) {
+	put(channel, format, 0, 0, 0, null);
+    }
+
+    public void log(int channel, String format, long a) {
+	put(channel, format, a, 0, 0, null);
+    }
+
+    public void log(int channel, String format, long a, long b) {
+	put(channel, format, a, b, 0, null);
+    }
+
+    public void log(int channel, String format, long a, long b, long c) {
+	put(channel, format, a, b, c, null);
+    }
+
+    public void log(int channel, String format, Object o) {
+	put(channel, format, 0, 0, 0, o);
+    }
+
+    public void log(int channel, String format, long a, long b, Object o) {
+	put(channel, format, a, b, 0, o);
+    }
+
+    private void put(int ch, String fmt, long x, long y, long z, Object obj) {
+	long t = tail;
+	if (t - head.get() >= size && size < capacity)
+	    grow(t);
+	long h = head.get();
+	while (t - h >= size) {
+	    if (head.compareAndSet(h, h + 1)) {
+		dropped++;
+		break;
+	    }
+	    h = head.get();
+	}
+	int i = (int) t & (size - 1);
+	channel[i] = (byte) ch;
+	format[i] = fmt;
+	a[i] = x;
+	b[i] = y;
+	c[i] = z;
+	o[i] = obj;
+	tail = t + 1; // Publishes the entry to the reader.
+    }
+
+    /**
+     * Doubles the arrays, keeping the entries up to t. Called by the writer; drainTo() holds the same lock, so the reader never sees the
+     * arrays being swapped.
+     */
+    private synchronized void grow(long t) {
+	int n = size == 0 ? Math.min(INITIAL_SIZE, capacity) : size * 2;
+	byte ch[] = new byte[n];
+	String f[] = new String[n];
+	long x[] = new long[n], y[] = new long[n], z[] = new long[n];
+	Object obj[] = new Object[n];
+	for (long k = head.get(); k < t; k++) {
+	    int i = (int) k & (size - 1), j = (int) k & (n - 1);
+	    ch[j] = channel[i];
+	    f[j] = format[i];
+	    x[j] = a[i];
+	    y[j] = b[i];
+	    z[j] = c[i];
+	    obj[j] = o[i];
+	}
+	channel = ch;
+	format = f;
+	a = x;
+	b = y;
+	c = z;
+	o = obj;
+	size = n;
+    }
+
+    /**
+     * Formats and removes all the entries, appending each to out[its channel]. Only one thread may drain a log.
+     *
+     * @param out
+     *                One StringBuilder per channel.
+     * @return The number of entries drained.
+     */
+    public synchronized int drainTo(StringBuilder out[]) {
+	long t = tail; // Read before the entries, so that the writes of the entries before it are visible.
+	long h = head.get();
+	if (h >= t)
+	    return 0;
+	Formatter formatters[] = new Formatter[out.length];
+	int n = 0;
+	while (h < t) {
+	    int i = (int) h & (size - 1);
+	    int ch = channel[i];
+	    String fmt = format[i];
+	    long x = a[i], y = b[i], z = c[i];
+	    Object obj = o[i];
+	    if (head.compareAndSet(h, h + 1)) { // Fails if the writer dropped this entry meanwhile, in which case what was read is discarded.
+		if (ch < out.length) {
+		    if (formatters[ch] == null)
+			formatters[ch] = new Formatter(out[ch]);
+		    formatters[ch].format(fmt, x, y, z, obj);
+		}
+		n++;
+	    }
+	    h = head.get();
+	}
+	return n;
+    }
+
+    /**
+     * Drops all the entries. Must be called by the thread that drains the log.
+     */
+    public synchronized void clear() {
+	long t = tail;
+	long h;
+	do {
+	    h = head.get();
+	} while (h < t && !head.compareAndSet(h, t));
+    }
+
+    public boolean isEmpty() {
+	return head.get() >= tail;
+    }
+
+    /**
+     * @return The number of entries dropped so far because the log was full.
+     */
+    public long getDropped() {
+	return dropped;
+    }
+}
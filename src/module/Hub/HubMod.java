@@ -18,18 +18,24 @@
  */
 package module.Hub;
 
+import framework.Checkpoint;
+import framework.Checkpointable;
+import framework.EventDriven;
 import framework.Port;
+import module.EventLog;
 import module.ModuleUI;
 
+import java.io.IOException;
 import java.lang.String;
 import framework.Packet;
+import framework.PacketPool;
 
 /**
  * 
  * @author Nirupam
  * 
  */
-public class HubMod extends module.ModuleAbstractClass {
+public class HubMod extends module.ModuleAbstractClass implements EventDriven, Checkpointable {
     static final int     MAXPORTS     = 10;
     int		  noOfPorts    = 0;
     double	       absoluteTime = 0;
@@ -40,9 +46,7 @@ public class HubMod extends module.ModuleAbstractClass {
     private ModuleUI     modUI	= null;
 
     public HubMod() {
-	buffer.EditMode.module = this;
 	ports = new Port[MAXPORTS];
-	modUI = new HubUI(this);
     }
 
     public void setSno(int n) {
@@ -58,7 +62,7 @@ public class HubMod extends module.ModuleAbstractClass {
 	if (noOfPorts < MAXPORTS) {
 	    ports[noOfPorts++] = port;
 	    port.setActive(true);
-	    modUI.getModWin().msg.append("\nADDED port " + noOfPorts);
+	    getEventLog().log(EventLog.MSG, "\nADDED port %1$d", noOfPorts);
 	    return 1;
 	} else
 	    return ERROR_ALREADY_MAX_PORTS;
@@ -70,6 +74,8 @@ public class HubMod extends module.ModuleAbstractClass {
          * @return
          */
     public ModuleUI getModuleUI() {
+	if (modUI == null)
+	    modUI = new HubUI(this);
 	return modUI;
     }
 
@@ -90,7 +96,7 @@ public class HubMod extends module.ModuleAbstractClass {
          * USES R-R SCHEDULING TO SERVICE THE PORTS
          */
     public boolean step(double TimeStep) {
-	absoluteTime++;
+	absoluteTime = TimeStep + 1;
 	int noOfDataPorts = 0;
 	for (int x = 0; x < noOfPorts; x++) {
 	    if (ports[x].hasData()) {
@@ -101,37 +107,37 @@ public class HubMod extends module.ModuleAbstractClass {
 	    for (int i = 0; i < noOfPorts; i++) {
 		if (ports[i].hasData()) {
 		    Packet packet = ports[i].getPacket(this);
-		    modUI.getModWin().msg.append("\nFrom:" + i + "   To:");
+		    getEventLog().log(EventLog.MSG, "\nFrom:%1$d   To:", i);
 		    for (int j = 0; j < noOfPorts; j++) {
 			if (j != i) {
-			    modUI.getModWin().msg.append(" " + j);
-			    Packet tempPacket = new Packet(packet);
-			    tempPacket.dataUI = null;
+			    getEventLog().log(EventLog.MSG, " %1$d", j);
+			    Packet tempPacket = PacketPool.copyOf(packet);
 			    ports[j].putPacket(tempPacket, this);
 			    ports[j].setActive(true);
 			    newPacket = true;
 			}
 
 		    }
+		    packet.release();
 		    return true;
 		}
 	    }
 
 	} else if (noOfDataPorts > 1) {
-	    modUI.getModWin().msg.append("\nMultiple Packets, ports:  ");
+	    getEventLog().log(EventLog.MSG, "\nMultiple Packets, ports:  ");
 	    for (int i = 0; i < noOfPorts; i++) {
 		if (ports[i].hasData()) {
-		    modUI.getModWin().msg.append(" " + i);
+		    getEventLog().log(EventLog.MSG, " %1$d", i);
 		    Packet packet = ports[i].getPacket(this);
 		    for (int j = 0; j < noOfPorts; j++) {
-			Packet tempPacket = new Packet(packet);
-			tempPacket.dataUI = null;
+			Packet tempPacket = PacketPool.copyOf(packet);
 			tempPacket.gotCorrupted();
 			ports[j].putPacket(tempPacket, this);
 			ports[j].setActive(true);
 			newPacket = true;
 
 		    }
+		    packet.release();
 		    return false;
 		}
 	    }
@@ -140,6 +146,13 @@ public class HubMod extends module.ModuleAbstractClass {
 	return true;
     }
 
+    /**
+	 * A hub only reacts to packets on its ports.
+	 */
+    public long getNextWakeup(long time) {
+	return NEVER;
+    }
+
     public boolean reset() { // passed when the simulation is reset
 	for (int i = 0; i < noOfPorts; i++)
 	    if (ports[i].hasData())
@@ -148,6 +161,14 @@ public class HubMod extends module.ModuleAbstractClass {
 	return true;
     }
 
+    public void saveState(Checkpoint c) throws IOException {
+	c.getOutput().writeDouble(absoluteTime);
+    }
+
+    public void restoreState(Checkpoint c) throws IOException {
+	absoluteTime = c.getInput().readDouble();
+    }
+
     public Port[] getPorts() {// Gives the list of already initialized ports
 	return ports;
     }
@@ -18,6 +18,7 @@
  */
 package module;
 
+import framework.Metrics;
 import framework.Port;
 
 /**
@@ -37,7 +38,8 @@ public interface Module {
     public int addPort(Port port, int wireType);
 
     /**
-         * If the implementing class doesn't want to extend or create an object of ModuleUI then return null.
+         * If the implementing class doesn't want to extend or create an object of ModuleUI then return null. The ModuleUI should be made on
+         * the first call rather than by the constructor, so that modules can be made and simulated without any UI, e.g. by TopologyGenerator.
          * 
          * @return
          */
@@ -45,6 +47,22 @@ public interface Module {
 
     public void setModuleUI(ModuleUI m);
 
+    /**
+         * Returns the log the module writes its messages to. They are shown by the module's moduleWindow.
+         * 
+         * @return
+         */
+    public EventLog getEventLog();
+
+    /**
+         * Returns the metrics the module and its ports count into, or null while metrics are not collected, see framework.MetricsRegistry.
+         * 
+         * @return
+         */
+    public Metrics getMetrics();
+
+    public void setMetrics(Metrics m);
+
     /**
          * Returns the name of the implementing module. This name is displayed by the UI.
          * 
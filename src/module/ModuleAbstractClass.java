@@ -19,6 +19,7 @@
 package module;
 
 import ui.main.Config;
+import framework.Metrics;
 import framework.Port;
 
 /**
@@ -27,6 +28,20 @@ import framework.Port;
  * 
  */
 public class ModuleAbstractClass implements Module {
+    private EventLog eventLog = new EventLog();
+    private Metrics  metrics  = null;
+
+    public EventLog getEventLog() {
+	return eventLog;
+    }
+
+    public Metrics getMetrics() {
+	return metrics;
+    }
+
+    public void setMetrics(Metrics m) {
+	metrics = m;
+    }
 
     public int addPort(Port port, int wireType) {
 	// TODO Auto-generated method stub
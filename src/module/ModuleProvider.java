@@ -0,0 +1,50 @@
+/*
+ * ModuleProvider.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package module;
+
+/**
+ * Describes a kind of module for the Components toolbar, see ModuleRegistry. The modules in the module directory are described by its
+ * index; a jar adding modules of its own lists its ModuleProviders in META-INF/services/module.ModuleProvider.
+ * <p>
+ * Only names are given, so that no module class is loaded before the user picks one.
+ *
+ * @author Rohit
+ *
+ */
+public interface ModuleProvider {
+    /**
+     * @return The name shown for the module, e.g. "Hub".
+     */
+    public String getName();
+
+    /**
+     * @return The name of the class implementing Module, which must have a public no argument constructor.
+     */
+    public String getModuleClassName();
+
+    /**
+     * @return The name of the JButton subclass to put in the toolbar, or null to use a button showing getIconPath().
+     */
+    public String getButtonClassName();
+
+    /**
+     * @return The path of the icon of the default button.
+     */
+    public String getIconPath();
+}
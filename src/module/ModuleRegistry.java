@@ -0,0 +1,191 @@
+/*
+ * ModuleRegistry.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package module;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.ServiceLoader;
+
+import ui.main.Config;
+
+/**
+ * The kinds of modules the user can place. They are read from INDEX, which the index-modules target of build.xml writes when the
+ * application is built, followed by the ModuleProviders found by ServiceLoader. Without an index the module directory is listed instead,
+ * as before the index existed.
+ * <p>
+ * The index is one line per module directory X holding XMod:
+ *
+ * <pre>
+ * name	module class	button class or -	icon path relative to the module directory
+ * </pre>
+ *
+ * Module classes are only loaded, and initialized, when the first module of the kind is made.
+ *
+ * @author Rohit
+ *
+ */
+public class ModuleRegistry {
+    public static final String			 INDEX     = "/module/modules.index";
+
+    private static List<ModuleProvider>		providers = null;
+    private static HashMap<String, Class<?>>	   classes   = new HashMap<String, Class<?>>();
+
+    private static class Entry implements ModuleProvider {
+	private String name, moduleClass, buttonClass, iconPath;
+
+	Entry(String name, String moduleClass, String buttonClass, String iconPath) {
+	    this.name = name;
+	    this.moduleClass = moduleClass;
+	    this.buttonClass = buttonClass;
+	    this.iconPath = iconPath;
+	}
+
+	public String getName() {
+	    return name;
+	}
+
+	public String getModuleClassName() {
+	    return moduleClass;
+	}
+
+	public String getButtonClassName() {
+	    return buttonClass;
+	}
+
+	public String getIconPath() {
+	    return Config.moduleDirPath + "/" + iconPath;
+	}
+    }
+
+    /**
+     * @return The kinds of modules, the ones in the index first.
+     */
+    public static synchronized List<ModuleProvider> getProviders() {
+	if (providers == null) {
+	    ArrayList<ModuleProvider> found = new ArrayList<ModuleProvider>();
+	    InputStream in = ModuleRegistry.class.getResourceAsStream(INDEX);
+	    try {
+		if (in != null)
+		    readIndex(in, found);
+		else
+		    for (String line[] : scan(new File(Config.moduleDirPath)))
+			found.add(new Entry(line[0], line[1], line[2], line[3]));
+	    } catch (IOException e) {
+		System.out.println("Error while reading the module index: " + e.getMessage());
+	    }
+	    HashSet<String> known = new HashSet<String>();
+	    for (int i = 0; i < found.size(); i++)
+		known.add(found.get(i).getModuleClassName());
+	    for (ModuleProvider p : ServiceLoader.load(ModuleProvider.class))
+		if (known.add(p.getModuleClassName()))
+		    found.add(p);
+	    providers = Collections.unmodifiableList(found);
+	}
+	return providers;
+    }
+
+    /**
+     * @return The class of the module named className, loaded on the first call.
+     * @throws ClassNotFoundException
+     */
+    public static synchronized Class<?> getModuleClass(String className) throws ClassNotFoundException {
+	Class<?> c = classes.get(className);
+	if (c == null) {
+	    c = Class.forName(className);
+	    if (!Module.class.isAssignableFrom(c))
+		throw new ClassNotFoundException(className + " is not a module.");
+	    classes.put(className, c);
+	}
+	return c;
+    }
+
+    private static void readIndex(InputStream in, List<ModuleProvider> found) throws IOException {
+	BufferedReader r = new BufferedReader(new InputStreamReader(in, "UTF-8"));
+	try {
+	    String line;
+	    while ((line = r.readLine()) != null) {
+		if (line.length() == 0 || line.startsWith("#"))
+		    continue;
+		String f[] = line.split("\t");
+		if (f.length != 4)
+		    throw new IOException("Bad line: " + line);
+		found.add(new Entry(f[0], f[1], f[2].equals("-") ? null : f[2], f[3]));
+	    }
+	} finally {
+	    r.close();
+	}
+    }
+
+    /**
+     * Lists the modules in dir, the module directory of the compiled classes. A sub directory X is a module if it holds XMod.class.
+     *
+     * @return The fields of the index line of each module, with a null button class if X has no XButton.class.
+     */
+    private static List<String[]> scan(File dir) {
+	ArrayList<String[]> lines = new ArrayList<String[]>();
+	String names[] = dir.list();
+	if (names == null)
+	    return lines;
+	Arrays.sort(names);
+	for (String x : names) {
+	    File sub = new File(dir, x);
+	    if (!sub.isDirectory() || !new File(sub, x + "Mod.class").isFile())
+		continue;
+	    String button = new File(sub, x + "Button.class").isFile() ? "module." + x + "." + x + "Button" : null;
+	    lines.add(new String[] { x, "module." + x + "." + x + "Mod", button, x + "/icon.gif" });
+	}
+	return lines;
+    }
+
+    /**
+     * Writes the index. Run by the index-modules target of build.xml.
+     *
+     * @param args
+     *                The module directory of the compiled classes and the index file to write.
+     * @throws IOException
+     */
+    public static void main(String args[]) throws IOException {
+	if (args.length != 2) {
+	    System.out.println("Usage: ModuleRegistry <module directory> <index file>");
+	    System.exit(1);
+	}
+	List<String[]> lines = scan(new File(args[0]));
+	Writer w = new OutputStreamWriter(new FileOutputStream(args[1]), "UTF-8");
+	try {
+	    w.write("# Written by the index-modules target of build.xml.\n");
+	    for (String f[] : lines)
+		w.write(f[0] + "\t" + f[1] + "\t" + (f[2] == null ? "-" : f[2]) + "\t" + f[3] + "\n");
+	} finally {
+	    w.close();
+	}
+	System.out.println("Indexed " + lines.size() + " modules in " + args[1]);
+    }
+}
@@ -18,20 +18,21 @@
  */
 package module;
 
+import java.awt.FontMetrics;
 import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Point;
 
 import java.awt.Rectangle;
 
-import javax.swing.ImageIcon;
 import javax.swing.JPanel;
 
+import framework.Metrics;
 import framework.Packet;
-import framework.Port;
 import ui.ComponentUI;
 import ui.ManagerUI;
 import ui.Mode;
+import util.IconCache;
 
 import java.awt.Color;
 import java.awt.geom.Point2D;
@@ -51,6 +52,9 @@ public class ModuleUI extends ComponentUI implements ModuleWinUI {
     private int	     width    = 30;
     private int	     height   = 30;
     private int	     status   = NONE;
+    private int	     labelWidth = 60;       // Size of the name when it was last rendered.
+    private int	     labelAscent = 12;
+    private int	     labelDescent = 4;
     moduleWindow	    modWin   = null;
 
     public ModuleUI(Module m) {
@@ -89,31 +93,30 @@ public class ModuleUI extends ComponentUI implements ModuleWinUI {
     }
 
     /**
-     * Override this if your module needs to update its state while simulating in SIMULATION_MODE or PAUSED_MODE or EDIT_MODE.
+     * Override this if your module needs to update its state while simulating in SIMULATION_MODE or PAUSED_MODE or EDIT_MODE. ManagerUI
+     * only redraws what has changed, so if this changes how the module looks call ManagerUI.markDirty(getBounds()).
      * 
      * @param mode
      *                The mode in which this function has been called.
      * 
      */
     public void stepSimulation(Mode mode) {
-	if (mode == Mode.SIMULATION_MODE) {
-	    if (module.isNewPacket()) {
-		Port ports[] = module.getPorts();
-		for (int i = 0; i < module.getNoOfPorts(); i++) {
-		    Packet emittedPacket = ports[i].getEmittedPacket();
-		    if (emittedPacket != null) {
-			if (emittedPacket.dataUI == null)
-			    emittedPacket.dataUI = getNewDataUI(emittedPacket);
-		    }
-		}
-	    }
-	}
     }
 
     /**
-     * Used by setpSimulation to get a new instance of DataUI. If the module writer just creates a new subclass of DataUI then he must override
-     * this method to return object its custom DataUI (sub) class. If the module writer overrides also setpSimulation then instead of re-writing
-     * the codes in stepSimulation he can just override this method too (as described above) and make a call to super.setpSimulation().
+     * Returns the DataUI used to draw a packet this module sent. Called by WireUI when it first shows the packet, which is only while the
+     * wire is in view.
+     * 
+     * @param p
+     * @return
+     */
+    public DataUI createDataUI(Packet p) {
+	return getNewDataUI(p);
+    }
+
+    /**
+     * Used by createDataUI to get a new instance of DataUI. If the module writer just creates a new subclass of DataUI then he must override
+     * this method to return object its custom DataUI (sub) class.
      * 
      * @return
      */
@@ -123,7 +126,7 @@ public class ModuleUI extends ComponentUI implements ModuleWinUI {
 	    dataUI = new DroppedPacketDataUI(p);
 	else
 	    dataUI = new DataUI(p);
-	if (p.isReply == true)
+	if (p.isReply())
 	    dataUI.setColour(Color.BLUE);
 	if (p.isCorrupt())
 	    dataUI.setColour(Color.RED);
@@ -138,9 +141,8 @@ public class ModuleUI extends ComponentUI implements ModuleWinUI {
      */
     public void render(Graphics g, ManagerUI CallingObj) {
 	Color c = g.getColor();
-	if (image == null) {// Syncronisingly loading the image.
-	    ImageIcon icon = new ImageIcon(module.getIconPath());
-	    image = icon.getImage();
+	if (image == null) {// Syncronisingly loading the image, shared by all the modules with the same icon.
+	    image = IconCache.get(module.getIconPath(), width, height);
 
 	    // image = Toolkit.getDefaultToolkit().getImage("module/"+module.getName()+"/icon.gif");
 	    // MediaTracker tracker = new MediaTracker(CallingObj);
@@ -149,9 +151,14 @@ public class ModuleUI extends ComponentUI implements ModuleWinUI {
 	    // catch(InterruptedException e){}
 
 	}
-	g.drawImage(image, (int) coord.x, (int) coord.y, width, height, null);
+	g.drawImage(image, (int) coord.x, (int) coord.y, null);
 	g.setColor(Color.black);
-	g.drawString(module.getName() + module.getSno(), ((int) (coord.x + width / 2)) + 15, (int) coord.y + height / 2);
+	String label = module.getName() + module.getSno();
+	g.drawString(label, ((int) (coord.x + width / 2)) + 15, (int) coord.y + height / 2);
+	FontMetrics fm = g.getFontMetrics();
+	labelWidth = fm.stringWidth(label);
+	labelAscent = fm.getAscent();
+	labelDescent = fm.getDescent();
 	if (status == SELECTED) {
 	    g.setColor(Color.blue);
 	    g.drawRect((int) coord.x - 2, (int) coord.y - 2, width + 4, height + 4);
@@ -167,6 +174,18 @@ public class ModuleUI extends ComponentUI implements ModuleWinUI {
 	g.setColor(c);
     }
 
+    /**
+     * Must be overridden along with render() by a module that draws outside its icon, its name and the selection marks, so that ManagerUI
+     * redraws all of it when the module moves.
+     * 
+     * @return The area render() draws on.
+     */
+    public Rectangle getBounds() {
+	Rectangle r = new Rectangle(coord.x - 10, coord.y - 10, width + 21, height + 21);
+	r.add(new Rectangle(coord.x + width / 2 + 15, coord.y + height / 2 - labelAscent, labelWidth + 1, labelAscent + labelDescent + 1));
+	return r;
+    }
+
     public void setCoord(Point p) {
 	/*
 	 * coord.x=p.x; coord.y=p.y;
@@ -213,12 +232,40 @@ public class ModuleUI extends ComponentUI implements ModuleWinUI {
     public void reset() {
 	if (modWin != null)
 	    modWin.reset();
+	else if (getEventLog() != null)
+	    getEventLog().clear(); // What the window would have shown.
     }
 
+    public Module getModule() {
+	return module;
+    }
+
+    public EventLog getEventLog() {
+	return module.getEventLog();
+    }
+
+    public Metrics getMetrics() {
+	return module.getMetrics();
+    }
+
+    /**
+     * @return The window of the module, or null if it has not been opened yet.
+     */
     public moduleWindow getModWin() {
 	return modWin;
     }
 
+    /**
+     * Opens the window of the module, making it on the first call. Till then the module's messages wait in its EventLog.
+     */
+    public void showModWin(Mode mode) {
+	if (modWin == null) {
+	    modWin = new moduleWindow(this);
+	    modWin.updatePropertyPageState(mode);
+	}
+	modWin.makeWindowVisible();
+    }
+
     public void setModWin(moduleWindow m) {
 	modWin = m;
     }
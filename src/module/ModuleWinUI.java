@@ -22,6 +22,8 @@ import java.awt.Point;
 
 import javax.swing.JPanel;
 
+import framework.Metrics;
+
 /**
  * 
  * @author Nirupam
@@ -35,4 +37,14 @@ public interface ModuleWinUI {
     public JPanel getPropertyPage();
 
     public boolean isPropertyPageAvailable(ui.Mode mode);
+
+    /**
+     * @return The log whose messages the window shows, or null if there is none.
+     */
+    public EventLog getEventLog();
+
+    /**
+     * @return The metrics the window shows in its Statistics tab, or null while metrics are not collected.
+     */
+    public Metrics getMetrics();
 }
@@ -18,9 +18,16 @@
  */
 package module.Node;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.lang.String;
+import framework.Checkpoint;
+import framework.Checkpointable;
+import framework.EventDriven;
 import framework.Packet;
 import framework.Port;
+import module.EventLog;
 import module.ModuleUI;
 
 /**
@@ -28,7 +35,7 @@ import module.ModuleUI;
  * @author Nirupam
  * 
  */
-public class NodeMod extends module.ModuleAbstractClass {
+public class NodeMod extends module.ModuleAbstractClass implements EventDriven, Checkpointable {
     static final int     MAXPORTS     = 2;
     volatile boolean     canEmitData  = false;
     int		  noOfPorts    = 0;
@@ -43,8 +50,6 @@ public class NodeMod extends module.ModuleAbstractClass {
 
     public NodeMod() {
 	ports = new Port[MAXPORTS];
-	buffer.EditMode.module = this;
-	modUI = new NodeUI(this);
     }
 
     /**
@@ -56,7 +61,7 @@ public class NodeMod extends module.ModuleAbstractClass {
 	if (noOfPorts < MAXPORTS) {
 	    port.setActive(true);
 	    ports[noOfPorts++] = port;
-	    System.out.println("ADDED port " + noOfPorts);
+	    getEventLog().log(EventLog.MSG, "\nADDED port %1$d", noOfPorts);
 	    return 1;
 	} else
 	    return ERROR_ALREADY_MAX_PORTS;
@@ -68,6 +73,8 @@ public class NodeMod extends module.ModuleAbstractClass {
          * @return
          */
     public ModuleUI getModuleUI() {
+	if (modUI == null)
+	    modUI = new NodeUI(this);
 	return modUI;
     }
 
@@ -89,7 +96,7 @@ public class NodeMod extends module.ModuleAbstractClass {
 
     public boolean step(double currtime) {// boolean Success or failure
 	Packet packet;
-	absoluteTime++;
+	absoluteTime = currtime + 1;
 	if (canEmitData) {
 	    for (int i = 0; i < noOfPorts; i++) {
 		// System.out.println(name+serialNo+" "+absoluteTime+" "+i+" "+ports[i].isActive() +" "+ ports[i].hasData());
@@ -125,12 +132,32 @@ public class NodeMod extends module.ModuleAbstractClass {
 	return true;
     }
 
+    public long getNextWakeup(long time) {
+	if (!canEmitData || noOfPorts == 0)
+	    return NEVER;
+	return ((long) absoluteTime / 25 + 1) * 25 - 1; // The step at which absoluteTime is next a multiple of 25.
+    }
+
     public boolean reset() { // passed when the simulation is reset
 	elapsedTime = 0;
 	absoluteTime = 0;
 	return true;
     }
 
+    public void saveState(Checkpoint c) throws IOException {
+	DataOutputStream out = c.getOutput();
+	out.writeBoolean(canEmitData);
+	out.writeDouble(elapsedTime);
+	out.writeDouble(absoluteTime);
+    }
+
+    public void restoreState(Checkpoint c) throws IOException {
+	DataInputStream in = c.getInput();
+	canEmitData = in.readBoolean();
+	elapsedTime = in.readDouble();
+	absoluteTime = in.readDouble();
+    }
+
     public Port[] getPorts() {// Gives the list of already initialized ports
 	return ports;
     }
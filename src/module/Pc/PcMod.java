@@ -18,10 +18,17 @@
  */
 package module.Pc;
 
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.lang.String;
+import framework.Checkpoint;
+import framework.Checkpointable;
+import framework.EventDriven;
 import framework.Packet;
 import java.util.ArrayList;
 import framework.Port;
+import module.EventLog;
 import module.ModuleUI;
 
 /**
@@ -29,7 +36,7 @@ import module.ModuleUI;
  * @author Rohit
  * 
  */
-public class PcMod extends module.ModuleAbstractClass {
+public class PcMod extends module.ModuleAbstractClass implements EventDriven, Checkpointable {
     static final int     MAXPORTS	     = 5;
     int		  noOfPorts	    = 0;
     double	       elapsedTime	  = 0;
@@ -49,11 +56,9 @@ public class PcMod extends module.ModuleAbstractClass {
     private ModuleUI     modUI		= null;
 
     public PcMod() {
-	buffer.EditMode.module = this;
 	iPhysicalBuffer = new ArrayList<Packet>();
 	oPhysicalBuffer = new ArrayList<Packet>();
 	ports = new Port[MAXPORTS];
-	modUI = new PCUI(this);
     }
 
     /**
@@ -65,7 +70,7 @@ public class PcMod extends module.ModuleAbstractClass {
 	if (noOfPorts < MAXPORTS) {
 	    port.setActive(true);
 	    ports[noOfPorts++] = port;
-	    modUI.getModWin().msg.append("\nADDED port " + noOfPorts);
+	    getEventLog().log(EventLog.MSG, "\nADDED port %1$d", noOfPorts);
 	    return 1;
 	} else
 	    return ERROR_ALREADY_MAX_PORTS;
@@ -77,6 +82,8 @@ public class PcMod extends module.ModuleAbstractClass {
          * @return
          */
     public ModuleUI getModuleUI() {
+	if (modUI == null)
+	    modUI = new PCUI(this);
 	return modUI;
     }
 
@@ -97,7 +104,7 @@ public class PcMod extends module.ModuleAbstractClass {
     }
 
     public boolean step(double currtime) {// boolean Success or failure
-	absoluteTime++;
+	absoluteTime = currtime + 1; // No. of steps since reset, taken from the clock so that steps skipped by the Scheduler are counted too.
 	stepPhysical(currtime);
 	stepApplication(currtime);
 	return true;
@@ -110,19 +117,25 @@ public class PcMod extends module.ModuleAbstractClass {
 		packet = ports[i].getPacket(this);
 		if (packet.getToId() == serialNo) {
 		    iPhysicalBuffer.add(packet);
-		    modUI.getModWin().msg.append("\nPhysical-Received packet from " + packet.getFromId() + " on port " + i);
-		    modUI.getModWin().msg.append("\n" + packet.getData() + "\n");
-		}
+		    getEventLog().log(EventLog.MSG, "\nPhysical-Received packet from %1$d on port %2$d", packet.getFromId(), i);
+		    getEventLog().log(EventLog.MSG, "\n%4$s\n", packet.getData());
+		} else
+		    packet.release();
 	    }
 	}
+	if (getMetrics() != null)
+	    getMetrics().recordQueueDepth(oPhysicalBuffer.size());
 	for (int i = 0, portNo; i < oPhysicalBuffer.size(); i++) {
 	    portNo = oPhysicalBuffer.get(i).toPort;
-	    if (ports[portNo] == null)
+	    if (ports[portNo] == null) {
+		if (getMetrics() != null)
+		    getMetrics().countDrop();
 		oPhysicalBuffer.remove(i);
+	    }
 	    else if (ports[portNo].isActive() && !ports[portNo].hasData()) {
 		ports[portNo].putPacket(oPhysicalBuffer.get(i), this);
 		newPacket = true;
-		modUI.getModWin().msg.append("\nPhysical-Put packet on port " + portNo + "  to " + oPhysicalBuffer.get(i).getToId());
+		getEventLog().log(EventLog.MSG, "\nPhysical-Put packet on port %1$d  to %2$d", portNo, oPhysicalBuffer.get(i).getToId());
 		oPhysicalBuffer.remove(i);
 	    }
 	}
@@ -133,15 +146,16 @@ public class PcMod extends module.ModuleAbstractClass {
 	if (iPhysicalBuffer.size() > 0) {
 	    Packet packet = iPhysicalBuffer.get(0);
 	    iPhysicalBuffer.remove(0);
-	    if (packet.getData().startsWith("ping")) {
+	    if (packet.dataStartsWith("ping")) {
 		if (pingData != null && packet.getData().compareTo("ping" + pingData + "ping" + pingData) == 0) {
-		    modUI.getModWin().amsg.append("\n" + "Reply from " + packet.getFromId() + " time= " + (absoluteTime - pingTime));
+		    getEventLog().log(EventLog.AMSG, "\nReply from %1$d time= %2$d", packet.getFromId(), (long) (absoluteTime - pingTime));
 		    pingData = null;
 		} else if (packet.getData().lastIndexOf("ping") < 3) {
-		    modUI.getModWin().amsg.append("\n Ping from " + packet.getFromId());
+		    getEventLog().log(EventLog.AMSG, "\n Ping from %1$d", packet.getFromId());
 		    oPhysicalBuffer.add(new Packet(packet.getFromId(), serialNo, 10, packet.getData() + packet.getData(), 0, true));
 		}
 	    }
+	    packet.release();
 	}
 	if (pingData == null && absoluteTime % (serialNo * 50) == 0) {
 	    pingTime = absoluteTime;
@@ -149,21 +163,56 @@ public class PcMod extends module.ModuleAbstractClass {
 	    toid = toid % 15 + 1;
 	    pingData = new String(name + serialNo + absoluteTime);
 	    oPhysicalBuffer.add(new Packet(toid, serialNo, 10, "ping" + pingData, 0));
-	    modUI.getModWin().amsg.append("\nPinging " + toid + " with 10 bytes of data");
+	    getEventLog().log(EventLog.AMSG, "\nPinging %1$d with 10 bytes of data", toid);
 	}
 	if (pingData != null && (absoluteTime - pingTime > TIMEOUT)) {
-	    modUI.getModWin().amsg.append("\nRequestTimeout");
+	    getEventLog().log(EventLog.AMSG, "\nRequestTimeout");
 	    pingData = null;
 	}
 	return true;
     }
 
+    public long getNextWakeup(long time) {
+	if (iPhysicalBuffer.size() > 0 || oPhysicalBuffer.size() > 0)
+	    return time + 1;
+	if (pingData != null)
+	    return (long) pingTime + TIMEOUT; // The step at which absoluteTime - pingTime exceeds TIMEOUT.
+	long period = serialNo * 50;
+	if (period <= 0)
+	    return NEVER;
+	return ((long) absoluteTime / period + 1) * period - 1; // The step at which absoluteTime is next a multiple of period.
+    }
+
     public boolean reset() { // passed when the simulation is reset
 	elapsedTime = 0;
 	absoluteTime = 0;
 	return true;
     }
 
+    public void saveState(Checkpoint c) throws IOException {
+	DataOutputStream out = c.getOutput();
+	out.writeDouble(elapsedTime);
+	out.writeDouble(absoluteTime);
+	c.writeString(pingData);
+	out.writeDouble(pingTime);
+	out.writeInt(toid);
+	c.writePackets(iPhysicalBuffer);
+	c.writePackets(oPhysicalBuffer);
+    }
+
+    public void restoreState(Checkpoint c) throws IOException {
+	DataInputStream in = c.getInput();
+	elapsedTime = in.readDouble();
+	absoluteTime = in.readDouble();
+	pingData = c.readString();
+	pingTime = in.readDouble();
+	toid = in.readInt();
+	iPhysicalBuffer.clear();
+	oPhysicalBuffer.clear();
+	c.readPackets(iPhysicalBuffer);
+	c.readPackets(oPhysicalBuffer);
+    }
+
     public Port[] getPorts() {// Gives the list of already initialized ports
 	return ports;
     }
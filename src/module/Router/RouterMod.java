@@ -18,36 +18,43 @@
  */
 package module.Router;
 
+import framework.Checkpoint;
+import framework.Checkpointable;
+import framework.EventDriven;
 import framework.Port;
+import module.EventLog;
 import module.ModuleUI;
 import framework.Packet;
+import framework.PacketPool;
+
+import java.io.IOException;
 
 /**
  * 
  * @author Rohit
  * 
  */
-public class RouterMod extends module.ModuleAbstractClass {
+public class RouterMod extends module.ModuleAbstractClass implements EventDriven, Checkpointable {
     static final int     MAXPORTS     = 10;
+    static final int     MAXHEALTH    = 50;   // Steps a learnt computer stays in the routing table.
 
     int		  noOfPorts    = 0;
     private Port	 ports[];
     private int	  lastServiced = 0;
+    private double       lastStepTime = -1;
     private int	  serialNo     = 0;
     private final String name	 = "Router";
     boolean	      newPacket;
     Packet	       packet;
 
-    private PortData     routInfo[];
+    private RoutingTable routInfo;
+    private volatile long version     = 0;    // Bumped by addPort() and whenever routInfo changes, see getRoutingTableVersion().
+    private long         routInfoVersion = 0; // The routInfo version when version was last bumped for it.
     private ModuleUI     modUI	= null;
 
     public RouterMod() {
-	buffer.EditMode.module = this;// TODO: Remove this line from here..........................IMPORTANT!
-	modUI = new RouterUI(this);
 	ports = new Port[MAXPORTS];
-	routInfo = new PortData[MAXPORTS];
-	for (int i = 0; i < MAXPORTS; i++)
-	    routInfo[i] = new PortData();
+	routInfo = new RoutingTable(MAXHEALTH);
     }
 
     public void setSno(int n) {
@@ -58,44 +65,42 @@ public class RouterMod extends module.ModuleAbstractClass {
 	return serialNo;
     }
 
-    private void servicePort(int portNo) {
-	boolean found = false;
+    private void servicePort(int portNo, long time) {
 	packet = ports[portNo].getPacket(this);
-	routInfo[portNo].updateCompId(packet.getFromId());
-	modUI.getModWin().msg.append("\nFrom:" + packet.getFromId() + "  To:" + packet.getToId());
+	routInfo.learn(packet.getFromId(), portNo, time);
+	getEventLog().log(EventLog.MSG, "\nFrom:%1$d  To:%2$d", packet.getFromId(), packet.getToId());
 
-	if (serialNo == packet.getToId() && (packet.getData().startsWith("ping"))) {
-	    modUI.getModWin().amsg.append("\n Ping from " + packet.getFromId());
+	if (serialNo == packet.getToId() && packet.dataStartsWith("ping")) {
+	    getEventLog().log(EventLog.AMSG, "\n Ping from %1$d", packet.getFromId());
 	    Packet tempPacket = new Packet(packet.getFromId(), serialNo, 10, packet.getData() + packet.getData(), 0, true);
 	    ports[portNo].putPacket(tempPacket, this);
 	    ports[portNo].setActive(true);
 	    newPacket = true;
-	    modUI.getModWin().msg.append("\n packet on port" + portNo);
+	    getEventLog().log(EventLog.MSG, "\n packet on port%1$d", portNo);
 	} else if (packet.getToId() != packet.getFromId()) {
-	    for (int i = 0; i < noOfPorts; i++) {
-		if (routInfo[i].isIdPresent(packet.getToId())) {
-		    modUI.getModWin().msg.append("\nfound: " + packet.getToId() + "is at port " + i);
-		    Packet tempPacket = new Packet(packet);
-		    ports[i].putPacket(tempPacket, this);
-		    ports[i].setActive(true);
-		    newPacket = true;
-		    found = true;
-		    break;
-		}
-	    }
-	    if (!found) {
-		modUI.getModWin().msg.append("\nnot found");
+	    int port = routInfo.lookup(packet.getToId(), time);
+	    if (port >= 0 && port < noOfPorts) {
+		getEventLog().log(EventLog.MSG, "\nfound: %1$dis at port %2$d", packet.getToId(), port);
+		Packet tempPacket = PacketPool.copyOf(packet);
+		ports[port].putPacket(tempPacket, this);
+		ports[port].setActive(true);
+		newPacket = true;
+	    } else {
+		getEventLog().log(EventLog.MSG, "\nnot found");
 		for (int i = 0; i < noOfPorts; i++)
 		    if (i != portNo) {
-			Packet tempPacket = new Packet(packet);
+			Packet tempPacket = PacketPool.copyOf(packet);
 			ports[i].putPacket(tempPacket, this);
 			ports[i].setActive(true);
 			newPacket = true;
-			modUI.getModWin().msg.append("\npacket on port" + i);
+			getEventLog().log(EventLog.MSG, "\npacket on port%1$d", i);
 		    }
 
 	    }
-	}
+	} else if (getMetrics() != null)
+	    getMetrics().countDrop(); // Sent to itself.
+	packet.release();
+	packet = null;
     }
 
     /**
@@ -107,7 +112,8 @@ public class RouterMod extends module.ModuleAbstractClass {
 	if (noOfPorts < MAXPORTS) {
 	    ports[noOfPorts++] = port;
 	    port.setActive(true);
-	    modUI.getModWin().msg.append("\nADDED port " + noOfPorts);
+	    bumpVersion();
+	    getEventLog().log(EventLog.MSG, "\nADDED port %1$d", noOfPorts);
 	    return 1;
 	} else
 	    return ERROR_ALREADY_MAX_PORTS;
@@ -119,6 +125,8 @@ public class RouterMod extends module.ModuleAbstractClass {
          * @return
          */
     public ModuleUI getModuleUI() {
+	if (modUI == null)
+	    modUI = new RouterUI(this);
 	return modUI;
     }
 
@@ -141,31 +149,87 @@ public class RouterMod extends module.ModuleAbstractClass {
     public boolean step(double time) {
 	int i = 0;
 	if (noOfPorts != 0) {
+	    // Every step advances lastServiced by one, even the steps skipped by the Scheduler since no port had data then.
+	    if (lastStepTime >= 0)
+		lastServiced = (int) ((lastServiced + (long) (time - lastStepTime - 1) % noOfPorts) % noOfPorts);
 	    lastServiced = (lastServiced + 1) % noOfPorts;
 	    while (!ports[lastServiced].hasData() && i < noOfPorts) {
 		i++;
 		lastServiced = (lastServiced + 1) % noOfPorts;
 	    }
 	    if (ports[lastServiced].hasData() && !ports[lastServiced].isTransmiting())
-		servicePort(lastServiced);
+		servicePort(lastServiced, (long) time);
 	}
 
-	String routTab = new String("Routing table:\n");
-	for (i = 0; i < noOfPorts; i++) {
-	    routInfo[i].removeExpiredId();
-	    routTab = routTab.concat("\nPort: " + i + " Module: " + routInfo[i].getAllCompInfo());
-	}
-	modUI.getModWin().cmd.setText(routTab);
+	routInfo.expire((long) time);
+	lastStepTime = time;
+	checkRoutingTable();
 	return true; // boolean Success or failure
     }
 
-    public boolean reset() { // passed when the simulation is reset
+    /**
+	 * @return Changes whenever the text returned by getRoutingTableText() would change, so that RouterUI only formats it when needed.
+	 */
+    public long getRoutingTableVersion() {
+	return version;
+    }
+
+    /**
+	 * Bumps version if routInfo changed since the last call. Called by the simulation thread after it changed routInfo.
+	 */
+    private void checkRoutingTable() {
+	if (routInfo.getVersion() != routInfoVersion) {
+	    routInfoVersion = routInfo.getVersion();
+	    bumpVersion();
+	}
+    }
+
+    private synchronized void bumpVersion() { // addPort() is called from the EDT.
+	version++;
+    }
+
+    /**
+	 * Formats the routing table for display.
+	 * 
+	 * @return
+	 */
+    public String getRoutingTableText() {
+	StringBuilder routTab = new StringBuilder("Routing table: (module, expires at)\n");
 	for (int i = 0; i < noOfPorts; i++) {
-	    routInfo[i].removeAllCompInfo();
+	    routTab.append("\nPort: ").append(i).append(" Module: ");
+	    routInfo.appendCompInfo(routTab, i);
 	}
+	return routTab.toString();
+    }
+
+    /**
+	 * Besides when packets arrive, the router only needs stepping when an entry of its routing table expires.
+	 */
+    public long getNextWakeup(long time) {
+	long next = routInfo.getNextExpiry();
+	return next == Long.MAX_VALUE ? NEVER : next;
+    }
+
+    public boolean reset() { // passed when the simulation is reset
+	lastStepTime = -1;
+	routInfo.clear();
+	checkRoutingTable();
 	return true;
     }
 
+    public void saveState(Checkpoint c) throws IOException {
+	c.getOutput().writeInt(lastServiced);
+	c.getOutput().writeDouble(lastStepTime);
+	routInfo.saveState(c);
+    }
+
+    public void restoreState(Checkpoint c) throws IOException {
+	lastServiced = c.getInput().readInt();
+	lastStepTime = c.getInput().readDouble();
+	routInfo.restoreState(c);
+	checkRoutingTable();
+    }
+
     public Port[] getPorts() {// Gives the list of already initialized ports
 	return ports;
     }
@@ -22,14 +22,37 @@ import framework.Packet;
 import module.DataUI;
 import module.Module;
 import module.ModuleUI;
+import module.moduleWindow;
+import ui.Mode;
 
 /**
  * @author Nirupam
  * 
  */
 public class RouterUI extends ModuleUI {
+    private RouterMod mod;
+    private long      shownVersion = -1; // Version of the routing table shown in the Commands tab.
+
     public RouterUI(Module m) {
 	super(m);
+	mod = (RouterMod) m;
+    }
+
+    /**
+     * Refreshes the routing table in the Commands tab, but only when the window is open and the table has changed since it was last shown.
+     */
+    public void stepSimulation(Mode mode) {
+	super.stepSimulation(mode);
+	moduleWindow win = getModWin();
+	if (win != null && win.isWindowVisible() && mod.getRoutingTableVersion() != shownVersion) {
+	    shownVersion = mod.getRoutingTableVersion();
+	    win.cmd.setText(mod.getRoutingTableText());
+	}
+    }
+
+    public void reset() {
+	super.reset();
+	shownVersion = -1;
     }
 
     protected DataUI getNewDataUI(Packet p) {
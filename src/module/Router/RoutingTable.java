@@ -0,0 +1,227 @@
+/*
+ * RoutingTable.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package module.Router;
+
+import framework.Checkpoint;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Routing table of RouterMod. Maps the id of a computer to the port it was last heard on, for a limited number of steps. It is an open
+ * addressing hash table on primitive arrays, and entries are aged by a TimingWheel, so both lookups and ageing take constant time however
+ * many computers the router has learnt.
+ *
+ * @author Rohit
+ *
+ */
+public class RoutingTable {
+    private int		 ttl;		 // Steps an entry stays valid after it was last learnt.
+    private long		keys[];
+    private int		 ports[];
+    private long		expiresAt[];
+    private boolean	     used[];
+    private int		 size   = 0;
+    private long		version = 0;	      // Bumped whenever an entry is added, changed or removed.
+    private TimingWheel	 wheel  = new TimingWheel();
+    private TimingWheel.Listener expirer = new TimingWheel.Listener() {
+	public void expired(long id, long time) {
+	    int i = indexOf(id);
+	    if (i >= 0 && expiresAt[i] <= time) // Otherwise it was learnt again and has a later entry in the wheel.
+		removeAt(i);
+	}
+    };
+
+    /**
+     * @param ttl
+     *                Number of steps an entry is kept after it was last learnt.
+     */
+    public RoutingTable(int ttl) {
+	this.ttl = ttl;
+	allocate(16);
+    }
+
+    private void allocate(int capacity) {
+	keys = new long[capacity];
+	ports = new int[capacity];
+	expiresAt = new long[capacity];
+	used = new boolean[capacity];
+    }
+
+    private int slotOf(long id) {
+	long h = id * 0x9E3779B97F4A7C15L;
+	return (int) (h ^ (h >>> 32)) & (keys.length - 1);
+    }
+
+    private int indexOf(long id) {
+	for (int i = slotOf(id); used[i]; i = (i + 1) & (keys.length - 1))
+	    if (keys[i] == id)
+		return i;
+	return -1;
+    }
+
+    /**
+     * Records that id was heard on port at time. The entry replaces any earlier one for id and is valid for ttl steps.
+     */
+    public void learn(long id, int port, long time) {
+	if ((size + 1) * 2 > keys.length)
+	    grow();
+	int i = slotOf(id);
+	while (used[i] && keys[i] != id)
+	    i = (i + 1) & (keys.length - 1);
+	if (!used[i]) {
+	    used[i] = true;
+	    keys[i] = id;
+	    size++;
+	}
+	ports[i] = port;
+	expiresAt[i] = time + ttl;
+	wheel.schedule(id, time + ttl);
+	version++;
+    }
+
+    /**
+     * @return The port id was last heard on, or -1 if it is not known or its entry has expired by time.
+     */
+    public int lookup(long id, long time) {
+	int i = indexOf(id);
+	if (i < 0 || expiresAt[i] <= time)
+	    return -1;
+	return ports[i];
+    }
+
+    /**
+     * Removes the entries which have expired by time.
+     */
+    public void expire(long time) {
+	wheel.advance(time, expirer);
+    }
+
+    /**
+     * @return The earliest time at which an entry may expire, or Long.MAX_VALUE if the table is empty.
+     */
+    public long getNextExpiry() {
+	return size == 0 ? Long.MAX_VALUE : wheel.nextTime();
+    }
+
+    /**
+     * @return A number that changes every time the table does, so a view of the table only needs rebuilding when it differs.
+     */
+    public long getVersion() {
+	return version;
+    }
+
+    public int size() {
+	return size;
+    }
+
+    public boolean isEmpty() {
+	return size == 0;
+    }
+
+    public void clear() {
+	allocate(16);
+	size = 0;
+	wheel.clear();
+	version++;
+    }
+
+    /**
+     * Saves the entries with the times they expire at, for RouterMod's checkpoint.
+     */
+    void saveState(Checkpoint c) throws IOException {
+	DataOutputStream out = c.getOutput();
+	out.writeInt(ttl);
+	out.writeLong(wheel.getNow());
+	out.writeInt(size);
+	for (int i = 0; i < keys.length; i++) {
+	    if (!used[i])
+		continue;
+	    out.writeLong(keys[i]);
+	    out.writeInt(ports[i]);
+	    out.writeLong(expiresAt[i]);
+	}
+    }
+
+    void restoreState(Checkpoint c) throws IOException {
+	DataInputStream in = c.getInput();
+	ttl = in.readInt();
+	long now = in.readLong();
+	clear();
+	wheel.clear(now);
+	for (int n = in.readInt(); n > 0; n--) {
+	    long id = in.readLong();
+	    int port = in.readInt();
+	    learn(id, port, in.readLong() - ttl);
+	}
+    }
+
+    /**
+     * Appends the entries learnt on port to info as " (id,step it expires at)" pairs.
+     */
+    public void appendCompInfo(StringBuilder info, int port) {
+	for (int i = 0; i < keys.length; i++)
+	    if (used[i] && ports[i] == port)
+		info.append(" (").append(keys[i]).append(',').append(expiresAt[i]).append(')');
+    }
+
+    private void grow() {
+	long k[] = keys;
+	int p[] = ports;
+	long e[] = expiresAt;
+	boolean u[] = used;
+	allocate(keys.length * 2);
+	for (int i = 0; i < k.length; i++) {
+	    if (!u[i])
+		continue;
+	    int j = slotOf(k[i]);
+	    while (used[j])
+		j = (j + 1) & (keys.length - 1);
+	    used[j] = true;
+	    keys[j] = k[i];
+	    ports[j] = p[i];
+	    expiresAt[j] = e[i];
+	}
+    }
+
+    /**
+     * Removes the entry at i, shifting back the entries after it so no lookup chain is broken.
+     */
+    private void removeAt(int i) {
+	int mask = keys.length - 1;
+	int j = i;
+	while (true) {
+	    j = (j + 1) & mask;
+	    if (!used[j])
+		break;
+	    int home = slotOf(keys[j]);
+	    // Move j back to i unless its home slot lies cyclically in (i, j].
+	    if (i <= j ? (home <= i || home > j) : (home <= i && home > j)) {
+		keys[i] = keys[j];
+		ports[i] = ports[j];
+		expiresAt[i] = expiresAt[j];
+		i = j;
+	    }
+	}
+	used[i] = false;
+	size--;
+	version++;
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * TimingWheel.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package module.Router;
+
+/**
+ * Hierarchical timing wheel of (id, time) entries. Level 0 has one slot per step for the next 64 steps, level 1 one slot per 64 steps for
+ * the next 64 * 64 steps and so on. Entries are moved down a level when the lower level wraps around, so scheduling and expiring an entry
+ * are O(1) however many entries there are.
+ * <p>
+ * Entries are never cancelled. An entry that was rescheduled simply shows up again later, and the Listener checks whether it is still
+ * current when it expires.
+ *
+ * @author Rohit
+ *
+ */
+class TimingWheel {
+    interface Listener {
+	public void expired(long id, long time);
+    }
+
+    private static final int BITS   = 6;
+    private static final int SLOTS  = 1 << BITS;
+    private static final int MASK   = SLOTS - 1;
+    private static final int LEVELS = 4;	    // Entries further away than 64^4 steps are kept in the last level and cascaded again.
+
+    private long	     ids[][][]   = new long[LEVELS][SLOTS][];
+    private long	     times[][][] = new long[LEVELS][SLOTS][];
+    private int	      sizes[][]   = new int[LEVELS][SLOTS];
+    private int	      count       = 0;
+    private int	      levelCount[] = new int[LEVELS];
+    private long	     now	 = 0;	  // Last step expired.
+
+    /**
+     * Queues id to expire at time. Times not after the current one expire on the next advance().
+     */
+    void schedule(long id, long time) {
+	place(id, Math.max(time, now + 1));
+    }
+
+    /**
+     * Puts the entry on the level its time falls in. A time equal to the current one is only allowed while cascading, before the current
+     * level 0 slot is expired.
+     */
+    private void place(long id, long time) {
+	long delta = time - now;
+	int level = 0;
+	while (level < LEVELS - 1 && delta >= 1L << (BITS * (level + 1)))
+	    level++;
+	int slot = (int) (time >>> (BITS * level)) & MASK;
+	int size = sizes[level][slot];
+	if (ids[level][slot] == null) {
+	    ids[level][slot] = new long[4];
+	    times[level][slot] = new long[4];
+	} else if (size == ids[level][slot].length) {
+	    long i[] = new long[size * 2];
+	    long t[] = new long[size * 2];
+	    System.arraycopy(ids[level][slot], 0, i, 0, size);
+	    System.arraycopy(times[level][slot], 0, t, 0, size);
+	    ids[level][slot] = i;
+	    times[level][slot] = t;
+	}
+	ids[level][slot][size] = id;
+	times[level][slot][size] = time;
+	sizes[level][slot] = size + 1;
+	levelCount[level]++;
+	count++;
+    }
+
+    /**
+     * Expires every entry with a time up to and including time, in time order.
+     */
+    void advance(long time, Listener listener) {
+	while (now < time) {
+	    if (count == 0) {
+		now = time;
+		return;
+	    }
+	    now++;
+	    for (int level = 1; level < LEVELS && (now & ((1L << (BITS * level)) - 1)) == 0; level++)
+		cascade(level, (int) (now >>> (BITS * level)) & MASK);
+	    int slot = (int) now & MASK;
+	    int size = sizes[0][slot];
+	    if (size == 0)
+		continue;
+	    long i[] = ids[0][slot];
+	    sizes[0][slot] = 0;
+	    levelCount[0] -= size;
+	    count -= size;
+	    for (int k = 0; k < size; k++)
+		listener.expired(i[k], now);
+	}
+    }
+
+    private void cascade(int level, int slot) {
+	int size = sizes[level][slot];
+	if (size == 0)
+	    return;
+	long i[] = ids[level][slot];
+	long t[] = times[level][slot];
+	ids[level][slot] = null;
+	times[level][slot] = null;
+	sizes[level][slot] = 0;
+	levelCount[level] -= size;
+	count -= size;
+	for (int k = 0; k < size; k++)
+	    place(i[k], t[k]);
+    }
+
+    /**
+     * @return A time no later than the earliest queued entry, or Long.MAX_VALUE if the wheel is empty.
+     */
+    long nextTime() {
+	if (count == 0)
+	    return Long.MAX_VALUE;
+	long next = Long.MAX_VALUE;
+	if (levelCount[0] < count)
+	    next = ((now >>> BITS) + 1) << BITS; // Higher level entries move to level 0 at the earliest at the start of the next round.
+	for (int k = 1; k <= SLOTS && now + k < next; k++)
+	    if (sizes[0][(int) (now + k) & MASK] != 0)
+		return now + k;
+	return next;
+    }
+
+    void clear() {
+	clear(0);
+    }
+
+    /**
+     * Empties the wheel and makes time the last step expired.
+     */
+    void clear(long time) {
+	ids = new long[LEVELS][SLOTS][];
+	times = new long[LEVELS][SLOTS][];
+	sizes = new int[LEVELS][SLOTS];
+	levelCount = new int[LEVELS];
+	count = 0;
+	now = time;
+    }
+
+    long getNow() {
+	return now;
+    }
+}
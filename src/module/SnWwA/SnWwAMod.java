@@ -20,13 +20,21 @@ package module.SnWwA;
 
 import java.awt.Component;
 import java.awt.Container;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
 import java.lang.String;
 import java.util.ArrayList;
 
 import ui.main.Config;
 
+import framework.Checkpoint;
+import framework.Checkpointable;
+import framework.EventDriven;
+import framework.Metrics;
 import framework.Packet;
 import framework.Port;
+import module.EventLog;
 import module.ModuleUI;
 
 /**
@@ -37,7 +45,7 @@ import module.ModuleUI;
  * @author Nirupam
  * 
  */
-public class SnWwAMod implements module.Module {
+public class SnWwAMod implements module.Module, EventDriven, Checkpointable {
     static final int	  MAXPORTS	   = 1;
     volatile boolean	  canEmitData	= false;
     int		       snd_targetSlNo     = 2;
@@ -48,7 +56,7 @@ public class SnWwAMod implements module.Module {
     int		       rcv_frameno	= -1;       // Sent frame no
     int		       sendTimer	  = 90;
     int		       noOfPorts	  = 0;
-    private int	       timeoutTimer;		  // timeoutTimer counts down. It then resets to sendTimer value.
+    private double	    timeoutAt;		     // Time at which the frame is re-sent. Set to sendTimer steps ahead on every send.
     private int	       serialNo	   = 0;
     double		    elapsedTime	= 0;
     double		    absoluteTime       = 0;
@@ -61,14 +69,14 @@ public class SnWwAMod implements module.Module {
     private ModuleUI	  modUI	      = null;
     private ArrayList<Packet> iPhysicalBuffer;
     private ArrayList<Packet> oPhysicalBuffer;
+    private EventLog	  eventLog	   = new EventLog();
+    private Metrics	   metrics	    = null;
 
     public SnWwAMod() {
 	ports = new Port[MAXPORTS];
-	buffer.EditMode.module = this;
-	modUI = new SnWwAUI(this);
 	iPhysicalBuffer = new ArrayList<Packet>();
 	oPhysicalBuffer = new ArrayList<Packet>();
-	resetSendTimer();
+	resetSendTimer(0);
     }
 
     /**
@@ -80,7 +88,7 @@ public class SnWwAMod implements module.Module {
 	if (noOfPorts < MAXPORTS) {
 	    port.setActive(true);
 	    ports[noOfPorts++] = port;
-	    System.out.println("ADDED port " + noOfPorts);
+	    getEventLog().log(EventLog.MSG, "\nADDED port %1$d", noOfPorts);
 	    return 1;
 	} else
 	    return ERROR_ALREADY_MAX_PORTS;
@@ -92,6 +100,8 @@ public class SnWwAMod implements module.Module {
      * @return
      */
     public ModuleUI getModuleUI() {
+	if (modUI == null)
+	    modUI = new SnWwAUI(this);
 	return modUI;
     }
 
@@ -99,6 +109,18 @@ public class SnWwAMod implements module.Module {
 	modUI = m;
     }
 
+    public EventLog getEventLog() {
+	return eventLog;
+    }
+
+    public Metrics getMetrics() {
+	return metrics;
+    }
+
+    public void setMetrics(Metrics m) {
+	metrics = m;
+    }
+
     public String getName() {
 	return name;
     }
@@ -111,6 +133,14 @@ public class SnWwAMod implements module.Module {
 	serialNo = n;
     }
 
+    /**
+     * Same as the Emit check box of SnWwAUI. When set the node sends frames to the node with serial no. targetSlNo.
+     */
+    public void setCanEmitData(boolean state, int targetSlNo) {
+	snd_targetSlNo = targetSlNo;
+	canEmitData = state;
+    }
+
     public boolean step(double currtime) {// boolean Success or failure
 	stepPhysical(currtime);
 	stepApplication(currtime);
@@ -124,19 +154,25 @@ public class SnWwAMod implements module.Module {
 		packet = ports[i].getPacket(this);
 		if (packet.getToId() == serialNo) {
 		    iPhysicalBuffer.add(packet);
-		    modUI.getModWin().msg.append("\nPhysical-Received packet from " + packet.getFromId() + " on port " + i);
-		    modUI.getModWin().msg.append("\n" + packet.getData() + "\n");
-		}
+		    getEventLog().log(EventLog.MSG, "\nPhysical-Received packet from %1$d on port %2$d", packet.getFromId(), i);
+		    getEventLog().log(EventLog.MSG, "\n%4$s\n", packet.getData());
+		} else
+		    packet.release();
 	    }
 	}
+	if (getMetrics() != null)
+	    getMetrics().recordQueueDepth(oPhysicalBuffer.size());
 	for (int i = 0, portNo; i < oPhysicalBuffer.size(); i++) {
 	    portNo = oPhysicalBuffer.get(i).toPort;
-	    if (ports[portNo] == null)
+	    if (ports[portNo] == null) {
+		if (getMetrics() != null)
+		    getMetrics().countDrop();
 		oPhysicalBuffer.remove(i);
+	    }
 	    else if (ports[portNo].isActive() && !ports[portNo].hasData()) {
 		ports[portNo].putPacket(oPhysicalBuffer.get(i), this);
 		newPacket = true;
-		modUI.getModWin().msg.append("\nPhysical-Put packet on port " + portNo + "  to " + oPhysicalBuffer.get(i).getToId());
+		getEventLog().log(EventLog.MSG, "\nPhysical-Put packet on port %1$d  to %2$d", portNo, oPhysicalBuffer.get(i).getToId());
 		oPhysicalBuffer.remove(i);
 	    }
 	}
@@ -149,13 +185,13 @@ public class SnWwAMod implements module.Module {
 	    packet = iPhysicalBuffer.get(0);
 	    iPhysicalBuffer.remove(0);
 	}
-	absoluteTime++;
+	absoluteTime = currtime + 1;
 	if (canEmitData) { // TRANSMITTER MODE
 
 	    if (packet != null && packet.getToId() == serialNo) {
-		if (!packet.isCorrupt() && packet.getData() != null && packet.isReply) {
-		    snd_ackno = Integer.parseInt(packet.getData());
-		    modUI.getModWin().amsg.append("\nReceived ACK " + snd_ackno + " from " + packet.getFromId());
+		if (!packet.isCorrupt() && packet.getDataBytes() != null && packet.isReply()) {
+		    snd_ackno = packet.getDataAsInt();
+		    getEventLog().log(EventLog.AMSG, "\nReceived ACK %1$d from %2$d", snd_ackno, packet.getFromId());
 		    snd_receivedPacket = true;
 		}
 	    }
@@ -163,17 +199,16 @@ public class SnWwAMod implements module.Module {
 		if (noOfPorts != 0) {
 		    snd_frameno = snd_ackno;
 		    oPhysicalBuffer.add(new Packet(snd_targetSlNo, serialNo, 10, String.valueOf(snd_frameno)));
-		    resetSendTimer();
-		    modUI.getModWin().amsg.append("\nSent data packet " + snd_frameno + " to " + snd_targetSlNo);
+		    resetSendTimer(currtime);
+		    getEventLog().log(EventLog.AMSG, "\nSent data packet %1$d to %2$d", snd_frameno, snd_targetSlNo);
 		    snd_receivedPacket = false;
 		}
 	    } else if (!snd_receivedPacket) { // Waiting for ACK
-		timeoutTimer--;
-		if (timeoutTimer <= 0) {
+		if (currtime >= timeoutAt) {
 		    if (noOfPorts != 0) {
 			oPhysicalBuffer.add(new Packet(snd_targetSlNo, serialNo, 10, String.valueOf(snd_frameno)));
-			resetSendTimer();
-			modUI.getModWin().amsg.append("\nTimer timed-out. Re-sent data packet " + snd_frameno + " to " + snd_targetSlNo);
+			resetSendTimer(currtime);
+			getEventLog().log(EventLog.AMSG, "\nTimer timed-out. Re-sent data packet %1$d to %2$d", snd_frameno, snd_targetSlNo);
 		    }
 		}
 	    }
@@ -182,14 +217,15 @@ public class SnWwAMod implements module.Module {
 	{ // RECEIVER MODE
 
 	    if (packet != null && packet.getToId() == serialNo) {
-		if (!packet.isCorrupt() && packet.getData() != null && !packet.isReply) {
-		    int tframeno = Integer.parseInt(packet.getData());
-		    if (tframeno == rcv_frameno)
-			modUI.getModWin().amsg.append("\nReceived duplicate data packet " + tframeno + " from " + packet.getFromId()
-				+ ". Discarding it.");
-		    else {
+		if (!packet.isCorrupt() && packet.getDataBytes() != null && !packet.isReply()) {
+		    int tframeno = packet.getDataAsInt();
+		    if (tframeno == rcv_frameno) {
+			getEventLog().log(EventLog.AMSG, "\nReceived duplicate data packet %1$d from %2$d. Discarding it.", tframeno, packet.getFromId());
+			if (metrics != null)
+			    metrics.countDrop();
+		    } else {
 			rcv_frameno = tframeno;
-			modUI.getModWin().amsg.append("\nReceived data packet " + rcv_frameno + " from " + packet.getFromId());
+			getEventLog().log(EventLog.AMSG, "\nReceived data packet %1$d from %2$d", rcv_frameno, packet.getFromId());
 		    }
 		    ack_targetSlNo = (int) packet.getFromId();
 		    rcv_receivedPacket = true;
@@ -199,14 +235,19 @@ public class SnWwAMod implements module.Module {
 		if (noOfPorts != 0) {
 		    rcv_ackno = getNextSequenceNo(rcv_frameno);
 		    Packet ack = new Packet(ack_targetSlNo, serialNo, 10, String.valueOf(rcv_ackno));
-		    ack.isReply = true;
+		    ack.setReply(true);
 		    oPhysicalBuffer.add(ack);
-		    modUI.getModWin().amsg.append("\nSent ack packet " + rcv_ackno + " to " + ack_targetSlNo);
+		    getEventLog().log(EventLog.AMSG, "\nSent ack packet %1$d to %2$d", rcv_ackno, ack_targetSlNo);
 		    rcv_receivedPacket = false;
 		}
 	    }
 
 	}
+	if (packet != null) {
+	    if (packet.isCorrupt() && metrics != null)
+		metrics.countDrop(); // A corrupt frame is ignored; the sender times out and sends it again.
+	    packet.release();
+	}
 	return true;
     }
 
@@ -217,8 +258,21 @@ public class SnWwAMod implements module.Module {
 	    return 0;
     }
 
-    private void resetSendTimer() {
-	timeoutTimer = sendTimer;
+    private void resetSendTimer(double currtime) {
+	timeoutAt = currtime + sendTimer;
+    }
+
+    public long getNextWakeup(long time) {
+	if (noOfPorts == 0)
+	    return NEVER;
+	if (iPhysicalBuffer.size() > 0 || oPhysicalBuffer.size() > 0 || rcv_receivedPacket)
+	    return time + 1;
+	if (canEmitData) {
+	    if (snd_frameno == -1 || snd_receivedPacket)
+		return time + 1;
+	    return (long) Math.ceil(timeoutAt); // Waiting for ACK.
+	}
+	return NEVER;
     }
 
     public boolean reset() { // passed when the simulation is reset
@@ -230,10 +284,50 @@ public class SnWwAMod implements module.Module {
 	rcv_ackno = 0;
 	snd_receivedPacket = false;
 	rcv_receivedPacket = false;
-	resetSendTimer();
+	resetSendTimer(0);
 	return true;
     }
 
+    public void saveState(Checkpoint c) throws IOException {
+	DataOutputStream out = c.getOutput();
+	out.writeBoolean(canEmitData);
+	out.writeInt(snd_targetSlNo);
+	out.writeInt(ack_targetSlNo);
+	out.writeInt(snd_ackno);
+	out.writeInt(snd_frameno);
+	out.writeInt(rcv_ackno);
+	out.writeInt(rcv_frameno);
+	out.writeInt(sendTimer);
+	out.writeDouble(timeoutAt);
+	out.writeDouble(elapsedTime);
+	out.writeDouble(absoluteTime);
+	out.writeBoolean(snd_receivedPacket);
+	out.writeBoolean(rcv_receivedPacket);
+	c.writePackets(iPhysicalBuffer);
+	c.writePackets(oPhysicalBuffer);
+    }
+
+    public void restoreState(Checkpoint c) throws IOException {
+	DataInputStream in = c.getInput();
+	canEmitData = in.readBoolean();
+	snd_targetSlNo = in.readInt();
+	ack_targetSlNo = in.readInt();
+	snd_ackno = in.readInt();
+	snd_frameno = in.readInt();
+	rcv_ackno = in.readInt();
+	rcv_frameno = in.readInt();
+	sendTimer = in.readInt();
+	timeoutAt = in.readDouble();
+	elapsedTime = in.readDouble();
+	absoluteTime = in.readDouble();
+	snd_receivedPacket = in.readBoolean();
+	rcv_receivedPacket = in.readBoolean();
+	iPhysicalBuffer.clear();
+	oPhysicalBuffer.clear();
+	c.readPackets(iPhysicalBuffer);
+	c.readPackets(oPhysicalBuffer);
+    }
+
     public Port[] getPorts() {// Gives the list of already initialized ports
 	return ports;
     }
@@ -55,7 +55,7 @@ public class SnWwAUI extends ModuleUI implements ActionListener {
     protected DataUI getNewDataUI(Packet p) {
 	DataUI dui = super.getNewDataUI(p);
 	String lbl = p.getFromId() + "->" + p.getToId();
-	if (p.isReply) {
+	if (p.isReply()) {
 	    lbl = lbl + " ACKNo:" + mod.rcv_ackno;
 	} else {
 	    lbl = lbl + " FNo:" + mod.snd_frameno;
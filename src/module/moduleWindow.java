@@ -30,13 +30,17 @@ import javax.swing.JPanel;
 import javax.swing.JScrollPane;
 import javax.swing.JTabbedPane;
 import javax.swing.JTextArea;
+import javax.swing.Timer;
 import javax.swing.event.ChangeEvent;
 import javax.swing.event.ChangeListener;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
 
 import ui.main.Config;
 
+import framework.Metrics;
+
 import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
@@ -68,6 +72,11 @@ public class moduleWindow implements ActionListener {
     private boolean   cmd_autoscroll  = true;
     private boolean   stat_autoscroll = true;
     private boolean   help_autoscroll = true;
+    private Timer     drainTimer      = null;  // Moves the module's EventLog into msg and amsg while the window is visible.
+    private StringBuilder drained[]   = new StringBuilder[EventLog.CHANNELS];
+    private String    shownStat       = null;  // Text last put in stat by showMetrics().
+    private static final int DRAIN_PERIOD  = 200;   // in ms
+    private static int       retainedLines = 1000;  // Lines kept in msg and amsg. Older lines are removed as new ones come.
 
     public moduleWindow(ModuleWinUI mod) {
 	owner = mod;
@@ -152,6 +161,17 @@ public class moduleWindow implements ActionListener {
 		public void removeUpdate(DocumentEvent e) {}
 	    });
 
+	    for (int i = 0; i < drained.length; i++)
+		drained[i] = new StringBuilder();
+	    drainTimer = new Timer(DRAIN_PERIOD, new ActionListener() {
+		public void actionPerformed(ActionEvent e) {
+		    drainLog();
+		    showMetrics();
+		    if (!jFrame.isVisible())
+			drainTimer.stop();
+		}
+	    });
+
 	    jFrame.setContentPane(getJContentPane());
 	    jFrame.setTitle(mod.getNameToDisplay());
 	    jFrame.setIconImage(new ImageIcon(Config.iconPath + "module.png").getImage());
@@ -251,6 +271,81 @@ public class moduleWindow implements ActionListener {
 
     public void makeWindowVisible() {
 	jFrame.setVisible(true);
+	drainLog();
+	showMetrics();
+	drainTimer.start();
+    }
+
+    /**
+	 * Moves the messages the module logged since the last call into the Messages and App Msg tabs, in one append per tab. Must be called
+	 * on the EDT.
+	 */
+    public void drainLog() {
+	EventLog log = owner.getEventLog();
+	if (log == null)
+	    return;
+	for (int i = 0; i < drained.length; i++)
+	    drained[i].setLength(0);
+	if (log.drainTo(drained) == 0)
+	    return;
+	appendRetained(msg, drained[EventLog.MSG]);
+	appendRetained(amsg, drained[EventLog.AMSG]);
+    }
+
+    /**
+	 * Shows the module's metrics in the Statistics tab. Must be called on the EDT.
+	 */
+    public void showMetrics() {
+	Metrics metrics = owner.getMetrics();
+	String text;
+	if (metrics == null)
+	    text = "Metrics are not being collected. Turn them on with View > Collect Metrics.";
+	else {
+	    StringBuilder s = new StringBuilder();
+	    metrics.appendTo(s);
+	    text = s.toString();
+	}
+	if (!text.equals(shownStat)) {
+	    stat.setText(text);
+	    shownStat = text;
+	}
+    }
+
+    private void appendRetained(JTextArea area, StringBuilder text) {
+	if (text.length() == 0)
+	    return;
+	area.append(text.toString());
+	int extra = area.getLineCount() - retainedLines;
+	if (extra > 0) {
+	    try {
+		area.getDocument().remove(0, area.getLineEndOffset(extra - 1));
+	    } catch (BadLocationException e) {
+		e.printStackTrace();
+	    }
+	}
+    }
+
+    /**
+	 * Sets the number of lines kept in the Messages and App Msg tabs of all the module windows.
+	 * 
+	 * @param lines
+	 */
+    public static void setRetainedLines(int lines) {
+	if (lines > 0)
+	    retainedLines = lines;
+    }
+
+    public static int getRetainedLines() {
+	return retainedLines;
+    }
+
+    /**
+         * Modules can use this to skip preparing text nobody can see.
+         * 
+         * @return
+         */
+    public boolean isWindowVisible() {
+	return jFrame != null && jFrame.isVisible();
     }
 
     private JCheckBox getchkAllwaysOnTop() {
@@ -273,10 +368,14 @@ public class moduleWindow implements ActionListener {
     }
 
     public void reset() {
+	EventLog log = owner.getEventLog();
+	if (log != null)
+	    log.clear();
 	cmd.setText("");
 	msg.setText("");
 	amsg.setText("");
 	stat.setText("");
+	shownStat = null;
 	msg_autoscroll = true;
 	amsg_autoscroll = true;
 	cmd_autoscroll = true;
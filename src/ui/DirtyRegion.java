@@ -0,0 +1,77 @@
+/*
+ * DirtyRegion.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package ui;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+
+/**
+ * The areas of an image that need redrawing, as a few rectangles. Overlapping rectangles are merged so no area is drawn twice, and once
+ * there are more than MAX_RECTS they are merged into one. Rectangles can be added from any thread.
+ *
+ * @author Rohit
+ *
+ */
+class DirtyRegion {
+    static final int	     MAX_RECTS = 16;
+
+    private ArrayList<Rectangle> rects     = new ArrayList<Rectangle>();
+    private boolean	      all       = true;
+
+    synchronized void add(Rectangle r) {
+	if (all || r.isEmpty())
+	    return;
+	for (int i = 0; i < rects.size(); i++) {
+	    if (rects.get(i).contains(r))
+		return;
+	    if (rects.get(i).intersects(r)) {
+		r = r.union(rects.remove(i));
+		i = -1; // The union may now overlap rectangles already checked.
+	    }
+	}
+	rects.add(r);
+	if (rects.size() > MAX_RECTS) {
+	    Rectangle u = rects.get(0);
+	    for (int i = 1; i < rects.size(); i++)
+		u = u.union(rects.get(i));
+	    rects.clear();
+	    rects.add(u);
+	}
+    }
+
+    /**
+     * Marks the whole image.
+     */
+    synchronized void addAll() {
+	all = true;
+	rects.clear();
+    }
+
+    /**
+     * Empties the region.
+     *
+     * @return The rectangles it had, or null if it was the whole image.
+     */
+    synchronized ArrayList<Rectangle> take() {
+	ArrayList<Rectangle> r = all ? null : new ArrayList<Rectangle>(rects);
+	all = false;
+	rects.clear();
+	return r;
+    }
+}
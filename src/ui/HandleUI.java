@@ -61,13 +61,20 @@ public class HandleUI extends ComponentUI {
          */
     @Override
     public boolean isClicked(Point pt) {
+	boolean ret = getClickBounds().contains(pt);
+	// System.out.println("isClicked called. Returned "+ret);
+	return ret;
+    }
+
+    /**
+         * @return The area within which the handle is clicked, which is larger than the handle so that it is easy to pick.
+         */
+    public Rectangle getClickBounds() {
 	int Dimension = dimension + 12;
 	int relaxPosBy = 1;
 	int X = (int) (handle.getCoord().x - Dimension / 2);
 	int Y = (int) (handle.getCoord().y - Dimension / 2);
-	boolean ret = (new Rectangle(X - relaxPosBy, Y - relaxPosBy, Dimension, Dimension)).contains(pt);
-	// System.out.println("isClicked called. Returned "+ret);
-	return ret;
+	return new Rectangle(X - relaxPosBy, Y - relaxPosBy, Dimension, Dimension);
     }
 
     public boolean isClicked(Point2D.Double pt) {
@@ -87,6 +94,14 @@ public class HandleUI extends ComponentUI {
 	    return false;
     }
 
+    /**
+         * @return The area render() draws on.
+         */
+    public Rectangle getBounds() {
+	Point2D.Double coord = handle.getCoord();
+	return new Rectangle((int) (coord.x - dimension / 2) - 1, (int) (coord.y - dimension / 2) - 1, dimension + 2, dimension + 2);
+    }
+
     public void render(Graphics g) {
 	if (owner instanceof WireUI) {
 	    Point2D.Double coord = handle.getCoord();
@@ -23,19 +23,25 @@ import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
 import java.util.ArrayList;
+import java.util.List;
 import java.lang.String;
 
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JViewport;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
 
-import util.MiscFunctions;
 
 import module.Module;
 import module.moduleWindow;
 import module.ModuleUI;
+import module.ModuleRegistry;
 import framework.Clock;
+import framework.Engine;
 import framework.Manager;
 import framework.Wire;
 import framework.Port;
@@ -55,6 +61,7 @@ public class ManagerUI extends JPanel implements Runnable {
     private static final long   serialVersionUID	 = 6987896984766987839L;
     private static final int    FPS		      = 80;
     private static final int    NO_DELAYS_PER_YIELD      = 6;
+    private static final int    FAST_FORWARD_CHUNK       = 1000; // Steps fast-forwarded between checks for the simulation being stopped.
 
     private volatile boolean    renderAllways	    = false;
     private volatile Mode       mode		     = Mode.EDIT_MODE;
@@ -63,14 +70,21 @@ public class ManagerUI extends JPanel implements Runnable {
     private ArrayList<ModuleUI> modulesUI		= null;
     private ArrayList<WireUI>   wiresUI		  = null;
     private ArrayList<HandleUI> handlesUI		= null;
-    private ArrayList<Class>    loadedModules	    = null;
-    private ArrayList<String>   loadedModuleNames	= null;
+    private SpatialIndex<ModuleUI> moduleIndex	= new SpatialIndex<ModuleUI>(); // Where modulesUI, handlesUI and wiresUI are.
+    private SpatialIndex<HandleUI> handleIndex	= new SpatialIndex<HandleUI>();
+    private SpatialIndex<WireUI> wireIndex	    = new SpatialIndex<WireUI>();
+    private ArrayList<ModuleUI> activeModules	    = new ArrayList<ModuleUI>(); // The modules and handles whose status is not NONE.
+    private ArrayList<HandleUI> activeHandles	    = new ArrayList<HandleUI>();
     private boolean	     noOneMoving	      = true;
     private HandleUI	    draggingHandle	   = null;
     private String	      name;
     private volatile boolean    terminateManagerUI;
-    private String	      selectionName	    = null;
+    private String	      selectionName	    = null; // Class name of the module to place.
+    private volatile long       fastForwardTo	    = -1;   // Time to simulate till without animating, -1 when not fast-forwarding.
     private Image	       simBuffer;
+    private DirtyRegion	 dirty		    = new DirtyRegion(); // Areas of simBuffer to redraw.
+    private Image	       background	       = null;		  // Wires, modules and handles, without the packets.
+    private DirtyRegion	 backgroundDirty	  = new DirtyRegion(); // Areas of background to redraw.
     // private Loader loader;
     private Manager	     manager;
     private Thread	      t;
@@ -81,6 +95,8 @@ public class ManagerUI extends JPanel implements Runnable {
                                                                                 // latency of wires.
     JLabel		      timeLabel		= null;
     public Clock		clock		    = null;
+    private volatile Rectangle  viewRect		 = null;		// getVisibleRect() as last seen on the EDT, see getViewRect().
+    private ChangeListener      viewListener	     = null;		// Keeps viewRect up to date, see addNotify().
 
     /**
          * This also creates a new instance of Manager from package framework.
@@ -99,8 +115,6 @@ public class ManagerUI extends JPanel implements Runnable {
 	modulesUI = new ArrayList<ModuleUI>();
 	wiresUI = new ArrayList<WireUI>();
 	handlesUI = new ArrayList<HandleUI>();
-	loadedModules = new ArrayList<Class>();
-	loadedModuleNames = new ArrayList<String>();
 	// loader=new Loader();
 	renderAllways = false;
 	boundingbox = null;
@@ -197,6 +211,39 @@ public class ManagerUI extends JPanel implements Runnable {
 	}
     }
 
+    /**
+     * Follows the scrolling and resizing of the viewport ManagerUI is shown in, so that getViewRect() need not ask Swing off the EDT.
+     */
+    @Override
+    public void addNotify() {
+	super.addNotify();
+	if (getParent() instanceof JViewport) {
+	    if (viewListener == null)
+		viewListener = new ChangeListener() {
+		    public void stateChanged(ChangeEvent e) {
+			viewRect = getVisibleRect();
+		    }
+		};
+	    ((JViewport) getParent()).addChangeListener(viewListener);
+	}
+	viewRect = getVisibleRect();
+    }
+
+    @Override
+    public void removeNotify() {
+	if (getParent() instanceof JViewport && viewListener != null)
+	    ((JViewport) getParent()).removeChangeListener(viewListener);
+	super.removeNotify();
+    }
+
+    /**
+     * @return The visible part of the client space. Unlike getVisibleRect() it can be called from any thread, e.g. by WireUI while stepping.
+     */
+    Rectangle getViewRect() {
+	Rectangle r = viewRect;
+	return r != null ? r : new Rectangle(0, 0, getWidth(), getHeight()); // Not shown yet.
+    }
+
     public void ResizeToSmallestSize() {
 	int x = 0, y = 0;
 	if (boundingbox != null) {
@@ -218,7 +265,69 @@ public class ManagerUI extends JPanel implements Runnable {
          * @return
          */
     ModuleUI getModuleUI(Module mod) {
-	return modulesUI.get(modules.lastIndexOf(mod));
+	return mod.getModuleUI(); // The same ModuleUI that was added to modulesUI when mod was placed.
+    }
+
+    public ArrayList<Module> getModules() {
+	return modules;
+    }
+
+    public ArrayList<WireUI> getWiresUI() {
+	return wiresUI;
+    }
+
+    /**
+     * Adds a module at the given location, the same way as when the user places it. Used to rebuild a topology, e.g. one read by
+     * FileManager. Call finishRestore() once all the modules and wires have been added.
+     * 
+     * @param m
+     * @param coord
+     *                Location of the centre of the module.
+     * @return
+     */
+    public ModuleUI placeModule(Module m, Point coord) {
+	if (m.getModuleUI() == null)
+	    m.setModuleUI(new ModuleUI(m));
+	ModuleUI mUI = m.getModuleUI();
+	mUI.setCoord(coord);
+	modules.add(m);
+	manager.addModule(m);
+	modulesUI.add(mUI);
+	moduleIndex.put(mUI, mUI.getBounds());
+	return mUI;
+    }
+
+    /**
+     * Adds a wire whose two ports are already added to modules placed by placeModule(), the same way as when the user draws it.
+     * 
+     * @param w
+     * @param bends
+     *                The bends of the wire, in order from port 0's end.
+     * @return
+     */
+    public WireUI connect(Wire w, Point2D.Double bends[]) {
+	WireUI wUI = new WireUI(w, this);
+	Handle h[] = wUI.restore(bends);
+	addHandle(h[0], getModuleUI(w.getPort(0).getOwner()), wUI);
+	for (int i = 1; i < h.length - 1; i++)
+	    addHandle(h[i], wUI);
+	addHandle(h[h.length - 1], getModuleUI(w.getPort(1).getOwner()), wUI);
+	wires.add(w);
+	wiresUI.add(wUI);
+	wireIndex.put(wUI, wUI.getSegmentBounds());
+	manager.addWire(w);
+	return wUI;
+    }
+
+    /**
+     * Sizes and redraws the client space after a topology was rebuilt with placeModule() and connect().
+     */
+    public void finishRestore() {
+	updateBoundingBox();
+	if (getParent() instanceof JViewport)
+	    ResizeToSmallestSize();
+	if (!renderAllways)
+	    render();
     }
 
     /**
@@ -277,6 +386,10 @@ public class ManagerUI extends JPanel implements Runnable {
 	manager.addModule(m);
     }
 
+    public Manager getManager() {
+	return manager;
+    }
+
     public ManagerUI getReference() {
 	return this;
     }
@@ -285,10 +398,13 @@ public class ManagerUI extends JPanel implements Runnable {
 	HandleUI h = new HandleUI(handle, owner);
 	h.wireUIOwner = AssociatedWireUI;
 	handlesUI.add(h);
+	handleIndex.put(h, h.getClickBounds());
     }
 
     private void addHandle(Handle handle, ComponentUI owner) {
-	handlesUI.add(new HandleUI(handle, owner));
+	HandleUI h = new HandleUI(handle, owner);
+	handlesUI.add(h);
+	handleIndex.put(h, h.getClickBounds());
     }
 
     public void Resize(int width, int height) {
@@ -296,6 +412,7 @@ public class ManagerUI extends JPanel implements Runnable {
 	revalidate();
 	if (simBuffer != null) {
 	    simBuffer.flush();
+	    markAllDirty();
 	    simBuffer = createImage(width, height);
 	    if (simBuffer == null) {
 		System.out.println("simBuffer is null");
@@ -313,16 +430,28 @@ public class ManagerUI extends JPanel implements Runnable {
          */
     private synchronized void removeHandles(ComponentUI owner) {
 	for (int i = 0; i < handlesUI.size(); i++)
-	    while (i < handlesUI.size() && handlesUI.get(i).owner == owner)
+	    while (i < handlesUI.size() && handlesUI.get(i).owner == owner) {
+		handleIndex.remove(handlesUI.get(i));
+		activeHandles.remove(handlesUI.get(i));
 		handlesUI.remove(i);
+	    }
 
     }
 
-    private synchronized void rePositionHandles(ComponentUI componentui, Point2D.Double loc) {
+    /**
+         * Moves the handles of a module that moved from 'from' to loc, along with the wires they are on.
+         */
+    private synchronized void rePositionHandles(ComponentUI componentui, Point2D.Double from, Point2D.Double loc) {
 	if (componentui != null) {
-	    for (int i = 0; i < handlesUI.size(); i++) {
-		if (handlesUI.get(i).owner == componentui)
-		    handlesUI.get(i).handle.setCoord(loc);
+	    ArrayList<HandleUI> near = handleIndex.query(new Point((int) from.x, (int) from.y));
+	    for (int i = 0; i < near.size(); i++) {
+		HandleUI h = near.get(i);
+		if (h.owner == componentui) {
+		    h.handle.setCoord(loc);
+		    handleIndex.put(h, h.getClickBounds());
+		    if (h.wireUIOwner != null)
+			wireIndex.put(h.wireUIOwner, h.wireUIOwner.getSegmentBounds());
+		}
 	    }
 	}
     }
@@ -330,13 +459,16 @@ public class ManagerUI extends JPanel implements Runnable {
     private synchronized void mergeHandle(HandleUI h) {
 	if (h == null || !h.is_naked())
 	    return;
-	for (int i = 0; i < handlesUI.size(); i++) {
-	    HandleUI hi = handlesUI.get(i);
+	ArrayList<HandleUI> near = handleIndex.query(new Point((int) h.handle.getCoord().x, (int) h.handle.getCoord().y));
+	for (int i = 0; i < near.size(); i++) {
+	    HandleUI hi = near.get(i);
 	    if (hi.isClicked(h.handle.getCoord())) {// Don't get misguided by isClciked name. It could had been named isPointLiesWithin.
 		if (h.wireUIOwner == hi.wireUIOwner) {
 		    if (h.wireUIOwner.areAdjacent(h.handle, hi.handle)) {
 			h.wireUIOwner.removeNakedHandle(h.handle);
 			handlesUI.remove(h);
+			handleIndex.remove(h);
+			wireIndex.put(h.wireUIOwner, h.wireUIOwner.getSegmentBounds());
 			break;
 		    }
 		}
@@ -344,6 +476,67 @@ public class ManagerUI extends JPanel implements Runnable {
 	}
     }
 
+    /**
+         * Sets the status of a module, keeping track of those whose status is not NONE.
+         */
+    private void setStatus(ModuleUI m, int status) {
+	m.setStatus(status);
+	if (status == ModuleUI.NONE)
+	    activeModules.remove(m);
+	else if (!activeModules.contains(m))
+	    activeModules.add(m);
+    }
+
+    private void setStatus(HandleUI h, int status) {
+	h.setStatus(status);
+	if (status == HandleUI.NONE)
+	    activeHandles.remove(h);
+	else if (!activeHandles.contains(h))
+	    activeHandles.add(h);
+    }
+
+    /**
+         * Sets the status of all the modules to NONE.
+         */
+    private void clearModuleStatus() {
+	for (int i = 0; i < activeModules.size(); i++)
+	    activeModules.get(i).setStatus(ModuleUI.NONE);
+	activeModules.clear();
+    }
+
+    private void clearHandleStatus() {
+	for (int i = 0; i < activeHandles.size(); i++)
+	    activeHandles.get(i).setStatus(HandleUI.NONE);
+	activeHandles.clear();
+    }
+
+    /**
+         * @return The modules clicked at pt, in the order of modulesUI.
+         */
+    private ArrayList<ModuleUI> modulesAt(Point pt) {
+	ArrayList<ModuleUI> found = moduleIndex.query(pt);
+	for (int i = found.size() - 1; i >= 0; i--)
+	    if (!found.get(i).isClicked(pt))
+		found.remove(i);
+	return found;
+    }
+
+    private ArrayList<HandleUI> handlesAt(Point pt) {
+	ArrayList<HandleUI> found = handleIndex.query(pt);
+	for (int i = found.size() - 1; i >= 0; i--)
+	    if (!found.get(i).isClicked(pt))
+		found.remove(i);
+	return found;
+    }
+
+    private ArrayList<WireUI> wiresAt(Point pt) {
+	ArrayList<WireUI> found = wireIndex.query(pt);
+	for (int i = found.size() - 1; i >= 0; i--)
+	    if (!found.get(i).isClicked(pt))
+		found.remove(i);
+	return found;
+    }
+
     // ************INNER CLASS***FOR HANDELING MOUSE EVENTS******************
     class ManagerUIMouseListener extends java.awt.event.MouseAdapter {
 	int  dClkRes       = 300; // double-click speed in ms
@@ -352,37 +545,26 @@ public class ManagerUI extends JPanel implements Runnable {
 
 	private void getNewModToBuffer() {
 	    if (selectionName != null && buffer.EditMode.module == null || buffer.EditMode.moduleUI == null) {
-		Class newClass;
-		if (loadedModuleNames.contains(selectionName)) {
-		    newClass = loadedModules.get(loadedModuleNames.indexOf(selectionName));
-		} else {
-		    try {
-			// newClass=loader.load(selectionName);
-			// Loader (our custom classloader in Loader.java) has been phased out, since this is simpler and
-			// that was making JVM throw "LinkageError [classname] violates loader constraints"
-			// exception when anyone tried to access member functions or variables from objects
-			// of classes loaded by Loader classloader.
-			
-			//String className = selectionName.replaceAll("/", ".");// Converting Pathname to classname
-			//className = className.substring(0, className.lastIndexOf('.'));
-			String className = MiscFunctions.convertPath2className(selectionName);
-			System.out.println("Loaded: " + className);
-			newClass = Class.forName(className);
-			loadedModules.add(newClass);
-			loadedModuleNames.add(selectionName);
-		    } catch (Exception Le) {
-			if (selectionName != null) {
-			    System.out.println("Error while loading module: " + selectionName);
-			    Le.printStackTrace();
-			}
-			return;
+		Class<?> newClass;
+		try {
+		    // Loader (our custom classloader in Loader.java) has been phased out, since this is simpler and
+		    // that was making JVM throw "LinkageError [classname] violates loader constraints"
+		    // exception when anyone tried to access member functions or variables from objects
+		    // of classes loaded by Loader classloader.
+		    newClass = ModuleRegistry.getModuleClass(selectionName);
+		} catch (Exception Le) {
+		    if (selectionName != null) {
+			System.out.println("Error while loading module: " + selectionName);
+			Le.printStackTrace();
 		    }
+		    return;
 		}
 		try {
-		    newClass.newInstance();
+		    buffer.EditMode.module = (Module) newClass.newInstance();
 		} catch (Exception Ie) {
 		    System.out.println("Error while instantiating module: " + selectionName);
 		    Ie.printStackTrace();
+		    return;
 		}
 		if (buffer.EditMode.module.getModuleUI() == null)
 		    buffer.EditMode.module.setModuleUI(new ModuleUI(buffer.EditMode.module));
@@ -415,17 +597,12 @@ public class ManagerUI extends JPanel implements Runnable {
 		    // This has been done so that the components donot get dragged when dragging has started from some
 		    // place other than the intended component. This prevents unintended dragging, when the user by mistake
 		    // drags out the mouse.
-		    for (int i = 0; i < handlesUI.size(); i++) {
-			if (handlesUI.get(i).isClicked(e.getPoint())) {
-			    handlesUI.get(i).setStatus(HandleUI.SELECTED);
-			    break;
-			}
-		    }
-		    for (int i = 0; i < modulesUI.size(); i++)
-			if (modulesUI.get(i).isClicked(e.getPoint())) {
-			    modulesUI.get(i).setStatus(ModuleUI.SELECTED);
-			    break;
-			}
+		    ArrayList<HandleUI> handles = handlesAt(e.getPoint());
+		    if (handles.size() > 0)
+			setStatus(handles.get(0), HandleUI.SELECTED);
+		    ArrayList<ModuleUI> clicked = modulesAt(e.getPoint());
+		    if (clicked.size() > 0)
+			setStatus(clicked.get(0), ModuleUI.SELECTED);
 		    if (!renderAllways)
 			render();
 		    break;
@@ -435,12 +612,11 @@ public class ManagerUI extends JPanel implements Runnable {
 
 	public void mouseReleased(java.awt.event.MouseEvent e) {
 	    noOneMoving = true;
-	    for (int i = 0; i < modulesUI.size(); i++)
-		modulesUI.get(i).setStatus(ModuleUI.NONE);
-	    for (int i = 0; i < handlesUI.size(); i++)
-		handlesUI.get(i).setStatus(HandleUI.NONE);
+	    clearModuleStatus();
+	    clearHandleStatus();
 	    mergeHandle(draggingHandle);
 	    draggingHandle = null;
+	    updateBoundingBox(); // Not done while dragging, as it looks at every module.
 	    if (!renderAllways)
 		render();
 	}
@@ -451,8 +627,7 @@ public class ManagerUI extends JPanel implements Runnable {
 
 		switch (mode) {
 		case WIRE_CREATION_MODE:
-		    for (int i = 0; i < modulesUI.size(); i++)
-			modulesUI.get(i).setStatus(ModuleUI.NONE);
+		    clearModuleStatus();
 		    removeHandles(buffer.WireCreationMode.wireUI);
 		    buffer.WireCreationMode.port = null;
 		    buffer.WireCreationMode.wire = null;
@@ -489,49 +664,33 @@ public class ManagerUI extends JPanel implements Runnable {
 			buffer.WireCreationMode.wireUI = null;
 			mode = Mode.EDIT_MODE;
 
-			for (int i = 0; i < modulesUI.size(); i++)
-			    modulesUI.get(i).setStatus(ModuleUI.NONE);
-			for (int i = 0; i < modulesUI.size(); i++) {
-			    if (modulesUI.get(i).isClicked(e.getPoint())) {
-				modulesUI.get(i).getModWin().makeWindowVisible();
-			    }
-			}
+			clearModuleStatus();
+			for (ModuleUI m : modulesAt(e.getPoint()))
+			    m.showModWin(mode);
 			break;
 		    case EDIT_MODE:
-			for (int i = 0; i < modulesUI.size(); i++)
-			    modulesUI.get(i).setStatus(ModuleUI.NONE);
+			clearModuleStatus();
 			flag = false;
-			for (int i = 0; i < modulesUI.size(); i++) {
-			    if (modulesUI.get(i).isClicked(e.getPoint())) {
-				flag = true;
-				modulesUI.get(i).getModWin().makeWindowVisible();
-			    }
+			for (ModuleUI m : modulesAt(e.getPoint())) {
+			    flag = true;
+			    m.showModWin(mode);
 			}
 			if (!flag) {
-			    for (int i = 0; i < wiresUI.size(); i++) {
-				if (wiresUI.get(i).isClicked(e.getPoint())) {
-				    wiresUI.get(i).getModWin().makeWindowVisible();
-				}
-			    }
+			    for (WireUI w : wiresAt(e.getPoint()))
+				w.showModWin(mode);
 			}
 			break;
 		    case PAUSED_MODE:
 		    case SIMULATION_MODE:
-			for (int i = 0; i < modulesUI.size(); i++)
-			    modulesUI.get(i).setStatus(ModuleUI.NONE);
+			clearModuleStatus();
 			flag = false;
-			for (int i = 0; i < modulesUI.size(); i++) {
-			    if (modulesUI.get(i).isClicked(e.getPoint())) {
-				flag = true;
-				modulesUI.get(i).getModWin().makeWindowVisible();
-			    }
+			for (ModuleUI m : modulesAt(e.getPoint())) {
+			    flag = true;
+			    m.showModWin(mode);
 			}
 			if (!flag) {
-			    for (int i = 0; i < wiresUI.size(); i++) {
-				if (wiresUI.get(i).isClicked(e.getPoint())) {
-				    wiresUI.get(i).getModWin().makeWindowVisible();
-				}
-			    }
+			    for (WireUI w : wiresAt(e.getPoint()))
+				w.showModWin(mode);
 			}
 			break;
 
@@ -540,45 +699,42 @@ public class ManagerUI extends JPanel implements Runnable {
 		    switch (mode) {
 		    case WIRE_CREATION_MODE:
 			boolean flag = false;
-			for (int i = 0; i < modulesUI.size(); i++) {
-			    if (modulesUI.get(i).isClicked(e.getPoint())) {
-				modulesUI.get(i).setStatus(ModuleUI.NONE);
-				if (buffer.WireCreationMode.port.getOwner() != modules.get(i)) {
-				    buffer.WireCreationMode.port.getOwner().addPort(buffer.WireCreationMode.port, 0);
-				    Port p = new Port("Ethernet", modules.get(i));
-
-				    modules.get(i).addPort(p, 0);
-				    buffer.WireCreationMode.wire.addPort(p);
-				    Handle[] h = buffer.WireCreationMode.wireUI.commit(p);
-				    // modulesUI.get(i).addHandle(h[0]);
-				    if (h[0].isPort())
-					addHandle(h[0], getModuleUI(buffer.WireCreationMode.port.getOwner()), buffer.WireCreationMode.wireUI);
-				    /*
-                                         * else addHandle(h[0],buffer.WireCreationMode.wireUI);
-                                         */
-				    addHandle(h[1], modulesUI.get(i), buffer.WireCreationMode.wireUI);
-				    wires.add(buffer.WireCreationMode.wire);
-				    wiresUI.add(buffer.WireCreationMode.wireUI);
-				    manager.addWire(buffer.WireCreationMode.wire);
-				    buffer.WireCreationMode.wireUI.createWireModWin();
-				    buffer.WireCreationMode.wireUI.setModWin(new moduleWindow(buffer.WireCreationMode.wireUI.getWireModWin()));
-				    mode = Mode.EDIT_MODE;
-				    buffer.WireCreationMode.port = null;
-				    buffer.WireCreationMode.wire = null;
-				    buffer.WireCreationMode.wireUI = null;
-
-				} else {
-
-				    removeHandles(buffer.WireCreationMode.wireUI);
-				    buffer.WireCreationMode.port = null;
-				    buffer.WireCreationMode.wire = null;
-				    buffer.WireCreationMode.wireUI = null;
-				    mode = Mode.EDIT_MODE;
-
-				}
-				flag = true;
-				break;
+			for (ModuleUI target : modulesAt(e.getPoint())) {
+			    setStatus(target, ModuleUI.NONE);
+			    if (buffer.WireCreationMode.port.getOwner() != target.getModule()) {
+				buffer.WireCreationMode.port.getOwner().addPort(buffer.WireCreationMode.port, 0);
+				Port p = new Port("Ethernet", target.getModule());
+
+				target.getModule().addPort(p, 0);
+				buffer.WireCreationMode.wire.addPort(p);
+				Handle[] h = buffer.WireCreationMode.wireUI.commit(p);
+				// modulesUI.get(i).addHandle(h[0]);
+				if (h[0].isPort())
+				    addHandle(h[0], getModuleUI(buffer.WireCreationMode.port.getOwner()), buffer.WireCreationMode.wireUI);
+				/*
+                                     * else addHandle(h[0],buffer.WireCreationMode.wireUI);
+                                     */
+				addHandle(h[1], target, buffer.WireCreationMode.wireUI);
+				wires.add(buffer.WireCreationMode.wire);
+				wiresUI.add(buffer.WireCreationMode.wireUI);
+				wireIndex.put(buffer.WireCreationMode.wireUI, buffer.WireCreationMode.wireUI.getSegmentBounds());
+				manager.addWire(buffer.WireCreationMode.wire);
+				mode = Mode.EDIT_MODE;
+				buffer.WireCreationMode.port = null;
+				buffer.WireCreationMode.wire = null;
+				buffer.WireCreationMode.wireUI = null;
+
+			    } else {
+
+				removeHandles(buffer.WireCreationMode.wireUI);
+				buffer.WireCreationMode.port = null;
+				buffer.WireCreationMode.wire = null;
+				buffer.WireCreationMode.wireUI = null;
+				mode = Mode.EDIT_MODE;
+
 			    }
+			    flag = true;
+			    break;
 			}
 			if (!flag) {
 			    // Handle h= buffer.WireCreationMode.wireUI.commit(new Point2D.Double(e.getX(),e.getY()));
@@ -611,30 +767,21 @@ public class ManagerUI extends JPanel implements Runnable {
 			    manager.addModule(buffer.EditMode.module);
 			    System.out.println(buffer.EditMode.module.getName());
 			    buffer.EditMode.module = null;
-			    if (buffer.EditMode.moduleUI.getModWin() == null) {
-				buffer.EditMode.moduleUI.setModWin(new moduleWindow(buffer.EditMode.moduleUI));
-			    }
 			    modulesUI.add(buffer.EditMode.moduleUI);
+			    moduleIndex.put(buffer.EditMode.moduleUI, buffer.EditMode.moduleUI.getBounds());
 			    buffer.EditMode.moduleUI = null;
-			    for (int i = 0; i < modulesUI.size(); i++) {
-				modulesUI.get(i).setStatus(ModuleUI.NONE);
-			    }
+			    clearModuleStatus();
 
 			} else {
-			    for (int i = 0; i < modulesUI.size(); i++) {
-				if (modulesUI.get(i).isClicked(e.getPoint())) {
-				    modulesUI.get(i).setStatus(ModuleUI.SELECTED);
-				    mode = Mode.WIRE_CREATION_MODE;
-				    buffer.WireCreationMode.port = new Port("Eternet", modules.get(i));
-				    buffer.WireCreationMode.wire = new Wire(buffer.WireCreationMode.port);
-				    buffer.WireCreationMode.wireUI = new WireUI(buffer.WireCreationMode.wire, getReference());
-				    Point2D.Double p0 = new Point2D.Double(e.getX(), e.getY());
-				    buffer.WireCreationMode.mousePointerLocation = p0;
-
-				} else {
-				    modulesUI.get(i).setStatus(ModuleUI.NONE);
-				}
-
+			    clearModuleStatus();
+			    for (ModuleUI m : modulesAt(e.getPoint())) {
+				setStatus(m, ModuleUI.SELECTED);
+				mode = Mode.WIRE_CREATION_MODE;
+				buffer.WireCreationMode.port = new Port("Eternet", m.getModule());
+				buffer.WireCreationMode.wire = new Wire(buffer.WireCreationMode.port);
+				buffer.WireCreationMode.wireUI = new WireUI(buffer.WireCreationMode.wire, getReference());
+				Point2D.Double p0 = new Point2D.Double(e.getX(), e.getY());
+				buffer.WireCreationMode.mousePointerLocation = p0;
 			    }
 			}
 			if (!renderAllways)
@@ -647,14 +794,12 @@ public class ManagerUI extends JPanel implements Runnable {
 
 		switch (mode) {
 		case WIRE_CREATION_MODE:
-		    for (int i = 0; i < modulesUI.size(); i++) {
-			if (modulesUI.get(i).isClicked(e.getPoint())) {
-			    modulesUI.get(i).setStatus(ModuleUI.MOVING);
-			    mode = Mode.EDIT_MODE;
-			    buffer.WireCreationMode.port = null;
-			    buffer.WireCreationMode.wire = null;
-			    buffer.WireCreationMode.wireUI = null;
-			}
+		    for (ModuleUI m : modulesAt(e.getPoint())) {
+			setStatus(m, ModuleUI.MOVING);
+			mode = Mode.EDIT_MODE;
+			buffer.WireCreationMode.port = null;
+			buffer.WireCreationMode.wire = null;
+			buffer.WireCreationMode.wireUI = null;
 		    }
 		    if (!renderAllways)
 			render();
@@ -662,15 +807,15 @@ public class ManagerUI extends JPanel implements Runnable {
 		case SIMULATION_MODE:
 		    break;
 		case EDIT_MODE:
-		    for (int i = 0; i < modulesUI.size(); i++) {
-			if (modulesUI.get(i).isClicked(e.getPoint())) {
-			    if (modulesUI.get(i).getStatus() == ModuleUI.MOVING)
-				modulesUI.get(i).setStatus(ModuleUI.NONE);
-			    else
-				modulesUI.get(i).setStatus(ModuleUI.MOVING);
-
-			} else
-			    modulesUI.get(i).setStatus(ModuleUI.NONE);
+		    ArrayList<ModuleUI> clicked = modulesAt(e.getPoint());
+		    for (int i = activeModules.size() - 1; i >= 0; i--)
+			if (!clicked.contains(activeModules.get(i)))
+			    setStatus(activeModules.get(i), ModuleUI.NONE);
+		    for (ModuleUI m : clicked) {
+			if (m.getStatus() == ModuleUI.MOVING)
+			    setStatus(m, ModuleUI.NONE);
+			else
+			    setStatus(m, ModuleUI.MOVING);
 		    }
 		    if (!renderAllways)
 			render();
@@ -701,23 +846,34 @@ public class ManagerUI extends JPanel implements Runnable {
 	public void mouseMoved(java.awt.event.MouseEvent e) {
 	    switch (mode) {
 	    case WIRE_CREATION_MODE:
-		for (int i = 0; i < modulesUI.size(); i++) {
-		    if (modulesUI.get(i).isClicked(e.getPoint()))
-			modulesUI.get(i).setStatus(ModuleUI.SELECTED);
-		    else
-			modulesUI.get(i).setStatus(ModuleUI.NONE);
+		ArrayList<ModuleUI> hit = modulesAt(e.getPoint());
+		for (int i = activeModules.size() - 1; i >= 0; i--) {
+		    ModuleUI m = activeModules.get(i);
+		    if (!hit.contains(m)) {
+			setStatus(m, ModuleUI.NONE);
+			markDirty(m.getBounds());
+		    }
 		}
+		for (ModuleUI m : hit)
+		    if (m.getStatus() != ModuleUI.SELECTED) {
+			setStatus(m, ModuleUI.SELECTED);
+			markDirty(m.getBounds());
+		    }
+		markWireInCreationDirty();
 		buffer.WireCreationMode.mousePointerLocation = new Point2D.Double(e.getX(), e.getY());
+		markWireInCreationDirty();
 		if (!renderAllways)
-		    render();
+		    renderDirty();
 		break;
 	    case SIMULATION_MODE:
 		break;
 	    case EDIT_MODE:
 		if (buffer.EditMode.moduleUI != null) {
+		    markDirty(buffer.EditMode.moduleUI.getBounds());
 		    buffer.EditMode.moduleUI.setCoord(e.getPoint());
+		    markDirty(buffer.EditMode.moduleUI.getBounds());
 		    if (!renderAllways)
-			render();
+			renderDirty();
 		}
 		break;
 	    }
@@ -728,16 +884,11 @@ public class ManagerUI extends JPanel implements Runnable {
 
 	    if (!locInBound(e.getPoint())) {
 		if (mode == Mode.EDIT_MODE && e.getPoint().x > 0 && e.getPoint().y > 0) {
-		    boolean flag = false;
-		    for (int i = 0; i < modulesUI.size(); i++)
-			if (modulesUI.get(i).isClicked(e.getPoint()) || modulesUI.get(i).getStatus() == ModuleUI.MOVING) {
-			    flag = true;
-			}
-		    if (!flag)
-			for (int i = 0; i < handlesUI.size(); i++)
-			    if (handlesUI.get(i).isClicked(e.getPoint()) || handlesUI.get(i).getStatus() == HandleUI.MOVING) {
-				flag = true;
-			    }
+		    boolean flag = !modulesAt(e.getPoint()).isEmpty() || !handlesAt(e.getPoint()).isEmpty();
+		    for (int i = 0; i < activeModules.size() && !flag; i++)
+			flag = activeModules.get(i).getStatus() == ModuleUI.MOVING;
+		    for (int i = 0; i < activeHandles.size() && !flag; i++)
+			flag = activeHandles.get(i).getStatus() == HandleUI.MOVING;
 		    if (!flag)
 			return;
 		    adjustSize(e.getPoint());
@@ -751,43 +902,61 @@ public class ManagerUI extends JPanel implements Runnable {
 
 	    switch (mode) {
 	    case WIRE_CREATION_MODE:
+		markWireInCreationDirty();
 		buffer.WireCreationMode.mousePointerLocation.setLocation(e.getPoint());
+		markWireInCreationDirty();
 		if (!renderAllways)
-		    render();
+		    renderDirty();
 		break;
 	    case SIMULATION_MODE:
 		break;
 	    case EDIT_MODE:
-		for (int i = 0; i < handlesUI.size(); i++) {
-		    if (handlesUI.get(i).is_naked()) {// Moves only 'naked' handles.
-			if (noOneMoving && handlesUI.get(i).isClicked(e.getPoint())) {
-			    if ((handlesUI.get(i).getStatus() != HandleUI.MOVING) && handlesUI.get(i).getStatus() == ModuleUI.SELECTED)
-				handlesUI.get(i).setStatus(HandleUI.MOVING);
-			    draggingHandle = handlesUI.get(i);
+		// Only the handle or module under the pointer can start moving, the others moving are in activeHandles and activeModules.
+		if (noOneMoving)
+		    for (HandleUI h : handlesAt(e.getPoint()))
+			if (h.is_naked()) {// Moves only 'naked' handles.
+			    if (h.getStatus() == ModuleUI.SELECTED)
+				setStatus(h, HandleUI.MOVING);
+			    draggingHandle = h;
 			    noOneMoving = false;
+			    break;
 			}
-			if ((handlesUI.get(i).getStatus() == HandleUI.MOVING)) {
-			    Point2D.Double point = new Point2D.Double(e.getPoint().x, e.getPoint().y);
-			    handlesUI.get(i).handle.setCoord(point);
-			}
+		for (int i = 0; i < activeHandles.size(); i++) {
+		    HandleUI h = activeHandles.get(i);
+		    if (h.is_naked() && h.getStatus() == HandleUI.MOVING) {
+			Point2D.Double point = new Point2D.Double(e.getPoint().x, e.getPoint().y);
+			markDirty(h);
+			h.handle.setCoord(point);
+			handleIndex.put(h, h.getClickBounds());
+			if (h.wireUIOwner != null)
+			    wireIndex.put(h.wireUIOwner, h.wireUIOwner.getSegmentBounds());
+			markDirty(h);
 		    }
 		}
 
-		for (int i = 0; i < modulesUI.size(); i++) {
-		    if (noOneMoving && modulesUI.get(i).isClicked(e.getPoint())) {
-			if ((modulesUI.get(i).getStatus() != ModuleUI.MOVING && modulesUI.get(i).getStatus() == ModuleUI.SELECTED))
-			    modulesUI.get(i).setStatus(ModuleUI.MOVING);
+		if (noOneMoving) {
+		    ArrayList<ModuleUI> hit = modulesAt(e.getPoint());
+		    if (!hit.isEmpty()) {
+			if (hit.get(0).getStatus() == ModuleUI.SELECTED) {
+			    setStatus(hit.get(0), ModuleUI.MOVING);
+			    markDirty(hit.get(0).getBounds());
+			}
 			noOneMoving = false;
 		    }
-		    if ((modulesUI.get(i).getStatus() == ModuleUI.MOVING)) {
-			modulesUI.get(i).setCoord(e.getPoint());
-			rePositionHandles(modulesUI.get(i), modulesUI.get(i).getDoubleCoord());
-			// modulesUI.get(i).rePositionHandles();
+		}
+		for (int i = 0; i < activeModules.size(); i++) {
+		    ModuleUI m = activeModules.get(i);
+		    if (m.getStatus() == ModuleUI.MOVING) {
+			Point2D.Double from = m.getDoubleCoord();
+			markDirty(m);
+			m.setCoord(e.getPoint());
+			moduleIndex.put(m, m.getBounds());
+			rePositionHandles(m, from, m.getDoubleCoord());
+			markDirty(m);
 		    }
 		}
-		updateBoundingBox();
 		if (!renderAllways)
-		    render();
+		    renderDirty();
 		break;
 	    }
 
@@ -838,6 +1007,10 @@ public class ManagerUI extends JPanel implements Runnable {
 	beforeTime = System.currentTimeMillis();
 	int stepping = WireUI2WireSteppingRatio;
 	while (!terminateManagerUI) {
+	    if (fastForwardTo >= 0) {
+		runFastForward();
+		stepping = WireUI2WireSteppingRatio;
+	    }
 	    boolean ret;
 	    ret = stepSimulation(stepping);
 	    if (ret)
@@ -845,9 +1018,9 @@ public class ManagerUI extends JPanel implements Runnable {
 	    if (stepping == 0)
 		stepping = WireUI2WireSteppingRatio;
 	    if (renderAllways)
-		ret = true;
-	    if (ret)
 		render();
+	    else if (ret)
+		renderDirty();
 	    afterTime = System.currentTimeMillis();
 	    timeDiff = afterTime - beforeTime;
 	    sleepTime = (period - timeDiff) - overSleepTime; // time left in this loop
@@ -870,6 +1043,53 @@ public class ManagerUI extends JPanel implements Runnable {
 	t = null;
     }
 
+    /**
+         * Simulates steps more steps as fast as possible, without animating the wires and modules, then carries on animating from the state
+         * reached. Done by the simulation thread at its next frame, so only while simulating.
+         * 
+         * @param steps
+         */
+    public void fastForward(long steps) {
+	fastForwardTo((long) clock.getTime() + steps);
+    }
+
+    /**
+         * Like fastForward(), but simulates till the given time.
+         * 
+         * @param time
+         */
+    public void fastForwardTo(long time) {
+	if (mode == Mode.SIMULATION_MODE && time > clock.getTime())
+	    fastForwardTo = time;
+    }
+
+    public boolean isFastForwarding() {
+	return fastForwardTo >= 0;
+    }
+
+    /**
+         * Runs the Manager with an Engine till fastForwardTo, FAST_FORWARD_CHUNK steps at a time so that stopping the simulation is not held
+         * up. The packets on the wires are then shown afresh where they have got to, and everything is redrawn.
+         */
+    private void runFastForward() {
+	long target = fastForwardTo;
+	Engine engine = new Engine(manager);
+	engine.resume();
+	while (!terminateManagerUI && mode == Mode.SIMULATION_MODE && engine.getTime() <= target) {
+	    engine.runUntilTime(Math.min(target + 1, engine.getTime() + FAST_FORWARD_CHUNK));
+	    timeLabel.setText("Time: " + (engine.getTime() - 1) + " us (fast-forwarding to " + target + ")");
+	}
+	engine.suspend(); // The next tick runs target + 1.
+	if (fastForwardTo == target) // Otherwise another fast-forward was asked for meanwhile.
+	    fastForwardTo = -1;
+	for (int i = 0; i < wiresUI.size(); i++)
+	    wiresUI.get(i).clearDataUIs();
+	for (int i = 0; i < modulesUI.size(); i++)
+	    modulesUI.get(i).stepSimulation(this.mode);
+	timeLabel.setText("Time: " + clock.getTime() + " us");
+	render();
+    }
+
     /**
          * Progresses the simulation one step.
          * 
@@ -890,7 +1110,6 @@ public class ManagerUI extends JPanel implements Runnable {
 	    timeLabel.setText("Time: " + clock.getTime() + " us");
 	}
 	// The following objects take the decision of stepping themselves based on mode of ModuleUI.
-	// NOTE: ModuleUI MUST be called before wireUI is called because it creates the dataUI object that is used by wireUI.
 	if (mode != Mode.SIMULATION_MODE || clocktick) {
 	    if (stepping == WireUI2WireSteppingRatio || mode != Mode.SIMULATION_MODE) {
 		for (int i = 0; i < modulesUI.size(); i++)
@@ -904,14 +1123,80 @@ public class ManagerUI extends JPanel implements Runnable {
     }
 
     /**
-         * It calls renderToBuf first to render to buffer then calls activePaint to render it to screen.
+         * It calls renderToBuf first to render to buffer then calls activePaint to render it to screen. Everything is redrawn, use
+         * renderDirty() when only the areas marked by markDirty() have changed.
          * 
          */
     public void render() {
-	renderToBuf();
-	// activePaint();
-	Rectangle rect = this.getVisibleRect();
-	repaint(rect);
+	markAllDirty();
+	renderDirty();
+    }
+
+    /**
+         * Redraws only the areas marked by markDirty() since the last render, and repaints them on screen.
+         */
+    public void renderDirty() {
+	ArrayList<Rectangle> rects = renderDirtyToBuf();
+	if (rects == null)
+	    repaint(this.getVisibleRect());
+	else
+	    for (int i = 0; i < rects.size(); i++)
+		repaint(rects.get(i));
+    }
+
+    /**
+         * Marks an area of the client space whose looks changed, to be redrawn by the next renderDirty(). Can be called from any thread.
+         * 
+         * @param r
+         */
+    public void markDirty(Rectangle r) {
+	backgroundDirty.add(r);
+	dirty.add(r);
+    }
+
+    /**
+         * Marks an area where only packets have moved, so the cached background need not be redrawn there. Used by WireUI.
+         * 
+         * @param r
+         */
+    void markPacketsDirty(Rectangle r) {
+	dirty.add(r);
+    }
+
+    /**
+         * Marks the whole client space to be redrawn.
+         */
+    public void markAllDirty() {
+	backgroundDirty.addAll();
+	dirty.addAll();
+    }
+
+    /**
+         * Marks the area of a module and of the wires plugged into it, e.g. before and after it moves.
+         */
+    private void markDirty(ModuleUI m) {
+	markDirty(m.getBounds());
+	Point2D.Double c = m.getDoubleCoord();
+	for (HandleUI h : handleIndex.query(new Point((int) c.x, (int) c.y)))
+	    if (h.owner == m && h.wireUIOwner != null)
+		markDirty(h.wireUIOwner.getBounds());
+    }
+
+    /**
+         * Marks the area of a handle and of its wire, e.g. before and after it moves.
+         */
+    private void markDirty(HandleUI h) {
+	markDirty(h.getBounds());
+	if (h.wireUIOwner != null)
+	    markDirty(h.wireUIOwner.getBounds());
+    }
+
+    /**
+         * Marks the line being drawn in WIRE_CREATION_MODE, e.g. before and after the mouse pointer moves.
+         */
+    private void markWireInCreationDirty() {
+	if (buffer.WireCreationMode.wireUI != null)
+	    markDirty(buffer.WireCreationMode.wireUI.getBounds(buffer.WireCreationMode.mousePointerLocation));
     }
 
     /**
@@ -927,13 +1212,24 @@ public class ManagerUI extends JPanel implements Runnable {
          * thread.
          */
     public Image renderToBuf() {
+	renderDirtyToBuf();
+	return simBuffer;
+    }
+
+    /**
+         * Redraws the dirty areas of simBuffer. Each area is cleared and only the components which draw in it are rendered, clipped to it.
+         * While simulating the wires, modules and handles are not rendered but copied from the background image, and only the packets are
+         * drawn over them.
+         * 
+         * @return The areas redrawn, or null if the whole buffer was.
+         */
+    private ArrayList<Rectangle> renderDirtyToBuf() {
 	int PHEIGHT = this.getSize().height;
 	int PWIDTH = this.getSize().width;
 	if (PHEIGHT <= 0 || PWIDTH <= 0)
 	    return null;
 	// this.getHeight()>0?this.getHeight():this.getPreferredSize().height;
 	// this.getWidth()>0?this.getWidth():this.getPreferredSize().width;
-	Graphics g = null;
 
 	// draw the current frame to an image buffer
 	if (simBuffer == null) { // create the buffer
@@ -942,13 +1238,80 @@ public class ManagerUI extends JPanel implements Runnable {
 		System.out.println("simBuffer is null");
 		return null;
 	    }
+	    markAllDirty();
 	}
 
-	g = simBuffer.getGraphics();
+	boolean layered = mode == Mode.SIMULATION_MODE || mode == Mode.PAUSED_MODE;
+	if (layered && !renderBackground(PWIDTH, PHEIGHT))
+	    dirty.addAll(); // The background was lost after it was drawn, so it is drawn again in full.
+	ArrayList<Rectangle> rects = dirty.take();
+	if (rects == null) {
+	    rects = new ArrayList<Rectangle>();
+	    rects.add(new Rectangle(0, 0, PWIDTH, PHEIGHT));
+	}
+	for (int i = 0; i < rects.size(); i++) {
+	    Graphics g = simBuffer.getGraphics();
+	    g.setClip(rects.get(i));
+	    if (layered) {
+		g.drawImage(background, 0, 0, null);
+		renderPackets(g, rects.get(i));
+	    } else
+		renderArea(g, rects.get(i));
+	    g.dispose();
+	}
+	return rects.size() == 1 && rects.get(0).width == PWIDTH && rects.get(0).height == PHEIGHT ? null : rects;
+    }
 
+    /**
+         * Brings the dirty areas of the background image up to date, first making it if it does not exist or has the wrong size. It is a
+         * VolatileImage when the display supports one, so copying it to simBuffer is done by the graphics card.
+         * 
+         * @return false if the background lost its contents while it was drawn.
+         */
+    private boolean renderBackground(int width, int height) {
+	if (background == null || background.getWidth(null) != width || background.getHeight(null) != height) {
+	    if (background != null)
+		background.flush();
+	    background = createVolatileImage(width, height);
+	    if (background == null) // E.g. when headless.
+		background = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+	    backgroundDirty.addAll();
+	}
+	if (background instanceof VolatileImage) {
+	    int valid = ((VolatileImage) background).validate(getGraphicsConfiguration());
+	    if (valid == VolatileImage.IMAGE_INCOMPATIBLE) {
+		background.flush();
+		background = null;
+		return renderBackground(width, height);
+	    }
+	    if (valid == VolatileImage.IMAGE_RESTORED)
+		backgroundDirty.addAll();
+	}
+	ArrayList<Rectangle> rects = backgroundDirty.take();
+	if (rects == null) {
+	    rects = new ArrayList<Rectangle>();
+	    rects.add(new Rectangle(0, 0, width, height));
+	}
+	for (int i = 0; i < rects.size(); i++) {
+	    Graphics g = background.getGraphics();
+	    g.setClip(rects.get(i));
+	    renderArea(g, rects.get(i));
+	    g.dispose();
+	}
+	if (background instanceof VolatileImage && ((VolatileImage) background).contentsLost()) {
+	    backgroundDirty.addAll();
+	    return false;
+	}
+	return true;
+    }
+
+    /**
+         * Clears area and renders the components which draw in it. While simulating the packets are left out, see renderPackets().
+         */
+    private void renderArea(Graphics g, Rectangle area) {
 	// Clear the background
 	g.setColor(Color.white);
-	g.fillRect(0, 0, PWIDTH, PHEIGHT);
+	g.fillRect(area.x, area.y, area.width, area.height);
 
 	if (mode == Mode.EDIT_MODE) {
 	    if (buffer.EditMode.moduleUI != null)
@@ -964,14 +1327,32 @@ public class ManagerUI extends JPanel implements Runnable {
 	    }
 	}
 
+	// A full render looks at everything, a small area only at what the indexes find there.
+	boolean all = area.contains(0, 0, getWidth(), getHeight());
+	List<WireUI> w = all ? wiresUI : wireIndex.query(area);
+	List<ModuleUI> m = all ? modulesUI : moduleIndex.query(area);
+	for (int i = 0; i < w.size(); i++)
+	    if (w.get(i).getBounds().intersects(area))
+		w.get(i).renderSegments(g);
+	for (int i = 0; i < m.size(); i++)
+	    if (m.get(i).getBounds().intersects(area)) {
+		m.get(i).render(g, this);
+		moduleIndex.put(m.get(i), m.get(i).getBounds()); // The size of its label is only known once rendered.
+	    }
+	if (mode == Mode.EDIT_MODE || mode == Mode.WIRE_CREATION_MODE) {
+	    List<HandleUI> h = all ? handlesUI : handleIndex.query(area);
+	    for (int i = 0; i < h.size(); i++)
+		if (h.get(i).getBounds().intersects(area))
+		    h.get(i).render(g);
+	}
+    }
+
+    /**
+         * Renders the packets which are drawn in area.
+         */
+    private void renderPackets(Graphics g, Rectangle area) {
 	for (int i = 0; i < wiresUI.size(); i++)
-	    wiresUI.get(i).render(g);
-	for (int i = 0; i < modulesUI.size(); i++)
-	    modulesUI.get(i).render(g, this);
-	if (mode == Mode.EDIT_MODE || mode == Mode.WIRE_CREATION_MODE)
-	    for (int i = 0; i < handlesUI.size(); i++)
-		handlesUI.get(i).render(g);
-	return simBuffer;
+	    wiresUI.get(i).renderPackets(g, area);
     }
 
     /**
@@ -0,0 +1,162 @@
+/*
+ * SpatialIndex.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package ui;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+
+/**
+ * Finds the components of the client space near a point or in an area without looking at all of them. The client space is divided into
+ * square cells and each cell lists the components whose bounds overlap it, so a query only looks at the components in the cells it
+ * touches. A component can have several bounds, e.g. a wire has one per segment.
+ * <p>
+ * Queries return candidates, in the order the components were first put, which is the order ManagerUI keeps them in. Whether the point
+ * really is on a candidate is left to its isClicked(). The index is synchronized, as it is read by the rendering thread while the mouse
+ * listeners change it.
+ *
+ * @author Rohit
+ *
+ */
+class SpatialIndex<T> {
+    static final int			  CELL_SIZE = 64;
+
+    private HashMap<Long, ArrayList<T>>	cells     = new HashMap<Long, ArrayList<T>>();
+    private IdentityHashMap<T, Entry>	 entries   = new IdentityHashMap<T, Entry>();
+    private long			      next      = 0;
+    private final Comparator<T>	       byOrder   = new Comparator<T>() {
+						      public int compare(T a, T b) {
+							  long x = entries.get(a).order, y = entries.get(b).order;
+							  return x < y ? -1 : x > y ? 1 : 0;
+						      }
+						  };
+
+    private static class Entry {
+	long order;
+	long keys[];
+
+	Entry(long order) {
+	    this.order = order;
+	}
+    }
+
+    private static long key(int cx, int cy) {
+	return ((long) cx << 32) | (cy & 0xffffffffL);
+    }
+
+    private static int cell(int v) {
+	return Math.floorDiv(v, CELL_SIZE);
+    }
+
+    /**
+     * Adds item, or moves it if it is already there, so that it is found in the given bounds.
+     */
+    synchronized void put(T item, Rectangle... bounds) {
+	ArrayList<Long> keys = new ArrayList<Long>();
+	for (int i = 0; i < bounds.length; i++) {
+	    Rectangle r = bounds[i];
+	    if (r.isEmpty())
+		continue;
+	    for (int cx = cell(r.x); cx <= cell(r.x + r.width - 1); cx++)
+		for (int cy = cell(r.y); cy <= cell(r.y + r.height - 1); cy++) {
+		    Long k = key(cx, cy);
+		    if (!keys.contains(k))
+			keys.add(k);
+		}
+	}
+	Entry e = entries.get(item);
+	if (e == null) {
+	    e = new Entry(next++);
+	    entries.put(item, e);
+	} else {
+	    if (e.keys.length == keys.size()) { // Unchanged if it still is in the same cells, which is usual for small moves.
+		boolean same = true;
+		for (int i = 0; i < e.keys.length && same; i++)
+		    same = keys.contains(e.keys[i]);
+		if (same)
+		    return;
+	    }
+	    unlink(item, e);
+	}
+	e.keys = new long[keys.size()];
+	for (int i = 0; i < e.keys.length; i++) {
+	    e.keys[i] = keys.get(i);
+	    ArrayList<T> c = cells.get(keys.get(i));
+	    if (c == null) {
+		c = new ArrayList<T>(4);
+		cells.put(keys.get(i), c);
+	    }
+	    c.add(item);
+	}
+    }
+
+    synchronized void remove(T item) {
+	Entry e = entries.remove(item);
+	if (e != null)
+	    unlink(item, e);
+    }
+
+    private void unlink(T item, Entry e) {
+	for (int i = 0; i < e.keys.length; i++) {
+	    ArrayList<T> c = cells.get(e.keys[i]);
+	    c.remove(item);
+	    if (c.isEmpty())
+		cells.remove(e.keys[i]);
+	}
+    }
+
+    /**
+     * @return The items whose bounds may contain p.
+     */
+    synchronized ArrayList<T> query(Point p) {
+	ArrayList<T> c = cells.get(key(cell(p.x), cell(p.y)));
+	if (c == null)
+	    return new ArrayList<T>(0);
+	ArrayList<T> found = new ArrayList<T>(c);
+	if (found.size() > 1)
+	    Collections.sort(found, byOrder);
+	return found;
+    }
+
+    /**
+     * @return The items whose bounds may intersect r.
+     */
+    synchronized ArrayList<T> query(Rectangle r) {
+	ArrayList<T> found = new ArrayList<T>();
+	if (r.isEmpty())
+	    return found;
+	IdentityHashMap<T, Boolean> seen = new IdentityHashMap<T, Boolean>();
+	for (int cx = cell(r.x); cx <= cell(r.x + r.width - 1); cx++)
+	    for (int cy = cell(r.y); cy <= cell(r.y + r.height - 1); cy++) {
+		ArrayList<T> c = cells.get(key(cx, cy));
+		if (c == null)
+		    continue;
+		for (int i = 0; i < c.size(); i++)
+		    if (seen.put(c.get(i), Boolean.TRUE) == null)
+			found.add(c.get(i));
+	    }
+	if (found.size() > 1)
+	    Collections.sort(found, byOrder);
+	return found;
+    }
+}
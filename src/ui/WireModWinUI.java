@@ -20,13 +20,19 @@ package ui;
 
 import java.awt.BorderLayout;
 import java.awt.Dimension;
+import java.awt.GridLayout;
 import java.awt.Point;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
+import javax.swing.JButton;
 import javax.swing.JCheckBox;
+import javax.swing.JLabel;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
 
+import framework.Metrics;
+import module.EventLog;
 import module.ModuleWinUI;
 import module.moduleWindow;
 
@@ -38,6 +44,9 @@ import module.moduleWindow;
 public class WireModWinUI implements ActionListener, ModuleWinUI {
     JPanel       propPg      = null;
     JCheckBox    dropPackets = null;
+    JTextField   txtLatency  = null;
+    JTextField   txtBandwidth = null;
+    JTextField   txtCapacity = null;
     moduleWindow modWin      = null;
     WireUI       wireUI      = null;
 
@@ -49,12 +58,37 @@ public class WireModWinUI implements ActionListener, ModuleWinUI {
 	if (propPg == null) {
 	    propPg = new JPanel();
 	    propPg.setLayout(new BorderLayout());
-	    propPg.add(getChkEmit(), BorderLayout.CENTER);
-	    propPg.setPreferredSize(new Dimension(150, 100));
+	    propPg.add(getChkEmit(), BorderLayout.NORTH);
+	    JPanel values = new JPanel();
+	    values.setLayout(new GridLayout(3, 1));
+	    txtLatency = new JTextField(String.valueOf(wireUI.wire.getLatency()));
+	    values.add(getValuePanel("Latency (steps): ", txtLatency, "cmdSetLatency"));
+	    txtBandwidth = new JTextField(String.valueOf(wireUI.wire.getBandwidth()));
+	    values.add(getValuePanel("Bandwidth (0 = no limit): ", txtBandwidth, "cmdSetBandwidth"));
+	    txtCapacity = new JTextField(String.valueOf(wireUI.wire.getQueueCapacity()));
+	    values.add(getValuePanel("Queue capacity (0 = no limit): ", txtCapacity, "cmdSetCapacity"));
+	    propPg.add(values, BorderLayout.CENTER);
+	    propPg.setPreferredSize(new Dimension(150, 150));
 	}
 	return propPg;
     }
 
+    private JPanel getValuePanel(String label, JTextField txt, String cmdName) {
+	JPanel jVal = new JPanel();
+	jVal.setLayout(new GridLayout(1, 3));
+	txt.setMaximumSize(new Dimension(150, 30));
+
+	JButton cmdSetVal = new JButton("Set Value");
+	cmdSetVal.setName(cmdName);
+	cmdSetVal.addActionListener(this);
+
+	jVal.add(new JLabel(label));
+	jVal.add(txt);
+	jVal.add(cmdSetVal);
+	jVal.setPreferredSize(new Dimension(150, 50));
+	return jVal;
+    }
+
     private JCheckBox getChkEmit() {
 	if (dropPackets == null) {
 	    dropPackets = new JCheckBox("Drop Packets");
@@ -72,7 +106,25 @@ public class WireModWinUI implements ActionListener, ModuleWinUI {
     }
 
     public void actionPerformed(ActionEvent e) {
-	wireUI.wire.setDropPackets(dropPackets.isSelected());
+	if (e.getSource() instanceof JCheckBox) {
+	    wireUI.wire.setDropPackets(dropPackets.isSelected());
+	    return;
+	}
+	String name = ((JButton) e.getSource()).getName();
+	try {
+	    if (name.equals("cmdSetLatency")) {
+		wireUI.wire.setLatency(Double.parseDouble(txtLatency.getText()));
+		wireUI.updateDataFlowPacketsDis();
+	    } else if (name.equals("cmdSetBandwidth"))
+		wireUI.wire.setBandwidth(Double.parseDouble(txtBandwidth.getText()));
+	    else if (name.equals("cmdSetCapacity"))
+		wireUI.wire.setQueueCapacity(Integer.parseInt(txtCapacity.getText()));
+	} catch (NumberFormatException ex) {
+	    System.out.println("Invalid value for wire property: " + ex.getMessage());
+	}
+	txtLatency.setText(String.valueOf(wireUI.wire.getLatency()));
+	txtBandwidth.setText(String.valueOf(wireUI.wire.getBandwidth()));
+	txtCapacity.setText(String.valueOf(wireUI.wire.getQueueCapacity()));
     }
 
     public void reset() {
@@ -84,6 +136,14 @@ public class WireModWinUI implements ActionListener, ModuleWinUI {
 	return new Point(30, 30); // TODO generate a coord value based on one of the two modules.
     }
 
+    public EventLog getEventLog() {
+	return null;
+    }
+
+    public Metrics getMetrics() {
+	return wireUI.wire.getMetrics();
+    }
+
     public String getNameToDisplay() {
 	return "Wire " + wireUI.toString();
     }
@@ -21,8 +21,13 @@ package ui;
 import java.awt.Color;
 import java.awt.Graphics;
 import java.awt.Point;
+import java.awt.Rectangle;
 import java.awt.geom.Point2D;
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
 
 import util.UtilGraphics;
 
@@ -58,6 +63,11 @@ public class WireUI extends ComponentUI {
     WireModWinUI		     wireModWin	 = null;
     Wire			     wire	       = null;
     private ManagerUI		managerUI	  = null;
+    // How the packets on the wire are drawn, by packet id. Only kept while the wire is in view, it is read by render() on the EDT.
+    private ConcurrentHashMap<Long, DataUI> dataUIs = new ConcurrentHashMap<Long, DataUI>();
+    private HashSet<Long>	    onWire	     = new HashSet<Long>();
+    private HashMap<Long, SegmentCoords> segmentOf     = new HashMap<Long, SegmentCoords>(); // The segment each packet is on.
+    private boolean		  droppingShown      = false;	   // Whether the wire was last drawn in dropPacketColour.
 
     /**
      * Creates new WireUI. Wire can have even one port.
@@ -77,12 +87,85 @@ public class WireUI extends ComponentUI {
     }
 
     public void reset() {
+	clearDataUIs();
 	if (wireModWin != null)
 	    wireModWin.reset();
     }
 
-    private void updateDataFlowPacketsDis() {
-	dataFlowPacketsDis = Math.round((length / (wire.getLatency() * managerUI.WireUI2WireSteppingRatio)));
+    /**
+     * Packets are moved along the wire so that they reach its other end in as many steps as the wire's latency.
+     */
+    void updateDataFlowPacketsDis() {
+	dataFlowPacketsDis = Math.round((length / (Math.max(wire.getLatency(), 1) * managerUI.WireUI2WireSteppingRatio)));
+    }
+
+    /**
+     * @return true if some part of the wire is in the visible part of ManagerUI.
+     */
+    private boolean isInView() {
+	if (coords.size() == 0)
+	    return false;
+	Rectangle bounds = getBounds();
+	bounds.grow(10, 10); // Room for the packets and their labels.
+	return managerUI.getViewRect().intersects(bounds);
+    }
+
+    /**
+     * @return The area the segments of the wire and its naked handles are drawn on, not counting the packets. Empty if the wire has no
+     *         segments yet.
+     */
+    public Rectangle getBounds() {
+	Rectangle bounds = new Rectangle();
+	for (int i = 0; i < coords.size(); i++) {
+	    Point2D.Double a = coords.get(i).p1.getCoord(), b = coords.get(i).p2.getCoord();
+	    Rectangle r = new Rectangle((int) Math.min(a.x, b.x), (int) Math.min(a.y, b.y), (int) Math.abs(a.x - b.x) + 1,
+		    (int) Math.abs(a.y - b.y) + 1);
+	    if (i == 0)
+		bounds = r;
+	    else
+		bounds.add(r);
+	}
+	if (coords.size() > 0)
+	    bounds.grow(wireWidth * 2, wireWidth * 2);
+	return bounds;
+    }
+
+    /**
+     * @return The area each segment of the wire is drawn on, for ManagerUI's SpatialIndex.
+     */
+    Rectangle[] getSegmentBounds() {
+	Rectangle bounds[] = new Rectangle[coords.size()];
+	for (int i = 0; i < bounds.length; i++) {
+	    Point2D.Double a = coords.get(i).p1.getCoord(), b = coords.get(i).p2.getCoord();
+	    bounds[i] = new Rectangle((int) Math.min(a.x, b.x), (int) Math.min(a.y, b.y), (int) Math.abs(a.x - b.x) + 1, (int) Math.abs(a.y
+		    - b.y) + 1);
+	    bounds[i].grow(wireWidth * 2, wireWidth * 2);
+	}
+	return bounds;
+    }
+
+    /**
+     * @return The area of the line render(Graphics, Point2D.Double) draws to pointerPos.
+     */
+    Rectangle getBounds(Point2D.Double pointerPos) {
+	if (currentCoord == null || pointerPos == null)
+	    return new Rectangle();
+	Rectangle r = new Rectangle((int) Math.min(currentCoord.x, pointerPos.x), (int) Math.min(currentCoord.y, pointerPos.y), (int) Math
+		.abs(currentCoord.x - pointerPos.x) + 1, (int) Math.abs(currentCoord.y - pointerPos.y) + 1);
+	r.grow(wireWidth * 2, wireWidth * 2);
+	return r;
+    }
+
+    /**
+     * Removes all the packets, marking where they were drawn for ManagerUI to redraw.
+     */
+    void clearDataUIs() {
+	if (dataUIs.isEmpty())
+	    return;
+	for (DataUI dataUI : dataUIs.values())
+	    managerUI.markPacketsDirty(dataUI.getBounds());
+	dataUIs.clear();
+	segmentOf.clear();
     }
 
     private Point2D.Double getModuleCoord(Port p) {
@@ -92,6 +175,29 @@ public class WireUI extends ComponentUI {
 	return pt;
     }
 
+    /**
+     * Puts dataUI the given distance along the wire from the end of port from, heading for the other end.
+     * 
+     * @return The segment dataUI is put on.
+     */
+    private SegmentCoords place(DataUI dataUI, int from, double distance) {
+	int n = coords.size();
+	distance = Math.max(0, Math.min(distance, length - 1)); // Short of the far end, so that it still has a direction to go in.
+	for (int k = 0;; k++) {
+	    SegmentCoords segment = coords.get(from == 0 ? k : n - 1 - k);
+	    Point2D.Double a = (from == 0 ? segment.p1 : segment.p2).getCoord(), b = (from == 0 ? segment.p2 : segment.p1).getCoord();
+	    double len = a.distance(b);
+	    if (distance < len || k == n - 1) {
+		double f = len == 0 ? 0 : Math.min(distance / len, 1);
+		dataUI.pos = new Point2D.Double(a.x + (b.x - a.x) * f, a.y + (b.y - a.y) * f);
+		if (!dataUI.pos.equals(b))
+		    segment.setDirection(dataUI, b);
+		return segment;
+	    }
+	    distance -= len;
+	}
+    }
+
     private SegmentCoords findSegment(Point2D.Double p) {
 	return findSegment(p, null);
     }
@@ -104,6 +210,21 @@ public class WireUI extends ComponentUI {
 	return null;
     }
 
+    /**
+     * @return The segment joined to seg at its end pt, or null if pt is an end of the wire. Found by position in coords, since the segments
+     *         are kept in order from port 0's end.
+     */
+    private SegmentCoords nextSegment(SegmentCoords seg, Point2D.Double pt) {
+	int i = seg.index;
+	if (i >= coords.size() || coords.get(i) != seg)
+	    return findSegment(pt, seg); // Not numbered yet.
+	if (pt.equals(seg.p2.getCoord()))
+	    return i + 1 < coords.size() ? coords.get(i + 1) : null;
+	if (pt.equals(seg.p1.getCoord()))
+	    return i > 0 ? coords.get(i - 1) : null;
+	return findSegment(pt, seg);
+    }
+
     private Point2D.Double snap2segEnd(Point2D.Double pt, SegmentCoords seg) {
 	if (seg.p1.getCoord().x - pt.x == seg.p2.getCoord().x - pt.x) {
 	    if (Math.abs(seg.p1.getCoord().y - pt.y) <= Math.abs(seg.p2.getCoord().y - pt.y))
@@ -128,45 +249,67 @@ public class WireUI extends ComponentUI {
     public void stepSimulation(Mode mode) {
 
 	if (mode == Mode.SIMULATION_MODE) {
-	    if (wire.hasData() || wire.hasDroppedPackets()) {
-		ArrayList<Packet> packets = wire.getPackets();
-		if (wire.hasDroppedPackets())
-		    packets.addAll(wire.getDroppedPackets());
-		for (int i = 0; i < packets.size(); i++) {
-		    Packet packet = packets.get(i);
-
-		    DataUI dataUI = packet.dataUI;
-		    if (dataUI.pos.x == -1) {// i.e. this dataUI has just been created by ModuleUI and needs to be pos.ed properly.
-			dataUI.pos = getModuleCoord(packet.getFromPort());
-			SegmentCoords segment = findSegment(dataUI.pos);
-			if (segment == null) {
-			    System.out.println("Internal Error!!! No line segment for the current wire found with the location ("
-				    + dataUI.pos.toString() + ") on it.");
-			    return;
-			}
-			segment.setDirection(dataUI, dataUI.pos.equals(segment.p1.getCoord()) ? segment.p2.getCoord() : segment.p1.getCoord());
-
-		    } else {
-			SegmentCoords segment = findSegment(dataUI.pos);
-			if (segment == null) {
-			    System.out.println("Internal Error!!! No line segment for the current wire found with the location ("
-				    + dataUI.pos.toString() + ") on it.");
-			    return;
-			}
-			dataUI.pos = segment.getNxtXYfor(dataUI);
-			if (segment.isEndReached()) {
-			    segment = findSegment(dataUI.pos, segment);
-			    if (segment != null) { // segment==null when data packet has reached at the other end of wire (i.e. the target
-				// module).
-				dataUI.pos = snap2segEnd(dataUI.pos, segment);
-				segment
-					.setDirection(dataUI, dataUI.pos.equals(segment.p1.getCoord()) ? segment.p2.getCoord() : segment.p1
-						.getCoord());
-				dataUI.pos = segment.getNxtXYfor(dataUI);
-			    }
+	    if (wire.isDroppingPackets() != droppingShown) { // The wire changes colour.
+		droppingShown = !droppingShown;
+		managerUI.markDirty(getBounds());
+	    }
+	    if (!(wire.hasData() || wire.hasDroppedPackets()) || !isInView()) {
+		clearDataUIs();
+		return;
+	    }
+	    ArrayList<Packet> packets = wire.getPackets();
+	    int queued = packets.size(); // The packets after these are the dropped ones.
+	    if (wire.hasDroppedPackets())
+		packets.addAll(wire.getDroppedPackets());
+	    onWire.clear();
+	    for (int i = 0; i < packets.size(); i++)
+		onWire.add(packets.get(i).getId());
+	    for (Iterator<Long> it = dataUIs.keySet().iterator(); it.hasNext();) {
+		Long id = it.next();
+		if (!onWire.contains(id)) {
+		    managerUI.markPacketsDirty(dataUIs.get(id).getBounds());
+		    it.remove();
+		    segmentOf.remove(id);
+		}
+	    }
+	    for (int i = 0; i < packets.size(); i++) {
+		Packet packet = packets.get(i);
+
+		DataUI dataUI = dataUIs.get(packet.getId());
+		if (dataUI == null) {
+		    dataUI = managerUI.getModuleUI(wire.getPort(packet.getFromPort()).getOwner()).createDataUI(packet);
+		    dataUIs.put(packet.getId(), dataUI);
+		} else
+		    managerUI.markPacketsDirty(dataUI.getBounds()); // Where it was.
+		if (dataUI.pos.x == -1) {// i.e. this dataUI has just been created by ModuleUI and needs to be pos.ed properly.
+		    // A packet already on the wire when it came into view is put where it has got to, not back at the sender.
+		    double now = managerUI.clock.getTime();
+		    double elapsed = i < queued ? wire.getLatency() - (wire.getDeliveryTime(i) - now) : now - wire.getDroppedTime(i - queued);
+		    segmentOf.put(packet.getId(), place(dataUI, packet.getFromPort(), length * elapsed / Math.max(wire.getLatency(), 1)));
+		} else {
+		    SegmentCoords segment = segmentOf.get(packet.getId());
+		    if (segment == null)
+			segment = findSegment(dataUI.pos);
+		    if (segment == null) {
+			System.out.println("Internal Error!!! No line segment for the current wire found with the location ("
+				+ dataUI.pos.toString() + ") on it.");
+			return;
+		    }
+		    dataUI.pos = segment.getNxtXYfor(dataUI);
+		    if (segment.isEndReached()) {
+			segment = nextSegment(segment, dataUI.pos);
+			if (segment != null) {
+			    segmentOf.put(packet.getId(), segment); // segment==null when data packet has reached at the other end of wire (i.e. the target
+			    // module).
+			    dataUI.pos = snap2segEnd(dataUI.pos, segment);
+			    segment
+				    .setDirection(dataUI, dataUI.pos.equals(segment.p1.getCoord()) ? segment.p2.getCoord() : segment.p1
+					    .getCoord());
+			    dataUI.pos = segment.getNxtXYfor(dataUI);
 			}
 		    }
 		}
+		managerUI.markPacketsDirty(dataUI.getBounds()); // Where it is now.
 	    }
 	}
     }
@@ -177,24 +320,37 @@ public class WireUI extends ComponentUI {
      * @param g
      */
     public void render(Graphics g) {
+	renderSegments(g);
+	if (managerUI.getMode() == Mode.SIMULATION_MODE || managerUI.getMode() == Mode.PAUSED_MODE) {
+	    for (DataUI dataUI : dataUIs.values())
+		dataUI.render(g);
+	}
+    }
+
+    /**
+     * Renders the wire without its packets. This is what ManagerUI caches in its background while simulating.
+     * 
+     * @param g
+     */
+    void renderSegments(Graphics g) {
 	Color tc = g.getColor();
 	g.setColor(normalColour);
 	for (int i = 0; i < coords.size(); i++) {
 	    coords.get(i).render(g);
 	}
 	g.setColor(tc);
-	if (managerUI.getMode() == Mode.SIMULATION_MODE || managerUI.getMode() == Mode.PAUSED_MODE) {
-	    ArrayList<Packet> packets = wire.getPackets();
-	    if (wire.hasDroppedPackets())
-		packets.addAll(wire.getDroppedPackets());
-	    for (int i = 0; i < packets.size(); i++) {
-		DataUI tempDataUi = packets.get(i).dataUI;
-		if (tempDataUi != null) {
-		    tempDataUi.render(g);
-		} else
-		    System.out.println("tmpDataUI is null! Couldn't render data packet.");
-	    }
-	}
+    }
+
+    /**
+     * Renders the packets which are drawn in area.
+     * 
+     * @param g
+     * @param area
+     */
+    void renderPackets(Graphics g, Rectangle area) {
+	for (DataUI dataUI : dataUIs.values())
+	    if (dataUI.getBounds().intersects(area))
+		dataUI.render(g);
     }
 
     /**
@@ -287,6 +443,47 @@ public class WireUI extends ComponentUI {
 	return handlePair;
     }
 
+    /**
+     * Lays the wire out through the given bends, like the commit() calls made while the user draws it. Used for a wire whose two ports are
+     * already plugged in, e.g. one read from a file.
+     * 
+     * @param bends
+     *                The bends between the ends of the wire, in order from port 0's end.
+     * @return The handles of the wire, in order from port 0's end to port 1's end.
+     */
+    Handle[] restore(Point2D.Double bends[]) {
+	Handle handles[] = new Handle[bends.length + 2];
+	handles[0] = new Handle(getModuleCoord(wire.getPort(0)), true);
+	for (int i = 0; i < bends.length; i++)
+	    handles[i + 1] = new Handle(bends[i], false);
+	handles[handles.length - 1] = new Handle(getModuleCoord(wire.getPort(1)), true);
+	for (int i = 0; i + 1 < handles.length; i++) {
+	    SegmentCoords s = new SegmentCoords(handles[i], handles[i + 1]);
+	    s.setEndPorts(i == 0 ? wire.getPort(0) : null, i + 2 == handles.length ? wire.getPort(1) : null);
+	    coords.add(s);
+	    length += s.segLen();
+	}
+	currentCoord = null;
+	currentPort = null;
+	currentHandle = null;
+	updateDataFlowPacketsDis();
+	return handles;
+    }
+
+    /**
+     * @return The bends of the wire, in order from port 0's end. The ends themselves are not included since they follow the modules.
+     */
+    public Point2D.Double[] getBends() {
+	Point2D.Double bends[] = new Point2D.Double[Math.max(coords.size() - 1, 0)];
+	for (int i = 0; i < bends.length; i++)
+	    bends[i] = (Point2D.Double) coords.get(i).p2.getCoord().clone();
+	return bends;
+    }
+
+    public Wire getWire() {
+	return wire;
+    }
+
     /**
      * This is called when another wire is clicked during wire creation. This means now both these 2 wires should be merged. The wire in creation
      * mode is passed the wire with which it is to be merged. So, actually the already created wire is merged into it. The coords arraylist
@@ -338,6 +535,9 @@ public class WireUI extends ComponentUI {
 	return false;
     }
 
+    /**
+     * @return The window of the wire, or null if it has not been opened yet.
+     */
     public moduleWindow getModWin() {
 	if (wireModWin == null)
 	    return null;
@@ -350,6 +550,19 @@ public class WireUI extends ComponentUI {
 	wireModWin.modWin = m;
     }
 
+    /**
+     * Opens the window of the wire, making it on the first call.
+     */
+    public void showModWin(Mode mode) {
+	if (wireModWin == null)
+	    createWireModWin();
+	if (wireModWin.modWin == null) {
+	    wireModWin.modWin = new moduleWindow(wireModWin);
+	    wireModWin.modWin.updatePropertyPageState(mode);
+	}
+	wireModWin.modWin.makeWindowVisible();
+    }
+
     public void createWireModWin() {
 	wireModWin = new WireModWinUI(this);
     }
@@ -432,6 +645,7 @@ public class WireUI extends ComponentUI {
 	length = 0;
 	for (int i = 0; i < coords.size(); i++) {
 	    coords.get(i).updatePrivate();
+	    coords.get(i).index = i;
 	    length += coords.get(i).segLen();
 	}
 	updateDataFlowPacketsDis();
@@ -454,6 +668,7 @@ public class WireUI extends ComponentUI {
 
 	Handle	  p1	 = null;
 	Handle	  p2	 = null;
+	int	     index      = -1;		     // Position in coords, set by updatePrivateData().
 
 	private SegmentCoords() {
 	    port[0] = null;
@@ -26,13 +26,22 @@ import java.awt.event.ActionListener;
 
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.filechooser.FileNameExtensionFilter;
+
+import fio.FileManager;
+import framework.MetricsRegistry;
+
+import module.ModuleProvider;
+import module.ModuleRegistry;
 
 import ui.Mode;
 import ui.ManagerUI;
-import util.MiscFunctions;
 
 import java.io.File;
-import java.io.FilenameFilter;
+import java.io.IOException;
+import java.util.List;
 
 /**
  * This is the starting point of the application. It is mainly entrusted with the task of responding to events generated by MainWindow
@@ -43,6 +52,7 @@ import java.io.FilenameFilter;
 public class ApplicationManager extends MouseAdapter implements ActionListener, ComponentListener {
     MainWindow		mainWin;
     static ApplicationManager application = null;
+    private JFileChooser      fileChooser = null;
 
     // private static int newCount;
 
@@ -72,47 +82,33 @@ public class ApplicationManager extends MouseAdapter implements ActionListener,
 	// m.startthread();
     }
 
+    /**
+     * Fills the Components toolbar from ModuleRegistry. No module class is loaded here, only the buttons of the modules which have their
+     * own.
+     */
     private void loadModules(MainWindow mainWin) {
-	// String componentPathName;
-	File modDir = new File(Config.moduleDirPath);
-	// Loader loader=new Loader();
-	String[] nameArr;
-	// JButton newButton;
-	// Class newClass;
-	try {
-	    nameArr = modDir.list(new FilenameFilter() {
-		public boolean accept(File dir, String name) {
-		    if (name.contains("."))
-			return false;
-		    else
-			return true;
-		}
-	    });
-	} catch (NullPointerException e) {
+	List<ModuleProvider> providers = ModuleRegistry.getProviders();
+	if (providers.isEmpty())
 	    System.out.print("No modules found");
-	    return;
-	}
-	mainWin.ComponentsName = nameArr;
-	mainWin.cmdComponents = new JButton[mainWin.ComponentsName.length];
-	mainWin.ComponentModulePath = new String[mainWin.ComponentsName.length];
-
-	for (int i = 0; i < mainWin.ComponentsName.length; i++) {
-	    try {
-		// componentPathName=("module/"+mainWin.ComponentsName[i]+"/"+mainWin.ComponentsName[i]+"Button.class");
-		// newClass=(loader.load(componentPathName));
-		// Object obj=newClass.newInstance();
-		//mainWin.cmdComponents[i] = buffer.Startup.button;
-		//buffer.Startup.button = null;
-		String componentPathName = "module/" + mainWin.ComponentsName[i] + "/" + mainWin.ComponentsName[i] + "Button.class";
-		String className = MiscFunctions.convertPath2className(componentPathName);
-		mainWin.cmdComponents[i] = (JButton) Class.forName(className).newInstance();
-	    } catch (Exception e) {
-		System.out.print(e.getMessage() + ": ");
-		System.out.println(mainWin.ComponentsName[i] + " Button not found using deafult one.");
-		mainWin.cmdComponents[i] = null;
-	    }
-	    mainWin.ComponentModulePath[i] = "module/" + mainWin.ComponentsName[i] + "/" + mainWin.ComponentsName[i] + "Mod.class";
+	mainWin.ComponentsName = new String[providers.size()];
+	mainWin.cmdComponents = new JButton[providers.size()];
+	mainWin.ComponentModulePath = new String[providers.size()];
+	mainWin.ComponentIconPath = new String[providers.size()];
 
+	for (int i = 0; i < providers.size(); i++) {
+	    ModuleProvider p = providers.get(i);
+	    mainWin.ComponentsName[i] = p.getName();
+	    mainWin.ComponentModulePath[i] = p.getModuleClassName();
+	    mainWin.ComponentIconPath[i] = p.getIconPath();
+	    if (p.getButtonClassName() != null) {
+		try {
+		    mainWin.cmdComponents[i] = (JButton) Class.forName(p.getButtonClassName()).newInstance();
+		} catch (Exception e) {
+		    System.out.print(e.getMessage() + ": ");
+		    System.out.println(mainWin.ComponentsName[i] + " Button not found using deafult one.");
+		    mainWin.cmdComponents[i] = null;
+		}
+	    }
 	}
     }
 
@@ -123,25 +119,33 @@ public class ApplicationManager extends MouseAdapter implements ActionListener,
 	    mainWin.cmdPause.setSelected(false);
 	    if (mainWin.cmdRun.getSelectedObjects() == null) {
 		mainWin.cmdPause.setEnabled(false);
+		mainWin.cmdFastForward.setEnabled(false);
 		mainWin.cmdRun.setIcon(new ImageIcon(Config.iconPath + "Run.png"));
 		mainWin.cmdRun.setToolTipText("Run");
 	    } else {
 		mainWin.cmdPause.setEnabled(true);
+		mainWin.cmdFastForward.setEnabled(true);
 		mainWin.cmdRun.setIcon(new ImageIcon(Config.iconPath + "Stop.png"));
 		mainWin.cmdRun.setToolTipText("Stop");
 	    }
 	    this.toggleMode(Mode.SIMULATION_MODE);
 	} else if (src.equals(mainWin.cmdPause)) {
 	    this.toggleMode(Mode.PAUSED_MODE);
+	} else if (src.equals(mainWin.cmdFastForward)) {
+	    fastForward();
 	} else if (src.equals(mainWin.cmdSave) || src.equals(mainWin.saveMenuItem)) {
-	    // TODO
+	    saveTopology();
 	} else if (src.equals(mainWin.cmdNew) || src.equals(mainWin.newMenuItem)) {
 	    mainWin.addNewClientSpace("ManagerUI");
 	    /*
 	     * mainWin.addNewClientSpace("New"+newCount++); ManagerUI m=mainWin.clientSpace.get(mainWin.ClientArea.getSelectedIndex());
 	     */
 	} else if (src.equals(mainWin.cmdOpen) || src.equals(mainWin.openMenuItem)) {
-	    // TODO
+	    openTopology();
+	} else if (src.equals(mainWin.metricsMenuItem)) {
+	    mainWin.clientSpace.get(0).getManager().setMetricsRegistry(mainWin.metricsMenuItem.isSelected() ? new MetricsRegistry() : null);
+	} else if (src.equals(mainWin.exportMetricsMenuItem)) {
+	    exportMetrics();
 	} else if (src.equals(mainWin.copyMenuItem)) {
 	    // TODO
 	} else if (src.equals(mainWin.cutMenuItem)) {
@@ -164,6 +168,112 @@ public class ApplicationManager extends MouseAdapter implements ActionListener,
 	}
     }
 
+    private JFileChooser getFileChooser() {
+	if (fileChooser == null) {
+	    fileChooser = new JFileChooser();
+	    fileChooser.setFileFilter(new FileNameExtensionFilter("LANSim topology (*." + FileManager.EXTENSION + ")", FileManager.EXTENSION));
+	}
+	return fileChooser;
+    }
+
+    private void saveTopology() {
+	JFileChooser fc = getFileChooser();
+	if (fc.showSaveDialog(mainWin.jScp) != JFileChooser.APPROVE_OPTION)
+	    return;
+	File file = fc.getSelectedFile();
+	if (!file.getName().contains("."))
+	    file = new File(file.getPath() + "." + FileManager.EXTENSION);
+	try {
+	    FileManager.save(mainWin.clientSpace.get(0), file);
+	} catch (IOException e) {
+	    e.printStackTrace();
+	    JOptionPane.showMessageDialog(mainWin.jScp, "Could not save " + file.getName() + ": " + e.getMessage(), "Save",
+		    JOptionPane.ERROR_MESSAGE);
+	}
+    }
+
+    /**
+     * Writes the metrics of all modules and wires to a CSV file.
+     */
+    private void exportMetrics() {
+	MetricsRegistry metrics = mainWin.clientSpace.get(0).getManager().getMetricsRegistry();
+	if (metrics == null) {
+	    JOptionPane.showMessageDialog(mainWin.jScp, "Metrics are not being collected. Turn them on with View > Collect Metrics first.",
+		    "Export Metrics", JOptionPane.INFORMATION_MESSAGE);
+	    return;
+	}
+	JFileChooser fc = new JFileChooser();
+	fc.setFileFilter(new FileNameExtensionFilter("CSV (*.csv)", "csv"));
+	if (fc.showSaveDialog(mainWin.jScp) != JFileChooser.APPROVE_OPTION)
+	    return;
+	File file = fc.getSelectedFile();
+	if (!file.getName().contains("."))
+	    file = new File(file.getPath() + ".csv");
+	try {
+	    metrics.export(file);
+	} catch (IOException e) {
+	    e.printStackTrace();
+	    JOptionPane.showMessageDialog(mainWin.jScp, "Could not export " + file.getName() + ": " + e.getMessage(), "Export Metrics",
+		    JOptionPane.ERROR_MESSAGE);
+	}
+    }
+
+    /**
+     * Asks how far to fast-forward the running simulation, as a number of steps or as "@time" for a simulated time, and fast-forwards it. A
+     * paused simulation is resumed first.
+     */
+    private void fastForward() {
+	ManagerUI m = mainWin.clientSpace.get(0);
+	String s = JOptionPane.showInputDialog(mainWin.jScp, "Steps to fast-forward by, or @time to fast-forward to:", "1000");
+	if (s == null)
+	    return;
+	s = s.trim();
+	long n;
+	try {
+	    n = Long.parseLong(s.startsWith("@") ? s.substring(1).trim() : s);
+	} catch (NumberFormatException e) {
+	    JOptionPane.showMessageDialog(mainWin.jScp, "Not a number: " + s, "Fast Forward", JOptionPane.ERROR_MESSAGE);
+	    return;
+	}
+	if (m.getMode() == Mode.PAUSED_MODE) {
+	    m.changeMode(Mode.SIMULATION_MODE);
+	    mainWin.cmdPause.setSelected(false);
+	}
+	if (s.startsWith("@"))
+	    m.fastForwardTo(n);
+	else
+	    m.fastForward(n);
+    }
+
+    /**
+     * Opens a topology in a new client space, which replaces the current one.
+     */
+    private void openTopology() {
+	JFileChooser fc = getFileChooser();
+	if (fc.showOpenDialog(mainWin.jScp) != JFileChooser.APPROVE_OPTION)
+	    return;
+	File file = fc.getSelectedFile();
+	ManagerUI m = mainWin.clientSpace.get(0);
+	if (m.getMode() == Mode.SIMULATION_MODE || m.getMode() == Mode.PAUSED_MODE) {
+	    m.changeMode(Mode.EDIT_MODE);
+	    mainWin.cmdRun.setSelected(false);
+	    mainWin.cmdRun.setIcon(new ImageIcon(Config.iconPath + "Run.png"));
+	    mainWin.cmdRun.setToolTipText("Run");
+	    mainWin.cmdPause.setSelected(false);
+	    mainWin.cmdPause.setEnabled(false);
+	    mainWin.cmdFastForward.setEnabled(false);
+	}
+	mainWin.addNewClientSpace("ManagerUI");
+	try {
+	    FileManager.load(mainWin.clientSpace.get(0), file);
+	} catch (IOException e) {
+	    e.printStackTrace();
+	    JOptionPane.showMessageDialog(mainWin.jScp, "Could not open " + file.getName() + ": " + e.getMessage(), "Open",
+		    JOptionPane.ERROR_MESSAGE);
+	    mainWin.addNewClientSpace("ManagerUI");
+	}
+    }
+
     public void mouseClicked(java.awt.event.MouseEvent e) {
 
     /*
@@ -32,6 +32,7 @@ import javax.swing.ImageIcon;
 import javax.swing.JLabel;
 import javax.swing.JPanel;
 import javax.swing.JMenuItem;
+import javax.swing.JCheckBoxMenuItem;
 import javax.swing.JMenuBar;
 import javax.swing.JMenu;
 import javax.swing.JFrame;
@@ -54,6 +55,7 @@ import javax.swing.border.SoftBevelBorder;
 import javax.swing.JProgressBar;
 
 import ui.ManagerUI;
+import framework.MetricsRegistry;
 
 import java.util.ArrayList;
 
@@ -83,6 +85,8 @@ class MainWindow {
     JMenuItem	    newMenuItem	   = null;
     JMenuItem	    openMenuItem	  = null;
     JMenuItem	    componentMenuItem     = null;
+    JCheckBoxMenuItem    metricsMenuItem       = null;
+    JMenuItem	    exportMetricsMenuItem = null;
     private JDialog      aboutDialog	   = null; // @jve:decl-index=0:visual-constraint="312,558"
     private JPanel       aboutContentPane      = null;
     private JLabel       aboutVersionLabel     = null;
@@ -93,10 +97,12 @@ class MainWindow {
     JButton	      cmdSave	       = null;
     JButton	      cmdOpen	       = null;
     JToggleButton	cmdPause	      = null;
+    JButton	      cmdFastForward	= null;
     private JToolBar     ComponentToolBar      = null;
     JButton	      cmdComponents[]       = null; // This will contain all the components' buttons.
     String	       ComponentsName[]      = null; // Both this and cmdComponents are initialized in ApplicationManager.
-    String	       ComponentModulePath[] = null; // Path to Component modules. Set my ApplicationManager.
+    String	       ComponentModulePath[] = null; // Class names of Component modules. Set my ApplicationManager.
+    String	       ComponentIconPath[]   = null; // Icons of the Components which have no button of their own.
     private JPanel       StatusBar	     = null;
     private JLabel       StatusLabel	   = null;
     private JProgressBar ProgressBar	   = null;
@@ -172,6 +178,7 @@ class MainWindow {
 	    fileMenu.add(getNewMenuItem());
 	    fileMenu.add(getOpenMenuItem());
 	    fileMenu.add(getSaveMenuItem());
+	    fileMenu.add(getExportMetricsMenuItem());
 	    fileMenu.add(getExitMenuItem());
 	}
 	return fileMenu;
@@ -198,6 +205,7 @@ class MainWindow {
 	    viewMenu = new JMenu();
 	    viewMenu.setText("View");
 	    viewMenu.add(getComponentMenuItem());
+	    viewMenu.add(getMetricsMenuItem());
 	}
 	return viewMenu;
     }
@@ -393,6 +401,24 @@ class MainWindow {
 	return componentMenuItem;
     }
 
+    private JCheckBoxMenuItem getMetricsMenuItem() {
+	if (metricsMenuItem == null) {
+	    metricsMenuItem = new JCheckBoxMenuItem();
+	    metricsMenuItem.setText("Collect Metrics");
+	    metricsMenuItem.addActionListener(ApplicationManager.application);
+	}
+	return metricsMenuItem;
+    }
+
+    private JMenuItem getExportMetricsMenuItem() {
+	if (exportMetricsMenuItem == null) {
+	    exportMetricsMenuItem = new JMenuItem();
+	    exportMetricsMenuItem.setText("Export Metrics...");
+	    exportMetricsMenuItem.addActionListener(ApplicationManager.application);
+	}
+	return exportMetricsMenuItem;
+    }
+
     /**
          * This method initializes TaskToolBar
          * 
@@ -410,6 +436,7 @@ class MainWindow {
 	    TaskToolBar.addSeparator();
 	    TaskToolBar.add(getCmdPause());
 	    TaskToolBar.add(getCmdRun());
+	    TaskToolBar.add(getCmdFastForward());
 
 	}
 	return TaskToolBar;
@@ -496,6 +523,23 @@ class MainWindow {
 	return cmdPause;
     }
 
+    /**
+         * This method initializes cmdFastForward
+         * 
+         * @return javax.swing.JButton
+         */
+    private JButton getCmdFastForward() {
+	if (cmdFastForward == null) {
+	    cmdFastForward = new JButton();
+	    cmdFastForward.setText(">>");
+	    cmdFastForward.setToolTipText("Fast Forward");
+	    cmdFastForward.setSize(40, 25);
+	    cmdFastForward.setEnabled(false);
+	    cmdFastForward.addActionListener(ApplicationManager.application);
+	}
+	return cmdFastForward;
+    }
+
     /**
          * This method initializes ComponentToolBar
          * 
@@ -527,7 +571,7 @@ class MainWindow {
 	    JButton newButton = new JButton();
 	    // newButton.setText(ComponentsName[i]);
 	    newButton.setToolTipText(ComponentsName[i]);
-	    Image icon = new ImageIcon(Config.moduleDirPath + "/" + ComponentsName[i] + "/icon.gif").getImage().getScaledInstance(40, 40, Image.SCALE_SMOOTH);
+	    Image icon = new ImageIcon(ComponentIconPath[i]).getImage().getScaledInstance(40, 40, Image.SCALE_SMOOTH);
 	    newButton.setIcon(new ImageIcon(icon));
 	    newButton.setSize(new Dimension(40, 40));
 	    newButton.setPreferredSize(new Dimension(40, 40));
@@ -668,6 +712,8 @@ class MainWindow {
          */
     private ManagerUI getClientRegion(String title) {
 	ManagerUI m = new ManagerUI(title, StatusLabel);
+	if (metricsMenuItem != null && metricsMenuItem.isSelected())
+	    m.getManager().setMetricsRegistry(new MetricsRegistry());
 	m.setPreferredSize(new Dimension(1000, 1500));
 	m.revalidate();
 	getClientSpace();
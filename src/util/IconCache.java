@@ -0,0 +1,77 @@
+/*
+ * IconCache.java
+ *
+ * Copyright (C) 2008 AppleGrew
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ */
+package util;
+
+import java.awt.Graphics;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.swing.ImageIcon;
+
+/**
+ * Icons loaded once per path and size and kept scaled to that size, so that all the modules of a kind share one image and drawing it
+ * needs no scaling. The images are made compatible with the screen, so drawing them needs no conversion either.
+ *
+ * @author Rohit
+ *
+ */
+public class IconCache {
+    private static final ConcurrentHashMap<String, Image> icons = new ConcurrentHashMap<String, Image>();
+
+    /**
+     * @return The image at path scaled to width x height. An image that cannot be loaded gives a transparent one, which draws nothing.
+     */
+    public static Image get(String path, int width, int height) {
+	String key = width + "x" + height + ":" + path;
+	Image image = icons.get(key);
+	if (image == null) {
+	    image = load(path, width, height);
+	    Image old = icons.putIfAbsent(key, image);
+	    if (old != null)
+		image = old;
+	}
+	return image;
+    }
+
+    /**
+     * Drops all the icons, e.g. after the files changed.
+     */
+    public static void clear() {
+	icons.clear();
+    }
+
+    private static Image load(String path, int width, int height) {
+	ImageIcon icon = new ImageIcon(path); // Waits till the image is loaded.
+	BufferedImage image;
+	if (GraphicsEnvironment.isHeadless())
+	    image = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+	else
+	    image = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration().createCompatibleImage(
+		    width, height, Transparency.TRANSLUCENT);
+	if (icon.getIconWidth() > 0 && icon.getIconHeight() > 0) {
+	    Graphics g = image.createGraphics();
+	    g.drawImage(icon.getImage(), 0, 0, width, height, null);
+	    g.dispose();
+	}
+	return image;
+    }
+}